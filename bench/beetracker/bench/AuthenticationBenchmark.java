@@ -0,0 +1,68 @@
+package beetracker.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * AuthenticationBenchmark measures the latency of logging in with a hashed password against
+ * checking a session token, and of the plain text comparison passwords used before hashing
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AuthenticationBenchmark {
+    private static final String USERNAME = "pavel";
+    private static final String PASSWORD = "password123";
+
+    private Object userManager;
+    private String hashed;
+    private String token;
+
+    @Setup
+    public void setUp() throws Throwable {
+        hashed = (String) (Object) Domain.HASH_PASSWORD.invokeExact((Object) PASSWORD);
+        Object user = (Object) Domain.NEW_USER.invokeExact((Object) USERNAME, (Object) hashed,
+                (Object) "Pavel", (Object) "admin");
+        userManager = (Object) Domain.NEW_USER_MANAGER.invokeExact();
+        Object ignored = (Object) Domain.ADD_USER.invokeExact(userManager, user);
+        token = (String) (Object) Domain.LOGIN.invokeExact(userManager, (Object) USERNAME, (Object) PASSWORD);
+    }
+
+    @Benchmark
+    public boolean verifyHashed() throws Throwable {
+        return (boolean) (Object) Domain.VERIFY_PASSWORD.invokeExact((Object) PASSWORD, (Object) hashed);
+    }
+
+    @Benchmark
+    public boolean verifyPlainText() throws Throwable {
+        return (boolean) (Object) Domain.VERIFY_PASSWORD.invokeExact((Object) PASSWORD, (Object) PASSWORD);
+    }
+
+    @Benchmark
+    public Object authenticate() throws Throwable {
+        return (Object) Domain.AUTHENTICATE.invokeExact(userManager, (Object) USERNAME, (Object) PASSWORD);
+    }
+
+    @Benchmark
+    public Object login() throws Throwable {
+        return (Object) Domain.LOGIN.invokeExact(userManager, (Object) USERNAME, (Object) PASSWORD);
+    }
+
+    @Benchmark
+    public Object validateToken() throws Throwable {
+        return (Object) Domain.VALIDATE_TOKEN.invokeExact(userManager, (Object) token);
+    }
+}
@@ -0,0 +1,105 @@
+package beetracker.bench;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.List;
+
+/**
+ * Domain gives the benchmarks access to the application classes
+ * JMH only accepts benchmarks in a named package, and a named package cannot import classes
+ * from the default package the application lives in, so the application methods are called
+ * through method handles with Object signatures; invokeExact on these constant handles is
+ * inlined by the JIT and adds a few nanoseconds per call
+ */
+final class Domain {
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.publicLookup();
+
+    static final Class<?> HIVES = type("Hives");
+    static final Class<?> TASKS = type("Tasks");
+    static final Class<?> BEE_HIVE = type("BeeHive");
+    static final Class<?> TASK = type("Task");
+    static final Class<?> DATA_MANAGER = type("DataManager");
+    static final Class<?> GENERATOR = type("SampleDataGenerator");
+    static final Class<?> HIVE_STORE = type("HiveStore");
+    static final Class<?> USER = type("User");
+    static final Class<?> USER_MANAGER = type("UserManager");
+    static final Class<?> PASSWORD_HASHER = type("PasswordHasher");
+
+    static final MethodHandle NEW_HIVES = constructor(HIVES);
+    static final MethodHandle NEW_TASKS = constructor(TASKS);
+    static final MethodHandle ADD_HIVE = method(HIVES, "addBeeHive", void.class, BEE_HIVE);
+    static final MethodHandle ADD_TASK = method(TASKS, "addTask", void.class, TASK);
+    static final MethodHandle HIVES_BY_LOCATION = method(HIVES, "getHivesByLocation", List.class, String.class);
+    static final MethodHandle ALL_HIVES = method(HIVES, "getAllHives", List.class);
+    static final MethodHandle HIVE_BY_ID = method(HIVES, "getHive", BEE_HIVE, int.class);
+    static final MethodHandle HIVES_NEEDING_ATTENTION = method(HIVES, "getHivesNeedingAttention", List.class);
+    static final MethodHandle TASK_STATISTICS = method(TASKS, "getTaskStatistics", String.class);
+    static final MethodHandle OVERDUE_TASKS = method(TASKS, "getOverdueTasks", List.class);
+
+    static final MethodHandle HAS_QUEEN = method(BEE_HIVE, "hasQueen", boolean.class);
+    static final MethodHandle HONEY_LEVEL = method(BEE_HIVE, "getHoneyLevel", int.class);
+    static final MethodHandle LOCATION = method(BEE_HIVE, "getLocation", String.class);
+    static final MethodHandle NEW_HIVE_STORE = constructor(HIVE_STORE);
+    static final MethodHandle STORE_ADD = method(HIVE_STORE, "add", BEE_HIVE, BEE_HIVE);
+    static final MethodHandle STORE_COUNT_QUEENLESS = method(HIVE_STORE, "countQueenless", int.class);
+    static final MethodHandle STORE_AVERAGE_HONEY = method(HIVE_STORE, "averageHoneyLevel", double.class, String.class);
+
+    static final MethodHandle NEW_DATA_MANAGER = constructor(DATA_MANAGER, String.class);
+    static final MethodHandle SAVE_DATA = method(DATA_MANAGER, "saveData", void.class,
+            List.class, List.class, List.class, List.class);
+    static final MethodHandle LOAD_DATA = method(DATA_MANAGER, "loadData", void.class,
+            List.class, List.class, List.class, List.class);
+
+    static final MethodHandle NEW_USER = constructor(USER, String.class, String.class, String.class, String.class);
+    static final MethodHandle NEW_USER_MANAGER = constructor(USER_MANAGER);
+    static final MethodHandle ADD_USER = method(USER_MANAGER, "addUser", void.class, USER);
+    static final MethodHandle AUTHENTICATE = method(USER_MANAGER, "authenticate", USER, String.class, String.class);
+    static final MethodHandle LOGIN = method(USER_MANAGER, "login", String.class, String.class, String.class);
+    static final MethodHandle VALIDATE_TOKEN = method(USER_MANAGER, "validateToken", USER, String.class);
+    static final MethodHandle HASH_PASSWORD = staticMethod(PASSWORD_HASHER, "hash", String.class, String.class);
+    static final MethodHandle VERIFY_PASSWORD = staticMethod(PASSWORD_HASHER, "verify", boolean.class,
+            String.class, String.class);
+
+    static final MethodHandle NEW_GENERATOR = constructor(GENERATOR, long.class);
+    static final MethodHandle GENERATE = method(GENERATOR, "generate", void.class,
+            int.class, int.class, int.class, List.class, List.class, List.class, List.class);
+
+    private Domain() {
+    }
+
+    private static Class<?> type(String name) {
+        try {
+            return Class.forName(name);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("Application class " + name + " is not on the class path", e);
+        }
+    }
+
+    private static MethodHandle constructor(Class<?> owner, Class<?>... parameters) {
+        try {
+            MethodHandle handle = LOOKUP.findConstructor(owner, MethodType.methodType(void.class, parameters));
+            return handle.asType(handle.type().generic());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Missing constructor of " + owner.getName(), e);
+        }
+    }
+
+    private static MethodHandle method(Class<?> owner, String name, Class<?> returnType, Class<?>... parameters) {
+        try {
+            MethodHandle handle = LOOKUP.findVirtual(owner, name, MethodType.methodType(returnType, parameters));
+            return handle.asType(handle.type().generic());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Missing method " + owner.getName() + "." + name, e);
+        }
+    }
+
+    private static MethodHandle staticMethod(Class<?> owner, String name, Class<?> returnType, Class<?>... parameters) {
+        try {
+            MethodHandle handle = LOOKUP.findStatic(owner, name, MethodType.methodType(returnType, parameters));
+            return handle.asType(handle.type().generic());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Missing method " + owner.getName() + "." + name, e);
+        }
+    }
+}
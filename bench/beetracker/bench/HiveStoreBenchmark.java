@@ -0,0 +1,81 @@
+package beetracker.bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * HiveStoreBenchmark compares aggregations over BeeHive objects with the same
+ * aggregations over HiveStore's arrays
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class HiveStoreBenchmark {
+
+    @Param({"100000", "1000000"})
+    public int hiveCount;
+
+    private List<Object> hives;
+    private Object store;
+    private String location;
+
+    @Setup
+    public void setUp() throws Throwable {
+        SampleData data = new SampleData(hiveCount);
+        hives = data.hives;
+        store = (Object) Domain.NEW_HIVE_STORE.invokeExact();
+        for (Object hive : hives) {
+            Object ignored = (Object) Domain.STORE_ADD.invokeExact(store, hive);
+        }
+        location = data.busiestLocation();
+    }
+
+    @Benchmark
+    public int countQueenlessObjects() throws Throwable {
+        int count = 0;
+        for (Object hive : hives) {
+            if (!(boolean) (Object) Domain.HAS_QUEEN.invokeExact(hive)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Benchmark
+    public int countQueenlessStore() throws Throwable {
+        return (int) (Object) Domain.STORE_COUNT_QUEENLESS.invokeExact(store);
+    }
+
+    @Benchmark
+    public double averageHoneyLevelObjects() throws Throwable {
+        long total = 0;
+        int count = 0;
+        for (Object hive : hives) {
+            if (location.equals((Object) Domain.LOCATION.invokeExact(hive))) {
+                total += (int) (Object) Domain.HONEY_LEVEL.invokeExact(hive);
+                count++;
+            }
+        }
+        return count == 0 ? 0 : (double) total / count;
+    }
+
+    @Benchmark
+    public double averageHoneyLevelStore() throws Throwable {
+        return (double) (Object) Domain.STORE_AVERAGE_HONEY.invokeExact(store, (Object) location);
+    }
+}
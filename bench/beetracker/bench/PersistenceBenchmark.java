@@ -0,0 +1,89 @@
+package beetracker.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * PersistenceBenchmark measures DataManager.saveData and loadData on a data file in a temp directory
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class PersistenceBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int hiveCount;
+
+    private SampleData data;
+    private File directory;
+    private Object dataManager;
+    private PrintStream out;
+
+    @Setup
+    public void setUp() throws Throwable {
+        // DataManager reports every save and load on System.out
+        out = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+        }));
+
+        data = new SampleData(hiveCount);
+        directory = Files.createTempDirectory("beetracker-bench").toFile();
+        dataManager = (Object) Domain.NEW_DATA_MANAGER.invokeExact((Object) new File(directory, "DataFile.txt").getPath());
+        // loadData needs a file to read
+        saveData();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        System.setOut(out);
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                Files.delete(file.toPath());
+            }
+        }
+        Files.delete(directory.toPath());
+    }
+
+    @Benchmark
+    public void saveData() throws Throwable {
+        Object ignored = (Object) Domain.SAVE_DATA.invokeExact(dataManager,
+                (Object) data.users, (Object) data.hives, (Object) data.tasks, (Object) data.locations);
+    }
+
+    @Benchmark
+    public Object loadData() throws Throwable {
+        List<Object> users = new ArrayList<>();
+        List<Object> hives = new ArrayList<>();
+        List<Object> tasks = new ArrayList<>();
+        List<Object> locations = new ArrayList<>();
+        Object ignored = (Object) Domain.LOAD_DATA.invokeExact(dataManager,
+                (Object) users, (Object) hives, (Object) tasks, (Object) locations);
+        return hives;
+    }
+}
@@ -0,0 +1,80 @@
+package beetracker.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * QueryBenchmark measures the in-memory queries of Hives and Tasks
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class QueryBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int hiveCount;
+
+    private Object hives;
+    private Object tasks;
+    private String location;
+    private Object middleId;
+
+    @Setup
+    public void setUp() throws Throwable {
+        SampleData data = new SampleData(hiveCount);
+        hives = (Object) Domain.NEW_HIVES.invokeExact();
+        for (Object hive : data.hives) {
+            Object ignored = (Object) Domain.ADD_HIVE.invokeExact(hives, hive);
+        }
+        tasks = (Object) Domain.NEW_TASKS.invokeExact();
+        for (Object task : data.tasks) {
+            Object ignored = (Object) Domain.ADD_TASK.invokeExact(tasks, task);
+        }
+        location = data.busiestLocation();
+        middleId = hiveCount / 2;
+    }
+
+    @Benchmark
+    public Object getAllHives() throws Throwable {
+        return (Object) Domain.ALL_HIVES.invokeExact(hives);
+    }
+
+    @Benchmark
+    public Object getHiveById() throws Throwable {
+        return (Object) Domain.HIVE_BY_ID.invokeExact(hives, middleId);
+    }
+
+    @Benchmark
+    public Object getHivesByLocation() throws Throwable {
+        return (Object) Domain.HIVES_BY_LOCATION.invokeExact(hives, (Object) location);
+    }
+
+    @Benchmark
+    public Object getHivesNeedingAttention() throws Throwable {
+        return (Object) Domain.HIVES_NEEDING_ATTENTION.invokeExact(hives);
+    }
+
+    @Benchmark
+    public Object getTaskStatistics() throws Throwable {
+        return (Object) Domain.TASK_STATISTICS.invokeExact(tasks);
+    }
+
+    @Benchmark
+    public Object getOverdueTasks() throws Throwable {
+        return (Object) Domain.OVERDUE_TASKS.invokeExact(tasks);
+    }
+}
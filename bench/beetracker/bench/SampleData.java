@@ -0,0 +1,37 @@
+package beetracker.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * SampleData holds a generated apiary for one benchmark trial
+ * The data comes from SampleDataGenerator with a fixed seed: 40 locations where a few
+ * large apiaries hold most hives, mostly healthy hives and tasks created over the last 30 days
+ */
+final class SampleData {
+    static final int LOCATION_COUNT = 40;
+
+    final List<Object> users = new ArrayList<>();
+    final List<Object> hives = new ArrayList<>();
+    final List<Object> tasks = new ArrayList<>();
+    final List<String> locations = new ArrayList<>();
+
+    /**
+     * Generate the data
+     * @param hiveCount Number of hives; half as many tasks are generated
+     */
+    SampleData(int hiveCount) throws Throwable {
+        Object generator = (Object) Domain.NEW_GENERATOR.invokeExact((Object) 42L);
+        Object ignored = (Object) Domain.GENERATE.invokeExact(generator, (Object) hiveCount, (Object) (hiveCount / 2),
+                (Object) LOCATION_COUNT, (Object) users, (Object) hives, (Object) tasks, (Object) locations);
+    }
+
+    /**
+     * Get the location holding the most hives
+     * @return the busiest location
+     */
+    String busiestLocation() {
+        // The generator skews hives towards the first locations
+        return locations.get(0);
+    }
+}
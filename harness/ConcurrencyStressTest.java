@@ -0,0 +1,300 @@
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ConcurrencyStressTest runs writer and reader sessions against one Hives and one Tasks at the same time
+ * Writers change, move, add and remove hives and tasks at random; readers query the indexes and
+ * check what they get back. Afterwards every index is compared with a full scan. Exits with 1 if
+ * any check failed.
+ * Usage: java ConcurrencyStressTest [writers] [readers] [seconds]
+ */
+public class ConcurrencyStressTest {
+    private static final String[] STATUSES = {"healthy", "needs attention", "queenless", "empty", "unknown"};
+
+    private final Hives hives = new Hives();
+    private final Tasks tasks = new Tasks();
+    private final List<String> locations = new ArrayList<>();
+    private final AtomicBoolean stopped = new AtomicBoolean();
+    private final AtomicLong writes = new AtomicLong();
+    private final AtomicLong reads = new AtomicLong();
+    private final Queue<String> failures = new ConcurrentLinkedQueue<>();
+
+    public static void main(String[] args) throws InterruptedException {
+        int writerCount = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int readerCount = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        ConcurrencyStressTest test = new ConcurrencyStressTest();
+        test.load(20000, 5000, 16);
+        System.out.println("Running " + writerCount + " writers and " + readerCount + " readers for " +
+                seconds + " s on " + test.hives.getHiveCount() + " hives and " + test.tasks.getTaskCount() + " tasks");
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < writerCount; i++) {
+            long seed = i;
+            threads.add(new Thread(() -> test.write(new Random(seed)), "writer-" + i));
+        }
+        for (int i = 0; i < readerCount; i++) {
+            long seed = 1000 + i;
+            threads.add(new Thread(() -> test.read(new Random(seed)), "reader-" + i));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        Thread.sleep(seconds * 1000L);
+        test.stopped.set(true);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        System.out.printf("%d writes/s, %d reads/s%n", test.writes.get() / seconds, test.reads.get() / seconds);
+        test.verify();
+        if (test.failures.isEmpty()) {
+            System.out.println("All checks passed: " + test.hives.getHiveCount() + " hives and " +
+                    test.tasks.getTaskCount() + " tasks match a full scan");
+        } else {
+            System.err.println(test.failures.size() + " checks failed, first ones:");
+            test.failures.stream().limit(10).forEach(failure -> System.err.println("  " + failure));
+            System.exit(1);
+        }
+    }
+
+    private void load(int hiveCount, int taskCount, int locationCount) {
+        List<User> users = new ArrayList<>();
+        List<BeeHive> generatedHives = new ArrayList<>();
+        List<Task> generatedTasks = new ArrayList<>();
+        new SampleDataGenerator(21).generate(hiveCount, taskCount, locationCount, users, generatedHives,
+                generatedTasks, locations);
+        for (BeeHive hive : generatedHives) {
+            hives.addBeeHive(hive);
+        }
+        for (Task task : generatedTasks) {
+            tasks.addTask(task);
+        }
+    }
+
+    private void write(Random random) {
+        List<BeeHive> allHives = hives.getAllHives();
+        List<Task> allTasks = tasks.getAllTasks();
+        for (int i = 0; !stopped.get(); i++) {
+            // Refresh now and then; changing a hive or task that was removed since is harmless
+            if (i % 256 == 0) {
+                allHives = hives.getAllHives();
+                allTasks = tasks.getAllTasks();
+            }
+            BeeHive hive = allHives.get(random.nextInt(allHives.size()));
+            Task task = allTasks.get(random.nextInt(allTasks.size()));
+            switch (random.nextInt(10)) {
+                case 0:
+                    hive.setHoneyLevel(random.nextInt(101));
+                    break;
+                case 1:
+                    hive.setStatus(STATUSES[random.nextInt(STATUSES.length)]);
+                    break;
+                case 2:
+                    if (random.nextBoolean()) {
+                        hive.setHasQueen(false);
+                    } else {
+                        hive.markQueenAcquired();
+                        hive.markQueenInstalled();
+                    }
+                    break;
+                case 3:
+                    hive.setLocation(randomLocation(random));
+                    break;
+                case 4:
+                    KnownAction action = KnownAction.get(random.nextInt(KnownAction.count()));
+                    if (random.nextBoolean()) {
+                        hive.addRequiredAction(action);
+                    } else {
+                        hive.removeRequiredAction(action);
+                    }
+                    break;
+                case 5:
+                    if (random.nextBoolean()) {
+                        hive.addRequiredAction("Check entrance");
+                    } else {
+                        hive.removeRequiredAction("Check entrance");
+                    }
+                    break;
+                case 6:
+                    // Keep the number of hives steady: add one for every one removed
+                    if (hives.removeHive(hive.getId()) != null) {
+                        hives.addBeeHive(random.nextInt(1000), "Blue", randomLocation(random));
+                    }
+                    break;
+                case 7:
+                    task.setStatus(TaskStatus.values()[random.nextInt(TaskStatus.values().length)]);
+                    break;
+                case 8:
+                    if (tasks.removeTask(task.getId()) != null) {
+                        tasks.addTask("Inspect Hive", "Stress test", randomLocation(random));
+                    }
+                    break;
+                default:
+                    task.setCreatedDate(LocalDateTime.now().minusDays(random.nextInt(14)));
+                    break;
+            }
+            writes.incrementAndGet();
+        }
+    }
+
+    private void read(Random random) {
+        while (!stopped.get()) {
+            String location = randomLocation(random);
+            switch (random.nextInt(6)) {
+                case 0:
+                    List<BeeHive> snapshot = hives.getAllHives();
+                    checkNoNulls("getAllHives", snapshot);
+                    BeeHive hive = snapshot.get(random.nextInt(snapshot.size()));
+                    // Hives are only ever removed by removeHive, which unindexes them first
+                    if (hive.getOwner() == hives && hives.getHive(hive.getId()) == null && hive.getOwner() == hives) {
+                        fail("Hive " + hive.getId() + " is in the list but not found by ID");
+                    }
+                    break;
+                case 1:
+                    checkNoNulls("getHivesByLocation", hives.getHivesByLocation(location));
+                    break;
+                case 2:
+                    LocationStatistics statistics = hives.getLocationStatistics(location);
+                    if (statistics.getHiveCount() < 0 || statistics.getQueenlessCount() > statistics.getHiveCount() ||
+                            statistics.getAttentionCount() > statistics.getHiveCount() ||
+                            statistics.getAverageHoneyLevel() < 0 || statistics.getAverageHoneyLevel() > 100) {
+                        fail("Torn statistics for " + location + ": " + statistics.getHiveCount() + " hives, " +
+                                statistics.getQueenlessCount() + " queenless, " + statistics.getAttentionCount() +
+                                " need attention, average honey " + statistics.getAverageHoneyLevel());
+                    }
+                    break;
+                case 3:
+                    checkNoNulls("getHivesNeedingAttention", hives.getHivesNeedingAttention());
+                    checkNoNulls("getHivesWithAction", hives.getHivesWithAction(KnownAction.NEED_QUEEN));
+                    break;
+                case 4:
+                    checkNoNulls("getTasksByStatus", tasks.getTasksByStatus(TaskStatus.PENDING));
+                    checkNoNulls("getTasksByLocation", tasks.getTasksByLocation(location));
+                    break;
+                default:
+                    if (tasks.getOverdueCount() < 0 || tasks.getOverdueTasks() == null) {
+                        fail("Negative overdue count");
+                    }
+                    break;
+            }
+            reads.incrementAndGet();
+        }
+    }
+
+    /**
+     * Compare every index with a full scan, once all sessions have stopped
+     */
+    private void verify() {
+        if (!hives.checkAttentionSet()) {
+            fail("Attention set differed from a scan");
+        }
+        List<BeeHive> allHives = hives.getAllHives();
+        int queenless = 0;
+        int attention = 0;
+        for (BeeHive hive : allHives) {
+            if (!hive.hasQueen()) {
+                queenless++;
+            }
+            if (hive.needsAttention()) {
+                attention++;
+            }
+            if (hives.getHive(hive.getId()) != hive) {
+                fail("Hive " + hive.getId() + " not found by ID");
+            }
+        }
+        expect("hive count", allHives.size(), hives.getHiveCount());
+        expect("queenless count", queenless, hives.getQueenlessCount());
+        expect("attention count", attention, hives.getAttentionCount());
+        expect("hives needing attention", attention, hives.getHivesNeedingAttention().size());
+
+        int located = 0;
+        for (String location : hives.getLocations()) {
+            int count = 0;
+            long honey = 0;
+            int locationQueenless = 0;
+            int locationAttention = 0;
+            for (BeeHive hive : allHives) {
+                if (hive.getLocation().equals(location)) {
+                    count++;
+                    honey += hive.getHoneyLevel();
+                    locationQueenless += hive.hasQueen() ? 0 : 1;
+                    locationAttention += hive.needsAttention() ? 1 : 0;
+                }
+            }
+            LocationStatistics statistics = hives.getLocationStatistics(location);
+            expect(location + " hives", count, statistics.getHiveCount());
+            expect(location + " bucket", count, hives.getHivesByLocation(location).size());
+            expect(location + " honey total", honey, Math.round(statistics.getAverageHoneyLevel() * count));
+            expect(location + " queenless", locationQueenless, statistics.getQueenlessCount());
+            expect(location + " attention", locationAttention, statistics.getAttentionCount());
+            located += hives.getHiveCountByLocation(location);
+        }
+        expect("hives over all locations", allHives.size(), located);
+
+        List<Task> allTasks = tasks.getAllTasks();
+        int byStatus = 0;
+        for (TaskStatus status : TaskStatus.values()) {
+            int count = 0;
+            for (Task task : allTasks) {
+                if (task.getTaskStatus() == status) {
+                    count++;
+                }
+            }
+            expect(status + " tasks", count, tasks.getTasksByStatus(status).size());
+            byStatus += tasks.getTaskCount(status);
+        }
+        expect("tasks over all statuses", allTasks.size(), byStatus);
+        for (Task task : allTasks) {
+            if (tasks.getTask(task.getId()) != task) {
+                fail("Task " + task.getId() + " not found by ID");
+            }
+        }
+        // Stop the clock, so the count and the scan look at the same moment
+        Clock clock = Clock.fixed(Instant.now(), ZoneId.systemDefault());
+        tasks.setClock(clock);
+        int overdue = 0;
+        for (Task task : allTasks) {
+            if (task.isOverdueAt(LocalDateTime.now(clock))) {
+                overdue++;
+            }
+        }
+        expect("overdue tasks", overdue, tasks.getOverdueCount());
+        if (!tasks.checkOverdueIndex(LocalDateTime.now(clock))) {
+            fail("Overdue index differed from a scan");
+        }
+    }
+
+    private String randomLocation(Random random) {
+        return locations.get(random.nextInt(locations.size()));
+    }
+
+    private void checkNoNulls(String query, List<?> result) {
+        for (Object element : result) {
+            if (element == null) {
+                fail(query + " returned a null element");
+                return;
+            }
+        }
+    }
+
+    private void expect(String what, long expected, long actual) {
+        if (expected != actual) {
+            fail(what + ": expected " + expected + ", indexed " + actual);
+        }
+    }
+
+    private void fail(String failure) {
+        failures.add(failure);
+    }
+}
@@ -0,0 +1,74 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * HeapFootprint measures the heap retained by hives and tasks loaded from a data file
+ * The data is generated, saved as text and loaded back, the way the program gets it at startup.
+ * Usage: java HeapFootprint [hives] [tasks]
+ */
+public class HeapFootprint {
+
+    public static void main(String[] args) throws IOException {
+        int hiveCount = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int taskCount = args.length > 1 ? Integer.parseInt(args[1]) : hiveCount / 2;
+
+        File file = File.createTempFile("heap-footprint", ".txt");
+        file.deleteOnExit();
+        DataManager dataManager = new DataManager(file.getPath());
+        PrintStream out = System.out;
+        // The data manager reports every save and load; keep the output to the measurement
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+        }));
+        List<User> users = new ArrayList<>();
+        List<BeeHive> hives = new ArrayList<>();
+        List<Task> tasks = new ArrayList<>();
+        List<String> locations = new ArrayList<>();
+        long before;
+        long after;
+        try {
+            new SampleDataGenerator(42).generate(hiveCount, taskCount, 40, users, hives, tasks, locations);
+            dataManager.saveData(users, hives, tasks, locations);
+            users.clear();
+            hives.clear();
+            tasks.clear();
+            locations.clear();
+
+            before = usedHeap();
+            dataManager.reloadData(users, hives, tasks, locations);
+            after = usedHeap();
+        } finally {
+            System.setOut(out);
+        }
+
+        long retained = after - before;
+        System.out.println("Loaded " + hives.size() + " hives and " + tasks.size() + " tasks from " +
+                file.length() / 1024 + " KB of text");
+        System.out.printf("Retained heap: %.1f MB (%.0f bytes per record)%n", retained / 1048576.0,
+                (double) retained / Math.max(1, hives.size() + tasks.size()));
+        file.delete();
+    }
+
+    /**
+     * Get the heap in use after collecting garbage until it stops shrinking
+     */
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 10; i++) {
+            System.gc();
+            long now = runtime.totalMemory() - runtime.freeMemory();
+            if (now >= used) {
+                break;
+            }
+            used = now;
+        }
+        return used;
+    }
+}
@@ -0,0 +1,439 @@
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * HiveStore keeps hives in parallel arrays indexed by slot instead of one object per hive
+ * The numeric attributes, and SymbolTable codes for tag color, location and status, sit in primitive arrays, so
+ * aggregations walk a few dense arrays without allocating. Hives are handed out as
+ * BeeHive views backed by a slot, so the rest of the program can use them like any other hive.
+ * The store itself is not thread-safe, and its views do not give the visibility guarantees of BeeHive's
+ * volatile fields; it is meant for loading and analysing data on one thread, not for the live hives.
+ */
+public class HiveStore {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private int size = 0;
+    private int[] ids = new int[INITIAL_CAPACITY];
+    private int[] tagNumbers = new int[INITIAL_CAPACITY];
+    private int[] honeyLevels = new int[INITIAL_CAPACITY];
+    private boolean[] queens = new boolean[INITIAL_CAPACITY];
+    private int[] statusCodes = new int[INITIAL_CAPACITY];
+    private int[] locationCodes = new int[INITIAL_CAPACITY];
+    private int[] tagColorCodes = new int[INITIAL_CAPACITY];
+    private String[] notes = new String[INITIAL_CAPACITY];
+    private long[] actionBits = new long[INITIAL_CAPACITY];
+    private List<String>[] customActions = newActionsArray(INITIAL_CAPACITY);
+    // Views are created on first use and shared, so a slot always has the same BeeHive
+    private View[] views = new View[INITIAL_CAPACITY];
+
+    private final SymbolTable symbols = SymbolTable.SHARED;
+    // Indexed by symbol code: whether the code is a status that alone means the hive needs attention
+    private boolean[] attentionStatuses = new boolean[0];
+
+    /**
+     * Copy a hive into the store
+     * @param hive The hive to copy, including its ID
+     * @return the view of the stored hive
+     */
+    public BeeHive add(BeeHive hive) {
+        int slot = newSlot();
+        ids[slot] = hive.getId();
+        tagNumbers[slot] = hive.getTagNumber();
+        honeyLevels[slot] = hive.getHoneyLevel();
+        queens[slot] = hive.hasQueen();
+        statusCodes[slot] = statusCode(hive.getStatus());
+        locationCodes[slot] = symbols.code(hive.getLocation());
+        tagColorCodes[slot] = symbols.code(hive.getTagColor());
+        notes[slot] = hive.getNotes();
+        actionBits[slot] = hive.getRequiredActionBits();
+        List<String> custom = hive.getCustomActions();
+        // Custom action lists are read-only, so the hive's list can be shared
+        customActions[slot] = custom.isEmpty() ? null : custom;
+        return get(slot);
+    }
+
+    /**
+     * Create a new hive in the store with the next free ID
+     * @return the view of the new hive
+     */
+    public BeeHive addBeeHive(int tagNumber, String tagColor, String location) {
+        int slot = newSlot();
+        int id = BeeHive.getNextId();
+        BeeHive.setNextId(id + 1);
+        ids[slot] = id;
+        tagNumbers[slot] = tagNumber;
+        honeyLevels[slot] = 0;
+        queens[slot] = true;
+        statusCodes[slot] = statusCode("unknown");
+        locationCodes[slot] = symbols.code(location);
+        tagColorCodes[slot] = symbols.code(tagColor);
+        notes[slot] = "";
+        actionBits[slot] = 0;
+        customActions[slot] = null;
+        return get(slot);
+    }
+
+    /**
+     * Remove a hive, moving the last hive into its slot
+     * The removed view must not be used afterwards
+     * @param hive A view handed out by this store
+     */
+    public void remove(BeeHive hive) {
+        int slot = slotOf(hive);
+        int last = size - 1;
+        if (slot != last) {
+            ids[slot] = ids[last];
+            tagNumbers[slot] = tagNumbers[last];
+            honeyLevels[slot] = honeyLevels[last];
+            queens[slot] = queens[last];
+            statusCodes[slot] = statusCodes[last];
+            locationCodes[slot] = locationCodes[last];
+            tagColorCodes[slot] = tagColorCodes[last];
+            notes[slot] = notes[last];
+            actionBits[slot] = actionBits[last];
+            customActions[slot] = customActions[last];
+            views[slot] = views[last];
+            if (views[slot] != null) {
+                views[slot].slot = slot;
+            }
+        }
+        ((View) hive).slot = -1;
+        notes[last] = null;
+        customActions[last] = null;
+        views[last] = null;
+        size--;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Get the view of the hive in a slot
+     * @param slot The slot, from 0 to size() - 1
+     * @return the view, the same object on every call
+     */
+    public BeeHive get(int slot) {
+        if (slot < 0 || slot >= size) {
+            throw new IndexOutOfBoundsException("Slot " + slot + " of " + size);
+        }
+        View view = views[slot];
+        if (view == null) {
+            view = new View(slot);
+            views[slot] = view;
+        }
+        return view;
+    }
+
+    /**
+     * Get all hives as a read-only list of views, created as they are read
+     * @return the hives in slot order
+     */
+    public List<BeeHive> getAllHives() {
+        return new AbstractList<BeeHive>() {
+            @Override
+            public BeeHive get(int index) {
+                return HiveStore.this.get(index);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    // Aggregations: plain loops over the arrays
+
+    /**
+     * Count the hives without a queen
+     * @return the number of queenless hives
+     */
+    public int countQueenless() {
+        boolean[] queens = this.queens;
+        int count = 0;
+        for (int slot = 0; slot < size; slot++) {
+            if (!queens[slot]) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Count the hives that require a known action
+     * @param action The action
+     * @return the number of hives with that action
+     */
+    public int countWithAction(KnownAction action) {
+        long[] actionBits = this.actionBits;
+        long bit = action.bit();
+        int count = 0;
+        for (int slot = 0; slot < size; slot++) {
+            if ((actionBits[slot] & bit) != 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Count the hives with a status
+     * @param status The status, e.g. "healthy"
+     * @return the number of hives with that status
+     */
+    public int countByStatus(String status) {
+        int code = symbols.find(status);
+        if (code < 0) {
+            return 0;
+        }
+        int[] statusCodes = this.statusCodes;
+        int count = 0;
+        for (int slot = 0; slot < size; slot++) {
+            if (statusCodes[slot] == code) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Count the hives that need attention, by the same rules as BeeHive.needsAttention
+     * @return the number of hives needing attention
+     */
+    public int countNeedingAttention() {
+        int count = 0;
+        for (int slot = 0; slot < size; slot++) {
+            if (needsAttention(slot)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Get the average honey level of the hives at a location
+     * @param location The location
+     * @return the average honey level, or 0 if there are no hives there
+     */
+    public double averageHoneyLevel(String location) {
+        int code = symbols.find(location);
+        if (code < 0) {
+            return 0;
+        }
+        int[] locationCodes = this.locationCodes;
+        int[] honeyLevels = this.honeyLevels;
+        long total = 0;
+        int count = 0;
+        for (int slot = 0; slot < size; slot++) {
+            if (locationCodes[slot] == code) {
+                total += honeyLevels[slot];
+                count++;
+            }
+        }
+        return count == 0 ? 0 : (double) total / count;
+    }
+
+    /**
+     * Get the average honey level of every location in one pass
+     * @return location to average honey level
+     */
+    public Map<String, Double> averageHoneyLevelByLocation() {
+        // Sized for every symbol; codes that are not locations keep a count of 0
+        long[] totals = new long[symbols.size()];
+        int[] counts = new int[totals.length];
+        for (int slot = 0; slot < size; slot++) {
+            int code = locationCodes[slot];
+            totals[code] += honeyLevels[slot];
+            counts[code]++;
+        }
+        Map<String, Double> result = new HashMap<>();
+        for (int code = 0; code < totals.length; code++) {
+            if (counts[code] > 0) {
+                result.put(symbols.name(code), (double) totals[code] / counts[code]);
+            }
+        }
+        return result;
+    }
+
+    private boolean needsAttention(int slot) {
+        List<String> custom = customActions[slot];
+        return attentionStatuses[statusCodes[slot]] || honeyLevels[slot] < 10 || !queens[slot] ||
+                actionBits[slot] != 0 || (custom != null && !custom.isEmpty());
+    }
+
+    private int statusCode(String status) {
+        int code = symbols.code(status);
+        if (code >= attentionStatuses.length) {
+            // The table is shared, so codes added since the last growth may belong to statuses too
+            int known = attentionStatuses.length;
+            attentionStatuses = Arrays.copyOf(attentionStatuses, symbols.size());
+            for (int i = known; i < attentionStatuses.length; i++) {
+                String name = symbols.name(i);
+                attentionStatuses[i] = name.equals("needs attention") || name.equals("queenless") ||
+                        name.equals("empty");
+            }
+        }
+        return code;
+    }
+
+    private int slotOf(BeeHive hive) {
+        if (!(hive instanceof View) || ((View) hive).store() != this || ((View) hive).slot < 0) {
+            throw new IllegalArgumentException("Hive is not stored here: " + hive);
+        }
+        return ((View) hive).slot;
+    }
+
+    private int newSlot() {
+        if (size == ids.length) {
+            int capacity = ids.length * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            tagNumbers = Arrays.copyOf(tagNumbers, capacity);
+            honeyLevels = Arrays.copyOf(honeyLevels, capacity);
+            queens = Arrays.copyOf(queens, capacity);
+            statusCodes = Arrays.copyOf(statusCodes, capacity);
+            locationCodes = Arrays.copyOf(locationCodes, capacity);
+            tagColorCodes = Arrays.copyOf(tagColorCodes, capacity);
+            notes = Arrays.copyOf(notes, capacity);
+            actionBits = Arrays.copyOf(actionBits, capacity);
+            customActions = Arrays.copyOf(customActions, capacity);
+            views = Arrays.copyOf(views, capacity);
+        }
+        return size++;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<String>[] newActionsArray(int capacity) {
+        return (List<String>[]) new List<?>[capacity];
+    }
+
+    /**
+     * A BeeHive whose state lives in the store's arrays
+     */
+    private class View extends BeeHive {
+        int slot;
+
+        View(int slot) {
+            this.slot = slot;
+        }
+
+        HiveStore store() {
+            return HiveStore.this;
+        }
+
+        private int slot() {
+            if (slot < 0) {
+                throw new IllegalStateException("Hive was removed from the store");
+            }
+            return slot;
+        }
+
+        @Override
+        public int getId() {
+            return ids[slot()];
+        }
+
+        @Override
+        public int getTagNumber() {
+            return tagNumbers[slot()];
+        }
+
+        @Override
+        public String getTagColor() {
+            return symbols.name(tagColorCodes[slot()]);
+        }
+
+        @Override
+        public String getLocation() {
+            return symbols.name(locationCodes[slot()]);
+        }
+
+        @Override
+        public String getStatus() {
+            return symbols.name(statusCodes[slot()]);
+        }
+
+        @Override
+        public int getHoneyLevel() {
+            return honeyLevels[slot()];
+        }
+
+        @Override
+        public boolean hasQueen() {
+            return queens[slot()];
+        }
+
+        @Override
+        public String getNotes() {
+            return notes[slot()];
+        }
+
+        @Override
+        protected void storeId(int id) {
+            ids[slot()] = id;
+        }
+
+        @Override
+        protected void storeTagNumber(int tagNumber) {
+            tagNumbers[slot()] = tagNumber;
+        }
+
+        @Override
+        protected void storeTagColor(String tagColor) {
+            tagColorCodes[slot()] = symbols.code(tagColor);
+        }
+
+        @Override
+        protected void storeLocation(String location) {
+            locationCodes[slot()] = symbols.code(location);
+        }
+
+        @Override
+        protected void storeStatus(String status) {
+            statusCodes[slot()] = statusCode(status);
+        }
+
+        @Override
+        protected void storeHoneyLevel(int honeyLevel) {
+            honeyLevels[slot()] = honeyLevel;
+        }
+
+        @Override
+        protected void storeHasQueen(boolean hasQueen) {
+            queens[slot()] = hasQueen;
+        }
+
+        @Override
+        protected void storeNotes(String notes) {
+            HiveStore.this.notes[slot()] = notes;
+        }
+
+        @Override
+        protected long actionBits() {
+            return actionBits[slot()];
+        }
+
+        @Override
+        protected void storeActionBits(long bits) {
+            actionBits[slot()] = bits;
+        }
+
+        @Override
+        protected List<String> customActions() {
+            return customActions[slot()];
+        }
+
+        @Override
+        protected void storeCustomActions(List<String> custom) {
+            customActions[slot()] = custom;
+        }
+
+        @Override
+        public boolean needsAttention() {
+            return HiveStore.this.needsAttention(slot());
+        }
+    }
+}
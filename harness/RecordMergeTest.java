@@ -0,0 +1,179 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * RecordMergeTest saves edits from two DataManagers sharing one data file and checks how they merge
+ * Each case loads both sides from the same saved state, edits them, saves side A and then side B,
+ * and checks what side B holds afterwards: non-conflicting edits to different records and fields,
+ * conflicting edits to one field, records added and removed on either side, and a save by A that
+ * leaves the data file with the same modification time B saw. Exits with 1 if any check failed.
+ * Usage: java RecordMergeTest
+ */
+public class RecordMergeTest {
+    private final String dataFile;
+    private final List<String> failures = new ArrayList<>();
+
+    /**
+     * One process working on the data file
+     */
+    private static class Side {
+        final DataManager dataManager;
+        final List<User> users = new ArrayList<>();
+        final Hives hives = new Hives();
+        final Tasks tasks = new Tasks();
+        final List<String> locations = new ArrayList<>();
+
+        Side(String dataFile) {
+            dataManager = new DataManager(dataFile);
+            List<BeeHive> loadedHives = new ArrayList<>();
+            List<Task> loadedTasks = new ArrayList<>();
+            dataManager.loadData(users, loadedHives, loadedTasks, locations);
+            for (BeeHive hive : loadedHives) {
+                hives.addBeeHive(hive);
+            }
+            for (Task task : loadedTasks) {
+                tasks.addTask(task);
+            }
+        }
+
+        RecordMerge save() {
+            return dataManager.saveMerged(users, hives, tasks, locations);
+        }
+    }
+
+    private RecordMergeTest(String dataFile) {
+        this.dataFile = dataFile;
+    }
+
+    public static void main(String[] args) throws IOException {
+        File directory = Files.createTempDirectory("record-merge").toFile();
+        RecordMergeTest test = new RecordMergeTest(new File(directory, "DataFile.txt").getPath());
+        // The first load finds no file and starts from the default data
+        new Side(test.dataFile).save();
+
+        test.nonConflicting();
+        test.conflicting();
+        test.added();
+        test.removed();
+        test.sameModificationTime();
+
+        if (test.failures.isEmpty()) {
+            System.out.println("All checks passed");
+        } else {
+            System.err.println(test.failures.size() + " checks failed:");
+            test.failures.forEach(failure -> System.err.println("  " + failure));
+            System.exit(1);
+        }
+    }
+
+    private void nonConflicting() {
+        Side a = new Side(dataFile);
+        Side b = new Side(dataFile);
+        a.hives.getHive(1).setHoneyLevel(55);
+        b.hives.getHive(1).setStatus("healthy");
+        b.hives.getHive(2).setNotes("calm");
+        a.hives.getHive(3).addNotes("fed");
+        b.hives.getHive(3).addNotes("inspected");
+        a.tasks.getTask(1).complete();
+        b.tasks.getTask(2).setNotes("started");
+        a.save();
+        RecordMerge merge = b.save();
+
+        expect("non-conflicting: conflicts", 0, merge.getConflictCount());
+        expect("non-conflicting: honey level from A", 55, b.hives.getHive(1).getHoneyLevel());
+        expect("non-conflicting: status from B", "healthy", b.hives.getHive(1).getStatus());
+        expect("non-conflicting: notes of an untouched hive", "calm", b.hives.getHive(2).getNotes());
+        expect("non-conflicting: notes added on both sides", "fed; inspected", b.hives.getHive(3).getNotes());
+        expect("non-conflicting: task status from A", TaskStatus.COMPLETED, b.tasks.getTask(1).getTaskStatus());
+        expect("non-conflicting: task notes from B", "started", b.tasks.getTask(2).getNotes());
+        expect("non-conflicting: hive saved by B", 55, new Side(dataFile).hives.getHive(1).getHoneyLevel());
+    }
+
+    private void conflicting() {
+        Side a = new Side(dataFile);
+        Side b = new Side(dataFile);
+        a.hives.getHive(1).setHoneyLevel(60);
+        b.hives.getHive(1).setHoneyLevel(70);
+        b.hives.getHive(1).addRequiredAction(KnownAction.get(0));
+        a.tasks.getTask(3).setStatus(TaskStatus.COMPLETED);
+        b.tasks.getTask(3).setStatus(TaskStatus.IN_PROGRESS);
+        a.save();
+        RecordMerge merge = b.save();
+
+        expect("conflicting: conflicts", 2, merge.getConflictCount());
+        expect("conflicting: the value saved first wins", 60, b.hives.getHive(1).getHoneyLevel());
+        expect("conflicting: other fields of the record merge", true,
+                b.hives.getHive(1).hasRequiredAction(KnownAction.get(0)));
+        expect("conflicting: task status saved first wins", TaskStatus.COMPLETED, b.tasks.getTask(3).getTaskStatus());
+    }
+
+    private void added() {
+        Side a = new Side(dataFile);
+        Side b = new Side(dataFile);
+        BeeHive addedByA = a.hives.addBeeHive(900, "Red", "Forest Location");
+        // Both processes hand out the same next ID
+        BeeHive.setNextId(addedByA.getId());
+        BeeHive addedByB = b.hives.addBeeHive(901, "Blue", "Forest Location");
+        Task taskByA = a.tasks.addTask("Harvest Honey", "from A", "Forest Location");
+        int hiveCount = b.hives.getHiveCount();
+        int taskCount = b.tasks.getTaskCount();
+        a.save();
+        RecordMerge merge = b.save();
+
+        expect("added: conflicts", 0, merge.getConflictCount());
+        expect("added: hives on both sides kept", hiveCount + 1, b.hives.getHiveCount());
+        expect("added: A's hive under its ID", 900, b.hives.getHive(addedByA.getId()).getTagNumber());
+        expect("added: B's hive renumbered", true, addedByB.getId() != addedByA.getId());
+        expect("added: task from A", taskCount + 1, b.tasks.getTaskCount());
+        expect("added: A's task under its ID", "from A", b.tasks.getTask(taskByA.getId()).getDescription());
+    }
+
+    private void removed() {
+        Side a = new Side(dataFile);
+        Side b = new Side(dataFile);
+        int hiveCount = b.hives.getHiveCount();
+        a.hives.removeHive(2);
+        b.hives.removeHive(4);
+        // Removed by A while B changed it: the removal wins and the dropped change is reported
+        a.hives.removeHive(5);
+        b.hives.getHive(5).setNotes("still here");
+        a.save();
+        RecordMerge merge = b.save();
+
+        expect("removed: hive removed by A", true, b.hives.getHive(2) == null);
+        expect("removed: hive removed by B", true, b.hives.getHive(4) == null);
+        expect("removed: changed hive removed by the other side", true, b.hives.getHive(5) == null);
+        expect("removed: dropped change reported", 1, merge.getConflictCount());
+        expect("removed: hives left", hiveCount - 3, b.hives.getHiveCount());
+        expect("removed: saved without the removed hives", hiveCount - 3, new Side(dataFile).hives.getHiveCount());
+    }
+
+    private void sameModificationTime() {
+        File file = new File(dataFile);
+        Side a = new Side(dataFile);
+        Side b = new Side(dataFile);
+        long modified = file.lastModified();
+        a.hives.getHive(1).setHoneyLevel(11);
+        b.hives.getHive(3).setHoneyLevel(33);
+        a.save();
+        // As if both saves fell within the file system's timestamp resolution
+        if (!file.setLastModified(modified)) {
+            failures.add("same modification time: cannot set the modification time");
+            return;
+        }
+        b.save();
+
+        expect("same modification time: A's change merged", 11, b.hives.getHive(1).getHoneyLevel());
+        expect("same modification time: saved with both changes", 11,
+                new Side(dataFile).hives.getHive(1).getHoneyLevel());
+    }
+
+    private void expect(String what, Object expected, Object actual) {
+        if (!expected.equals(actual)) {
+            failures.add(what + ": expected " + expected + ", got " + actual);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * SampleDataGenerator fills the data lists with a large, realistic apiary for benchmarks
+ * Locations, tag colors, statuses and actions repeat the way they do in real data files,
+ * and a fixed seed makes every run produce the same data
+ */
+public class SampleDataGenerator {
+    private static final String[] TAG_COLORS = {"Yellow", "Blue", "Red", "Green", "Orange", "White"};
+    // Most hives are healthy; the rest are spread over the problem states
+    private static final String[] HIVE_STATUSES = {"healthy", "healthy", "healthy", "healthy", "healthy", "healthy",
+            "needs attention", "needs attention", "queenless", "empty", "unknown"};
+    private static final String[] TASK_STATUSES = {"pending", "pending", "in progress", "completed", "completed", "completed"};
+    // Mostly actions from the menu, plus a few typed in by hand
+    private static final String[] ACTIONS = {"Need to acquire queen", "Add supers", "Hive inspection required",
+            "Honey harvest needed", "Treat for varroa", "Check for swarm cells"};
+    private static final String[] TASK_NAMES = {"Inspect hives", "Harvest Honey", "Replace Queen", "Treat for varroa",
+            "Feed colonies", "Add supers", "Clean bottom boards"};
+
+    private final Random random;
+
+    /**
+     * Constructor for SampleDataGenerator
+     * @param seed Seed for the random choices
+     */
+    public SampleDataGenerator(long seed) {
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Replace the contents of the lists with generated data
+     * @param hiveCount Number of hives to generate
+     * @param taskCount Number of tasks to generate
+     * @param locationCount Number of apiary locations
+     */
+    public void generate(int hiveCount, int taskCount, int locationCount,
+                         List<User> users, List<BeeHive> hives, List<Task> tasks, List<String> locations) {
+        users.clear();
+        hives.clear();
+        tasks.clear();
+        locations.clear();
+        BeeHive.setNextId(1);
+        Task.setNextId(1);
+
+        users.add(new User("pavel", "password123", "Pavel", "admin"));
+        for (int i = 1; i <= 20; i++) {
+            users.add(new User("worker" + i, "worker123", "Worker " + i, "employee"));
+        }
+
+        for (int i = 1; i <= locationCount; i++) {
+            locations.add("Apiary " + i + " Location");
+        }
+
+        for (int i = 0; i < hiveCount; i++) {
+            // A few large apiaries hold most of the hives
+            String location = locations.get(skewedIndex(locations.size()));
+            BeeHive hive = new BeeHive(100 + i, pick(TAG_COLORS), location);
+            hive.setStatus(pick(HIVE_STATUSES));
+            hive.setHoneyLevel(random.nextInt(101));
+            if (random.nextInt(10) == 0) {
+                hive.setHasQueen(false);
+            }
+            if (random.nextInt(4) == 0) {
+                hive.setNotes("Inspected, colony " + (random.nextBoolean() ? "calm" : "defensive"));
+            }
+            int actions = random.nextInt(3);
+            for (int a = 0; a < actions; a++) {
+                hive.addRequiredAction(pick(ACTIONS));
+            }
+            hives.add(hive);
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        for (int i = 0; i < taskCount; i++) {
+            String location = locations.get(skewedIndex(locations.size()));
+            String name = pick(TASK_NAMES);
+            Task task = new Task(name, name + " at " + location, location);
+            task.setStatus(pick(TASK_STATUSES));
+            // Created during the last 30 days, so some pending tasks are overdue
+            task.setCreatedDate(now.minusMinutes(random.nextInt(30 * 24 * 60)));
+            tasks.add(task);
+        }
+    }
+
+    private String pick(String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+
+    private int skewedIndex(int size) {
+        double value = random.nextDouble();
+        return (int) (value * value * size);
+    }
+}
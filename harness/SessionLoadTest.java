@@ -0,0 +1,162 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * SessionLoadTest starts a SessionServer on generated data and drives it with many simultaneous sessions
+ * Every session connects and logs in, waits until all the others have too, then sends a mix of
+ * the menu's requests: hive details, queen and action updates, status and honey updates, task
+ * completion, statistics and the occasional full hive list. Reports throughput and latency.
+ * Usage: java SessionLoadTest [sessions] [requests per session] [hives]
+ */
+public class SessionLoadTest {
+
+    public static void main(String[] args) throws Exception {
+        int sessionCount = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int requestsPerSession = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int hiveCount = args.length > 2 ? Integer.parseInt(args[2]) : 5000;
+
+        List<User> users = new ArrayList<>();
+        List<BeeHive> hives = new ArrayList<>();
+        List<Task> tasks = new ArrayList<>();
+        List<String> locations = new ArrayList<>();
+        new SampleDataGenerator(42).generate(hiveCount, hiveCount / 2, 20, users, hives, tasks, locations);
+        int[] hiveIds = hives.stream().mapToInt(BeeHive::getId).toArray();
+        int[] taskIds = tasks.stream().mapToInt(Task::getId).toArray();
+
+        File file = File.createTempFile("session-load", ".txt");
+        file.deleteOnExit();
+        SessionServer server = new SessionServer(users, hives, tasks, locations, new DataManager(file.getPath()), 0);
+        // Save once at the end instead of every few seconds, so the numbers are about serving sessions
+        server.getSaveScheduler().setWindowMillis(TimeUnit.HOURS.toMillis(1));
+        server.start();
+        System.out.println("Server on port " + server.getPort() + " with " + hives.size() + " hives, sessions on " +
+                (server.usesVirtualThreads() ? "virtual threads" : "platform threads"));
+
+        CountDownLatch loggedIn = new CountDownLatch(sessionCount);
+        AtomicInteger errors = new AtomicInteger();
+        long[][] latencies = new long[sessionCount][];
+        ExecutorService clients = SessionServer.newSessionExecutor();
+        for (int i = 0; i < sessionCount; i++) {
+            int session = i;
+            clients.execute(() -> {
+                try {
+                    latencies[session] = runSession(server.getPort(), session, requestsPerSession, hiveIds, taskIds,
+                            loggedIn, errors);
+                } catch (IOException | InterruptedException e) {
+                    System.err.println("Session " + session + " failed: " + e.getMessage());
+                    errors.incrementAndGet();
+                    loggedIn.countDown();
+                }
+            });
+        }
+        loggedIn.await();
+        long start = System.nanoTime();
+        clients.shutdown();
+        clients.awaitTermination(10, TimeUnit.MINUTES);
+        long elapsed = System.nanoTime() - start;
+        server.stop();
+        System.out.println("Peak of " + server.getPeakSessionCount() + " sessions open at once");
+        System.out.println(server.getEventStatistics());
+
+        long[] all = Arrays.stream(latencies).filter(l -> l != null).flatMapToLong(Arrays::stream).sorted().toArray();
+        System.out.printf("%d requests in %.2f s: %.0f requests/s%n", all.length, elapsed / 1e9,
+                all.length / (elapsed / 1e9));
+        if (all.length > 0) {
+            System.out.printf("Latency p50 %.2f ms, p99 %.2f ms, max %.2f ms%n", all[all.length / 2] / 1e6,
+                    all[(int) (all.length * 0.99)] / 1e6, all[all.length - 1] / 1e6);
+        }
+        System.out.println(errors.get() + " errors");
+        file.delete();
+        if (errors.get() > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Run one session: log in, wait for the others, send the requests
+     * @return the latency of every request in nanoseconds
+     */
+    private static long[] runSession(int port, int session, int requestCount, int[] hiveIds, int[] taskIds,
+                                     CountDownLatch loggedIn, AtomicInteger errors)
+            throws IOException, InterruptedException {
+        Random random = new Random(session);
+        boolean admin = session % 4 == 0;
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             BufferedWriter out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+            socket.setTcpNoDelay(true);
+            String login = admin ? "LOGIN pavel|password123" : "LOGIN worker" + (1 + session % 20) + "|worker123";
+            if (!request(in, out, login)) {
+                errors.incrementAndGet();
+            }
+            loggedIn.countDown();
+            loggedIn.await();
+
+            long[] latencies = new long[requestCount];
+            for (int i = 0; i < requestCount; i++) {
+                String line = nextRequest(random, admin, hiveIds, taskIds);
+                long start = System.nanoTime();
+                if (!request(in, out, line)) {
+                    errors.incrementAndGet();
+                }
+                latencies[i] = System.nanoTime() - start;
+            }
+            request(in, out, "QUIT");
+            return latencies;
+        }
+    }
+
+    private static String nextRequest(Random random, boolean admin, int[] hiveIds, int[] taskIds) {
+        int hive = hiveIds[random.nextInt(hiveIds.length)];
+        int roll = random.nextInt(100);
+        if (roll < 40) {
+            return "HIVE " + hive;
+        } else if (roll < 50) {
+            return "QUEEN " + hive + "|" + (random.nextBoolean() ? "missing" : "installed");
+        } else if (roll < 60) {
+            return "ACTION " + hive + "|" + KnownAction.get(random.nextInt(KnownAction.count())).getLabel();
+        } else if (roll < 75 && admin) {
+            return random.nextBoolean() ? "HONEY " + hive + "|" + random.nextInt(101) : "STATUS " + hive + "|healthy";
+        } else if (roll < 85) {
+            return "COMPLETE " + taskIds[random.nextInt(taskIds.length)];
+        } else if (roll < 99) {
+            return "STATS";
+        }
+        return "HIVES";
+    }
+
+    /**
+     * Send one request and read its response up to the final "." line
+     * @return true if the response was OK
+     */
+    private static boolean request(BufferedReader in, BufferedWriter out, String line) throws IOException {
+        out.write(line);
+        out.write('\n');
+        out.flush();
+        String first = in.readLine();
+        String next = first;
+        while (next != null && !next.equals(".")) {
+            next = in.readLine();
+        }
+        if (first == null || !first.startsWith("OK")) {
+            System.err.println(line + " -> " + first);
+            return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,91 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * SnapshotBenchmark compares file size, save time and load time of the snapshot formats
+ * Usage: java SnapshotBenchmark [hives] [tasks] [iterations]
+ */
+public class SnapshotBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int hiveCount = args.length > 0 ? Integer.parseInt(args[0]) : 50000;
+        int taskCount = args.length > 1 ? Integer.parseInt(args[1]) : hiveCount / 2;
+        int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        List<User> users = new ArrayList<>();
+        List<BeeHive> hives = new ArrayList<>();
+        List<Task> tasks = new ArrayList<>();
+        List<String> locations = new ArrayList<>();
+        new SampleDataGenerator(42).generate(hiveCount, taskCount, 40, users, hives, tasks, locations);
+
+        File directory = Files.createTempDirectory("snapshot-benchmark").toFile();
+        System.out.println("Benchmarking " + hives.size() + " hives and " + tasks.size() + " tasks, " +
+                iterations + " iterations");
+        System.out.printf("%-10s %12s %12s %12s%n", "format", "size (KB)", "save (ms)", "load (ms)");
+
+        run("text", -1, false, directory, iterations, users, hives, tasks, locations);
+        run("gzip-1", 1, false, directory, iterations, users, hives, tasks, locations);
+        run("gzip-6", 6, false, directory, iterations, users, hives, tasks, locations);
+        run("gzip-9", 9, false, directory, iterations, users, hives, tasks, locations);
+        run("binary", -1, true, directory, iterations, users, hives, tasks, locations);
+
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    private static void run(String name, int compressionLevel, boolean binary, File directory, int iterations,
+                            List<User> users, List<BeeHive> hives, List<Task> tasks, List<String> locations) throws IOException {
+        File file = new File(directory, name + ".dat");
+        DataManager dataManager = new DataManager(file.getPath());
+        dataManager.setCompressionLevel(compressionLevel);
+        dataManager.setBinaryFormat(binary);
+
+        List<User> loadedUsers = new ArrayList<>();
+        List<BeeHive> loadedHives = new ArrayList<>();
+        List<Task> loadedTasks = new ArrayList<>();
+        List<String> loadedLocations = new ArrayList<>();
+
+        // The data manager reports every save and load; keep the table readable
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+        }));
+        long saveNanos = 0;
+        long loadNanos = 0;
+        try {
+            // One untimed round to warm up the JIT
+            dataManager.saveData(users, hives, tasks, locations);
+            dataManager.reloadData(loadedUsers, loadedHives, loadedTasks, loadedLocations);
+
+            for (int i = 0; i < iterations; i++) {
+                long start = System.nanoTime();
+                dataManager.saveData(users, hives, tasks, locations);
+                saveNanos += System.nanoTime() - start;
+
+                start = System.nanoTime();
+                dataManager.reloadData(loadedUsers, loadedHives, loadedTasks, loadedLocations);
+                loadNanos += System.nanoTime() - start;
+            }
+        } finally {
+            System.setOut(out);
+        }
+
+        if (loadedHives.size() != hives.size() || loadedTasks.size() != tasks.size()) {
+            System.err.println(name + ": loaded " + loadedHives.size() + " hives and " + loadedTasks.size() + " tasks");
+        }
+        System.out.printf("%-10s %12d %12.1f %12.1f%n", name, file.length() / 1024,
+                saveNanos / 1e6 / iterations, loadNanos / 1e6 / iterations);
+    }
+}
@@ -1,21 +1,53 @@
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * BeeHive class represents a beehive in the beekeeping system
  * Each hive has an ID, tag color, location, and status information
+ *
+ * Setters are synchronized on the hive, so concurrent sessions editing one hive take turns
+ * and its owner hears about the changes in order. Getters never lock: the fields are volatile
+ * and custom actions are replaced, never changed in place.
+ *
+ * Every change bumps the hive's version, which is saved with it. The version lets Hives.updateHive
+ * refuse an edit based on an outdated read, and lets RecordMerge tell which side changed a hive
+ * when another process saved the data file in the meantime.
+ *
+ * Every change made by a user is also published as a DomainEvent through the owning Hives, so
+ * persistence and metrics can follow along. Changes applied by a merge are not published: they
+ * come from the data file, so there is nothing to write back.
  */
 public class BeeHive {
-    private static int nextId = 1;
-    private int id;
-    private int tagNumber;
-    private String tagColor;
-    private String location;
-    private String status; // "healthy", "needs attention", "queenless", "empty", etc.
-    private int honeyLevel; // 0-100 percentage
-    private boolean hasQueen;
-    private String notes;
-    private List<String> requiredActions; // List of actions needed for this hive
+    private static final AtomicInteger nextId = new AtomicInteger(1);
+    private volatile int id;
+    private volatile int tagNumber;
+    // Tag color, location and status repeat across hives, so they are kept as SymbolTable codes
+    private volatile int tagColorCode;
+    private volatile int locationCode;
+    private volatile int statusCode; // "healthy", "needs attention", "queenless", "empty", etc.
+    private volatile int honeyLevel; // 0-100 percentage
+    private volatile boolean hasQueen;
+    private volatile String notes;
+    private volatile long actionBits; // KnownAction bits of the required actions
+    private volatile List<String> customActions; // Other required actions, read-only, null while there are none
+    private volatile Hives owner; // Hives that indexes this hive, if any
+    private volatile long version; // Bumped on every change, never goes down
+    // Data file bookkeeping, guarded by the hive's lock
+    volatile long syncedVersion = -1; // Version last loaded from or saved to the data file, -1 if never
+    BeeHive syncedState; // State at syncedVersion, kept from the first change after it for merging
+    private boolean merging; // Applying a merge, which sets the version itself
+    // Owner bookkeeping, guarded by the owner's locks
+    int ownerIndex = -1; // Position in the owner's list of hives
+    BeeHive nextWithSameTag; // Next hive in the owner's tag index with the same tag number
+    volatile Hives.Stripe stripe; // Owner's per-location state this hive is filed under
+    int attentionIndex = -1; // Position in the stripe's attention array, -1 if not there
+    // What the owner last added to its location statistics for this hive
+    boolean counted;
+    int countedHoneyLevel;
+    boolean countedQueenless;
+    boolean countedAttention;
 
     /**
      * Constructor for BeeHive
@@ -24,15 +56,34 @@ public class BeeHive {
      * @param location The location where the hive is placed
      */
     public BeeHive(int tagNumber, String tagColor, String location) {
-        this.id = nextId++;
+        this(nextId.getAndIncrement(), tagNumber, tagColor, location);
+    }
+
+    /**
+     * Constructor for a hive read back from the data file, the journal or a snapshot
+     * Keeps the stored ID without using up a new one, and only ever raises the next ID past it.
+     * @param id The stored ID
+     * @param tagNumber The tag number of the hive
+     * @param tagColor The color of the tag
+     * @param location The location where the hive is placed
+     */
+    BeeHive(int id, int tagNumber, String tagColor, String location) {
+        this.id = id;
+        nextId.accumulateAndGet(id + 1, Math::max);
         this.tagNumber = tagNumber;
-        this.tagColor = tagColor;
-        this.location = location;
-        this.status = "unknown";
+        this.tagColorCode = SymbolTable.SHARED.code(tagColor);
+        this.locationCode = SymbolTable.SHARED.code(location);
+        this.statusCode = SymbolTable.SHARED.code("unknown");
         this.honeyLevel = 0;
         this.hasQueen = true;
         this.notes = "";
-        this.requiredActions = new ArrayList<>();
+    }
+
+    /**
+     * Constructor for subclasses that keep the hive's state elsewhere (see HiveStore in harness/)
+     * Does not use up an ID
+     */
+    protected BeeHive() {
     }
 
     // Getter methods
@@ -45,15 +96,15 @@ public class BeeHive {
     }
 
     public String getTagColor() {
-        return tagColor;
+        return SymbolTable.SHARED.name(tagColorCode);
     }
 
     public String getLocation() {
-        return location;
+        return SymbolTable.SHARED.name(locationCode);
     }
 
     public String getStatus() {
-        return status;
+        return SymbolTable.SHARED.name(statusCode);
     }
 
     public int getHoneyLevel() {
@@ -68,94 +119,425 @@ public class BeeHive {
         return notes;
     }
 
+    /**
+     * Get the version of the hive's state
+     * @return a number that grows with every change
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Get the required actions, known actions first in menu order, then custom actions
+     * @return a read-only list, so every change goes through the methods that notify the owner
+     */
     public List<String> getRequiredActions() {
-        return requiredActions;
+        long bits = actionBits();
+        List<String> custom = customActions();
+        int customCount = custom == null ? 0 : custom.size();
+        if (bits == 0 && customCount == 0) {
+            return Collections.emptyList();
+        }
+        List<String> actions = new ArrayList<>(Long.bitCount(bits) + customCount);
+        for (long rest = bits; rest != 0; rest &= rest - 1) {
+            actions.add(KnownAction.get(Long.numberOfTrailingZeros(rest)).getLabel());
+        }
+        if (custom != null) {
+            actions.addAll(custom);
+        }
+        return Collections.unmodifiableList(actions);
     }
 
-    // Setter methods
-    public void setId(int id) {
+    /**
+     * Get the known required actions as bits
+     * @return the KnownAction bits that are set
+     */
+    public long getRequiredActionBits() {
+        return actionBits();
+    }
+
+    /**
+     * Get the required actions that are not known actions
+     * @return a read-only list of the custom actions
+     */
+    public List<String> getCustomActions() {
+        List<String> custom = customActions();
+        return custom == null ? Collections.<String>emptyList() : custom;
+    }
+
+    public boolean hasRequiredAction(KnownAction action) {
+        return (actionBits() & action.bit()) != 0;
+    }
+
+    public boolean hasRequiredAction(String action) {
+        KnownAction known = KnownAction.find(action);
+        if (known != null) {
+            return hasRequiredAction(known);
+        }
+        List<String> custom = customActions();
+        return custom != null && custom.contains(action);
+    }
+
+    /**
+     * Check if any action is required
+     * @return true if the hive has a known or custom required action
+     */
+    public boolean hasRequiredActions() {
+        List<String> custom = customActions();
+        return actionBits() != 0 || (custom != null && !custom.isEmpty());
+    }
+
+    // Storage methods: the only places that touch the fields, so a subclass can keep the state elsewhere
+    protected void storeId(int id) {
         this.id = id;
+    }
+
+    protected void storeTagNumber(int tagNumber) {
+        this.tagNumber = tagNumber;
+    }
+
+    protected void storeTagColor(String tagColor) {
+        this.tagColorCode = SymbolTable.SHARED.code(tagColor);
+    }
+
+    protected void storeLocation(String location) {
+        this.locationCode = SymbolTable.SHARED.code(location);
+    }
+
+    protected void storeStatus(String status) {
+        this.statusCode = SymbolTable.SHARED.code(status);
+    }
+
+    protected void storeHoneyLevel(int honeyLevel) {
+        this.honeyLevel = honeyLevel;
+    }
+
+    protected void storeHasQueen(boolean hasQueen) {
+        this.hasQueen = hasQueen;
+    }
+
+    protected void storeNotes(String notes) {
+        this.notes = notes;
+    }
+
+    protected long actionBits() {
+        return actionBits;
+    }
+
+    protected void storeActionBits(long actionBits) {
+        this.actionBits = actionBits;
+    }
+
+    /**
+     * Get the custom actions
+     * @return the read-only list of custom actions, or null if there are none
+     */
+    protected List<String> customActions() {
+        return customActions;
+    }
+
+    /**
+     * Replace the custom actions
+     * @param customActions A read-only list that is never changed afterwards, or null for none
+     */
+    protected void storeCustomActions(List<String> customActions) {
+        this.customActions = customActions;
+    }
+
+    // Setter methods
+    public synchronized void setId(int id) {
+        int previous = getId();
+        storeId(id);
         // Update nextId if necessary
-        if (id >= nextId) {
-            nextId = id + 1;
+        nextId.accumulateAndGet(id + 1, Math::max);
+        if (owner != null && previous != id) {
+            owner.idChanged(this, previous);
         }
     }
 
-    public void setTagNumber(int tagNumber) {
-        this.tagNumber = tagNumber;
+    public synchronized void setTagNumber(int tagNumber) {
+        int previous = getTagNumber();
+        touch();
+        storeTagNumber(tagNumber);
+        if (owner != null && previous != tagNumber) {
+            owner.tagNumberChanged(this, previous);
+        }
+        publish(DomainEvent.Type.HIVE_TAG_CHANGED, getTagColor(), tagNumber);
     }
 
-    public void setTagColor(String tagColor) {
-        this.tagColor = tagColor;
+    public synchronized void setTagColor(String tagColor) {
+        touch();
+        storeTagColor(tagColor);
+        publish(DomainEvent.Type.HIVE_TAG_CHANGED, tagColor, getTagNumber());
     }
 
-    public void setLocation(String location) {
-        this.location = location;
+    public synchronized void setLocation(String location) {
+        String previous = getLocation();
+        touch();
+        storeLocation(location);
+        if (owner != null && !previous.equals(location)) {
+            owner.hiveMoved(this, previous);
+        }
+        publish(DomainEvent.Type.HIVE_MOVED, location, 0);
     }
 
-    public void setStatus(String status) {
-        this.status = status;
+    public synchronized void setStatus(String status) {
+        touch();
+        storeStatus(status);
+        attentionChanged();
+        publish(DomainEvent.Type.HIVE_STATUS_CHANGED, status, 0);
     }
 
-    public void setHoneyLevel(int honeyLevel) {
+    public synchronized void setHoneyLevel(int honeyLevel) {
         if (honeyLevel >= 0 && honeyLevel <= 100) {
-            this.honeyLevel = honeyLevel;
+            touch();
+            storeHoneyLevel(honeyLevel);
+            attentionChanged();
+            publish(DomainEvent.Type.HONEY_LEVEL_CHANGED, null, honeyLevel);
         }
     }
 
-    public void setHasQueen(boolean hasQueen) {
-        this.hasQueen = hasQueen;
+    public synchronized void setHasQueen(boolean hasQueen) {
+        touch();
+        storeHasQueen(hasQueen);
         // If queen is missing, add to required actions
-        if (!hasQueen && !requiredActions.contains("Need to acquire queen")) {
-            requiredActions.add("Need to acquire queen");
+        if (!hasQueen) {
+            storeActionBits(actionBits() | KnownAction.NEED_QUEEN.bit());
         }
+        attentionChanged();
+        publish(hasQueen ? DomainEvent.Type.QUEEN_MARKED_PRESENT : DomainEvent.Type.QUEEN_MARKED_MISSING, null, 0);
     }
 
-    public void setNotes(String notes) {
-        this.notes = notes;
+    public synchronized void setNotes(String notes) {
+        touch();
+        storeNotes(notes);
+        publish(DomainEvent.Type.HIVE_NOTES_CHANGED, notes, 0);
     }
 
     /**
      * Add notes to the hive
      * @param notes Additional notes to add
      */
-    public void addNotes(String notes) {
-        if (this.notes.isEmpty()) {
-            this.notes = notes;
+    public synchronized void addNotes(String notes) {
+        String current = getNotes();
+        touch();
+        if (current.isEmpty()) {
+            storeNotes(notes);
         } else {
-            this.notes += "; " + notes;
+            storeNotes(current + "; " + notes);
         }
+        publish(DomainEvent.Type.HIVE_NOTES_CHANGED, getNotes(), 0);
     }
 
     /**
      * Add a required action for this hive
      * @param action The action needed
      */
-    public void addRequiredAction(String action) {
-        if (!requiredActions.contains(action)) {
-            requiredActions.add(action);
+    public synchronized void addRequiredAction(String action) {
+        KnownAction known = KnownAction.find(action);
+        if (known != null) {
+            addRequiredAction(known);
+            return;
+        }
+        List<String> custom = customActions();
+        if (custom == null || !custom.contains(action)) {
+            List<String> updated = custom == null ? new ArrayList<>(1) : new ArrayList<>(custom);
+            updated.add(action);
+            touch();
+            storeCustomActions(Collections.unmodifiableList(updated));
+            attentionChanged();
+            publish(DomainEvent.Type.ACTION_ADDED, action, 0);
         }
     }
 
+    /**
+     * Add a known required action for this hive
+     * @param action The action needed
+     */
+    public synchronized void addRequiredAction(KnownAction action) {
+        long bits = actionBits();
+        if ((bits & action.bit()) == 0) {
+            touch();
+            storeActionBits(bits | action.bit());
+            attentionChanged();
+            publish(DomainEvent.Type.ACTION_ADDED, action.getLabel(), 0);
+        }
+    }
+
+    /**
+     * Remove a required action from this hive
+     * @param action The action that is no longer needed
+     * @return true if the action was required, false otherwise
+     */
+    public synchronized boolean removeRequiredAction(String action) {
+        KnownAction known = KnownAction.find(action);
+        if (known != null) {
+            return removeRequiredAction(known);
+        }
+        List<String> custom = customActions();
+        if (custom == null || !custom.contains(action)) {
+            return false;
+        }
+        List<String> updated = new ArrayList<>(custom);
+        updated.remove(action);
+        touch();
+        storeCustomActions(updated.isEmpty() ? null : Collections.unmodifiableList(updated));
+        attentionChanged();
+        publish(DomainEvent.Type.ACTION_REMOVED, action, 0);
+        return true;
+    }
+
+    /**
+     * Remove a known required action from this hive
+     * @param action The action that is no longer needed
+     * @return true if the action was required, false otherwise
+     */
+    public synchronized boolean removeRequiredAction(KnownAction action) {
+        long bits = actionBits();
+        if ((bits & action.bit()) == 0) {
+            return false;
+        }
+        touch();
+        storeActionBits(bits & ~action.bit());
+        attentionChanged();
+        publish(DomainEvent.Type.ACTION_REMOVED, action.getLabel(), 0);
+        return true;
+    }
+
     /**
      * Mark that a queen has been acquired for this hive
      */
-    public void markQueenAcquired() {
-        if (!hasQueen) {
-            requiredActions.remove("Need to acquire queen");
-            requiredActions.add("Queen acquired - needs installation");
+    public synchronized void markQueenAcquired() {
+        if (!hasQueen()) {
+            touch();
+            storeActionBits((actionBits() & ~KnownAction.NEED_QUEEN.bit()) | KnownAction.QUEEN_ACQUIRED.bit());
+            attentionChanged();
+            publish(DomainEvent.Type.QUEEN_ACQUIRED, null, 0);
         }
     }
 
     /**
      * Mark that a queen has been installed in this hive
      */
-    public void markQueenInstalled() {
-        if (!hasQueen) {
-            hasQueen = true;
-            requiredActions.remove("Queen acquired - needs installation");
-            addNotes("Queen installed");
+    public synchronized void markQueenInstalled() {
+        if (!hasQueen()) {
+            // One change with one version and one event, notes included
+            String current = getNotes();
+            touch();
+            storeHasQueen(true);
+            storeActionBits(actionBits() & ~KnownAction.QUEEN_ACQUIRED.bit());
+            storeNotes(current.isEmpty() ? "Queen installed" : current + "; Queen installed");
+            attentionChanged();
+            publish(DomainEvent.Type.QUEEN_INSTALLED, getNotes(), 0);
+        }
+    }
+
+    /**
+     * Copy all state except the ID from another hive, e.g. after a reload
+     * @param other The hive to copy from
+     */
+    public synchronized void copyStateFrom(BeeHive other) {
+        setTagNumber(other.getTagNumber());
+        setTagColor(other.getTagColor());
+        setLocation(other.getLocation());
+        setStatus(other.getStatus());
+        setHoneyLevel(other.getHoneyLevel());
+        touch();
+        storeHasQueen(other.hasQueen());
+        storeActionBits(other.actionBits());
+        List<String> otherCustom = other.customActions();
+        // Custom action lists are read-only, so the other hive's list can be shared
+        storeCustomActions(otherCustom == null || otherCustom.isEmpty() ? null : otherCustom);
+        setNotes(other.getNotes());
+        attentionChanged();
+    }
+
+    /**
+     * Make a detached copy with the same ID, state and version, e.g. to save or merge it
+     * The copy has no owner and does not use up an ID
+     * @return the copy
+     */
+    synchronized BeeHive copy() {
+        BeeHive copy = new BeeHive();
+        copy.storeId(getId());
+        copy.storeTagNumber(getTagNumber());
+        copy.storeTagColor(getTagColor());
+        copy.storeLocation(getLocation());
+        copy.storeStatus(getStatus());
+        copy.storeHoneyLevel(getHoneyLevel());
+        copy.storeHasQueen(hasQueen());
+        copy.storeNotes(getNotes());
+        copy.storeActionBits(actionBits());
+        // Custom action lists are read-only, so the copy can share this hive's list
+        copy.storeCustomActions(customActions());
+        copy.version = version;
+        return copy;
+    }
+
+    /**
+     * Get the hive as it has to be saved: itself while unchanged since the last load or save,
+     * otherwise a copy, so the saved state and the version saved with it always match
+     * @return this hive or a detached copy of it
+     */
+    synchronized BeeHive stateToSave() {
+        return version == syncedVersion ? this : copy();
+    }
+
+    /**
+     * Get the location the data file holds this hive at
+     * @return the location at the synced version, or null if the hive was never loaded or saved
+     */
+    synchronized String getSyncedLocation() {
+        if (syncedVersion < 0) {
+            return null;
+        }
+        return syncedState != null ? syncedState.getLocation() : getLocation();
+    }
+
+    /**
+     * Replace the state with the result of a merge, without counting it as a change of this hive
+     * @param merged The merged state
+     * @param version The version of the merged state, higher than the current version
+     */
+    synchronized void applyMerge(BeeHive merged, long version) {
+        merging = true;
+        try {
+            copyStateFrom(merged);
+        } finally {
+            merging = false;
         }
+        this.version = version;
+    }
+
+    /**
+     * Set the version the hive was saved with, when loading it
+     * @param version The saved version
+     */
+    void setVersion(long version) {
+        this.version = version;
+    }
+
+    /**
+     * Record that the data file holds this hive at a version
+     * @param syncedVersion The version that was loaded, saved or merged in
+     * @param syncedState The state at that version, needed only if the hive has changed since
+     */
+    synchronized void markSynced(long syncedVersion, BeeHive syncedState) {
+        this.syncedVersion = syncedVersion;
+        this.syncedState = version == syncedVersion ? null : syncedState;
+    }
+
+    /**
+     * Check if another hive holds the same state, ignoring the ID
+     * @param other The hive to compare with
+     * @return true if every field matches, false otherwise
+     */
+    public boolean hasSameStateAs(BeeHive other) {
+        return getTagNumber() == other.getTagNumber() && getHoneyLevel() == other.getHoneyLevel() &&
+                hasQueen() == other.hasQueen() && getTagColor().equals(other.getTagColor()) &&
+                getLocation().equals(other.getLocation()) && getStatus().equals(other.getStatus()) &&
+                getNotes().equals(other.getNotes()) && actionBits() == other.actionBits() &&
+                getCustomActions().equals(other.getCustomActions());
     }
 
     /**
@@ -163,8 +545,51 @@ public class BeeHive {
      * @return true if the hive needs attention, false otherwise
      */
     public boolean needsAttention() {
+        String status = getStatus();
         return status.equals("needs attention") || status.equals("queenless") ||
-                status.equals("empty") || honeyLevel < 10 || !hasQueen || !requiredActions.isEmpty();
+                status.equals("empty") || getHoneyLevel() < 10 || !hasQueen() || hasRequiredActions();
+    }
+
+    /**
+     * Set the Hives that indexes this hive and has to hear about changes
+     * @param owner The owning Hives, or null when the hive is removed
+     */
+    void setOwner(Hives owner) {
+        this.owner = owner;
+    }
+
+    Hives getOwner() {
+        return owner;
+    }
+
+    /**
+     * Bump the version before a change is stored, first keeping the synced state if this is the
+     * first change since the last load or save
+     */
+    private void touch() {
+        if (merging) {
+            return;
+        }
+        if (version == syncedVersion) {
+            syncedState = copy();
+        }
+        version++;
+    }
+
+    private void attentionChanged() {
+        if (owner != null) {
+            owner.attentionChanged(this);
+        }
+    }
+
+    /**
+     * Publish a change through the owner, unless it is part of a merge
+     */
+    private void publish(DomainEvent.Type type, String text, long number) {
+        Hives owner = this.owner;
+        if (owner != null && !merging) {
+            owner.publish(type, getId(), text, number, version);
+        }
     }
 
     /**
@@ -172,7 +597,15 @@ public class BeeHive {
      * @return the next ID
      */
     public static int getNextId() {
-        return nextId;
+        return nextId.get();
+    }
+
+    /**
+     * Use up the next available ID, e.g. to give a record a new ID
+     * @return the ID, which no other record gets
+     */
+    static int takeNextId() {
+        return nextId.getAndIncrement();
     }
 
     /**
@@ -180,20 +613,28 @@ public class BeeHive {
      * @param nextId the next ID to set
      */
     public static void setNextId(int nextId) {
-        BeeHive.nextId = nextId;
+        BeeHive.nextId.set(nextId);
+    }
+
+    /**
+     * Raise the next available ID, never lowering it
+     * @param nextId the lowest ID that may be handed out next
+     */
+    static void raiseNextId(int nextId) {
+        BeeHive.nextId.accumulateAndGet(nextId, Math::max);
     }
 
     @Override
     public String toString() {
         return "BeeHive{" +
-                "id=" + id +
-                ", tagNumber=" + tagNumber +
-                ", tagColor='" + tagColor + '\'' +
-                ", location='" + location + '\'' +
-                ", status='" + status + '\'' +
-                ", honeyLevel=" + honeyLevel +
-                ", hasQueen=" + hasQueen +
-                ", requiredActions=" + requiredActions +
+                "id=" + getId() +
+                ", tagNumber=" + getTagNumber() +
+                ", tagColor='" + getTagColor() + '\'' +
+                ", location='" + getLocation() + '\'' +
+                ", status='" + getStatus() + '\'' +
+                ", honeyLevel=" + getHoneyLevel() +
+                ", hasQueen=" + hasQueen() +
+                ", requiredActions=" + getRequiredActions() +
                 '}';
     }
 }
\ No newline at end of file
@@ -0,0 +1,292 @@
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * BinarySnapshot reads and writes the data file as fixed-width binary records
+ * Every string (location, tag color, status, notes, custom actions, ...) is stored once in a string table
+ * and records refer to it by index, so loading a mapped file is mostly reading ints at fixed offsets
+ *
+ * Layout (big-endian):
+ *   header     MAGIC, VERSION, string count, user count, location count, hive count, task count,
+ *              action count, next hive ID, next task ID
+ *   strings    per string: byte length (int) followed by UTF-8 bytes
+ *   users      username, password, name, role (string indexes), credential epoch
+ *   locations  location (string index)
+ *   hives      id, tag number, tag color, location, status, honey level, has queen,
+ *              notes, KnownAction bits (high int, low int), first action, action count,
+ *              version (high int, low int)
+ *   tasks      id, name, description, location, status, notes, version (high int, low int)
+ *   actions    custom action (string index), referenced by hives as a contiguous range
+ *
+ * Version 1 files have no action bits; every action is in the actions section. Version 2 files have
+ * no record versions, and versions 1 to 3 no credential epochs. All of them can still be read.
+ */
+public class BinarySnapshot {
+    static final int MAGIC = 0x42454542; // "BEEB"
+    static final int VERSION = 4;
+    private static final int VERSION_NO_CREDENTIAL_EPOCHS = 3;
+    private static final int VERSION_UNVERSIONED_RECORDS = 2;
+    private static final int VERSION_STRING_ACTIONS = 1;
+
+    private static final int HEADER_INTS = 10;
+    private static final int USER_INTS = 5;
+    private static final int VERSION_3_USER_INTS = 4;
+    private static final int HIVE_INTS = 14;
+    private static final int VERSION_2_HIVE_INTS = 12;
+    private static final int VERSION_1_HIVE_INTS = 10;
+    private static final int TASK_INTS = 8;
+    private static final int VERSION_2_TASK_INTS = 6;
+
+    /**
+     * Check if a file starts with the binary snapshot magic number
+     * @param file The file to check
+     * @return true if the file is a binary snapshot, false otherwise
+     */
+    public static boolean isBinarySnapshot(File file) {
+        if (!file.isFile() || file.length() < 4) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            return in.readInt() == MAGIC;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Write all data as a binary snapshot
+     * @param file The file to write
+     */
+    public static void write(File file, List<User> users, List<BeeHive> hives, List<Task> tasks, List<String> locations) throws IOException {
+        StringTable strings = new StringTable();
+        int[] userRecords = new int[users.size() * USER_INTS];
+        int[] locationRecords = new int[locations.size()];
+        int[] hiveRecords = new int[hives.size() * HIVE_INTS];
+        int[] taskRecords = new int[tasks.size() * TASK_INTS];
+        List<Integer> actionRecords = new ArrayList<>();
+
+        int i = 0;
+        for (User user : users) {
+            userRecords[i++] = strings.indexOf(user.getUsername());
+            userRecords[i++] = strings.indexOf(user.getPassword());
+            userRecords[i++] = strings.indexOf(user.getName());
+            userRecords[i++] = strings.indexOf(user.getRole());
+            userRecords[i++] = user.getCredentialEpoch();
+        }
+
+        i = 0;
+        for (String location : locations) {
+            locationRecords[i++] = strings.indexOf(location);
+        }
+
+        i = 0;
+        for (BeeHive hive : hives) {
+            List<String> actions = hive.getCustomActions();
+            long bits = hive.getRequiredActionBits();
+            hiveRecords[i++] = hive.getId();
+            hiveRecords[i++] = hive.getTagNumber();
+            hiveRecords[i++] = strings.indexOf(hive.getTagColor());
+            hiveRecords[i++] = strings.indexOf(hive.getLocation());
+            hiveRecords[i++] = strings.indexOf(hive.getStatus());
+            hiveRecords[i++] = hive.getHoneyLevel();
+            hiveRecords[i++] = hive.hasQueen() ? 1 : 0;
+            hiveRecords[i++] = strings.indexOf(hive.getNotes());
+            hiveRecords[i++] = (int) (bits >>> 32);
+            hiveRecords[i++] = (int) bits;
+            hiveRecords[i++] = actionRecords.size();
+            hiveRecords[i++] = actions.size();
+            for (String action : actions) {
+                actionRecords.add(strings.indexOf(action));
+            }
+            hiveRecords[i++] = (int) (hive.getVersion() >>> 32);
+            hiveRecords[i++] = (int) hive.getVersion();
+        }
+
+        i = 0;
+        for (Task task : tasks) {
+            taskRecords[i++] = task.getId();
+            taskRecords[i++] = strings.indexOf(task.getName());
+            taskRecords[i++] = strings.indexOf(task.getDescription());
+            taskRecords[i++] = strings.indexOf(task.getLocation());
+            taskRecords[i++] = strings.indexOf(task.getStatus());
+            taskRecords[i++] = strings.indexOf(task.getNotes());
+            taskRecords[i++] = (int) (task.getVersion() >>> 32);
+            taskRecords[i++] = (int) task.getVersion();
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 64 * 1024))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(strings.size());
+            out.writeInt(users.size());
+            out.writeInt(locations.size());
+            out.writeInt(hives.size());
+            out.writeInt(tasks.size());
+            out.writeInt(actionRecords.size());
+            out.writeInt(BeeHive.getNextId());
+            out.writeInt(Task.getNextId());
+
+            for (byte[] bytes : strings.encoded) {
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+            writeInts(out, userRecords);
+            writeInts(out, locationRecords);
+            writeInts(out, hiveRecords);
+            writeInts(out, taskRecords);
+            for (int action : actionRecords) {
+                out.writeInt(action);
+            }
+        }
+    }
+
+    private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        for (int value : values) {
+            out.writeInt(value);
+        }
+    }
+
+    /**
+     * Read a binary snapshot into a chunk
+     * @param file The file to read
+     * @param chunk Receives the records and the stored next IDs
+     */
+    static void read(File file, DataManager.TextChunk chunk) throws IOException {
+        List<User> users = chunk.users;
+        List<BeeHive> hives = chunk.hives;
+        List<Task> tasks = chunk.tasks;
+        List<String> locations = chunk.locations;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (buffer.getInt(0) != MAGIC) {
+                throw new IOException("Not a binary snapshot: " + file);
+            }
+            int version = buffer.getInt(4);
+            if (version < VERSION_STRING_ACTIONS || version > VERSION) {
+                throw new IOException("Unsupported binary snapshot version: " + version);
+            }
+            boolean recordVersions = version >= VERSION_NO_CREDENTIAL_EPOCHS;
+            int userInts = version == VERSION ? USER_INTS : VERSION_3_USER_INTS;
+            int hiveInts = recordVersions ? HIVE_INTS :
+                    version == VERSION_UNVERSIONED_RECORDS ? VERSION_2_HIVE_INTS : VERSION_1_HIVE_INTS;
+            int taskInts = recordVersions ? TASK_INTS : VERSION_2_TASK_INTS;
+            int stringCount = buffer.getInt(8);
+            int userCount = buffer.getInt(12);
+            int locationCount = buffer.getInt(16);
+            int hiveCount = buffer.getInt(20);
+            int taskCount = buffer.getInt(24);
+            int actionCount = buffer.getInt(28);
+            int nextHiveId = buffer.getInt(32);
+            int nextTaskId = buffer.getInt(36);
+
+            // Decode the string table once; every record below only holds indexes into it
+            String[] strings = new String[stringCount];
+            int position = HEADER_INTS * 4;
+            for (int i = 0; i < stringCount; i++) {
+                int length = buffer.getInt(position);
+                position += 4;
+                byte[] bytes = new byte[length];
+                buffer.position(position);
+                buffer.get(bytes);
+                strings[i] = new String(bytes, StandardCharsets.UTF_8);
+                position += length;
+            }
+
+            int usersStart = position;
+            int locationsStart = usersStart + userCount * userInts * 4;
+            int hivesStart = locationsStart + locationCount * 4;
+            int tasksStart = hivesStart + hiveCount * hiveInts * 4;
+            int actionsStart = tasksStart + taskCount * taskInts * 4;
+            if ((long) actionsStart + actionCount * 4L > buffer.capacity()) {
+                throw new IOException("Truncated binary snapshot: " + file);
+            }
+
+            for (int i = 0; i < userCount; i++) {
+                int record = usersStart + i * userInts * 4;
+                User user = new User(strings[buffer.getInt(record)], strings[buffer.getInt(record + 4)],
+                        strings[buffer.getInt(record + 8)], strings[buffer.getInt(record + 12)]);
+                user.setCredentialEpoch(version == VERSION ? buffer.getInt(record + 16) : 0);
+                users.add(user);
+            }
+
+            for (int i = 0; i < locationCount; i++) {
+                locations.add(strings[buffer.getInt(locationsStart + i * 4)]);
+            }
+
+            for (int i = 0; i < hiveCount; i++) {
+                int record = hivesStart + i * hiveInts * 4;
+                BeeHive hive = new BeeHive(buffer.getInt(record), buffer.getInt(record + 4),
+                        strings[buffer.getInt(record + 8)], strings[buffer.getInt(record + 12)]);
+                hive.setStatus(strings[buffer.getInt(record + 16)]);
+                hive.setHoneyLevel(buffer.getInt(record + 20));
+                hive.setHasQueen(buffer.getInt(record + 24) != 0);
+                hive.setNotes(strings[buffer.getInt(record + 28)]);
+                int actionRange = record + 32;
+                if (version != VERSION_STRING_ACTIONS) {
+                    long bits = ((long) buffer.getInt(record + 32) << 32) | (buffer.getInt(record + 36) & 0xFFFFFFFFL);
+                    for (long rest = bits; rest != 0; rest &= rest - 1) {
+                        hive.addRequiredAction(KnownAction.get(Long.numberOfTrailingZeros(rest)));
+                    }
+                    actionRange = record + 40;
+                }
+                int firstAction = buffer.getInt(actionRange);
+                int hiveActions = buffer.getInt(actionRange + 4);
+                for (int a = 0; a < hiveActions; a++) {
+                    hive.addRequiredAction(strings[buffer.getInt(actionsStart + (firstAction + a) * 4)]);
+                }
+                hive.setVersion(recordVersions ? readLong(buffer, record + 48) : 0);
+                hives.add(hive);
+            }
+
+            for (int i = 0; i < taskCount; i++) {
+                int record = tasksStart + i * taskInts * 4;
+                Task task = new Task(buffer.getInt(record), strings[buffer.getInt(record + 4)],
+                        strings[buffer.getInt(record + 8)], strings[buffer.getInt(record + 12)]);
+                task.setStatus(TaskStatus.parseStored(strings[buffer.getInt(record + 16)]));
+                task.setNotes(strings[buffer.getInt(record + 20)]);
+                task.setVersion(recordVersions ? readLong(buffer, record + 24) : 0);
+                tasks.add(task);
+            }
+
+            chunk.nextHiveId = nextHiveId;
+            chunk.nextTaskId = nextTaskId;
+        }
+    }
+
+    private static long readLong(MappedByteBuffer buffer, int position) {
+        return ((long) buffer.getInt(position) << 32) | (buffer.getInt(position + 4) & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Deduplicating string table used while writing a snapshot
+     */
+    private static class StringTable {
+        private final Map<String, Integer> indexes = new HashMap<>();
+        private final List<byte[]> encoded = new ArrayList<>();
+
+        int indexOf(String value) {
+            if (value == null) {
+                value = "";
+            }
+            Integer index = indexes.get(value);
+            if (index == null) {
+                index = encoded.size();
+                indexes.put(value, index);
+                encoded.add(value.getBytes(StandardCharsets.UTF_8));
+            }
+            return index;
+        }
+
+        int size() {
+            return encoded.size();
+        }
+    }
+}
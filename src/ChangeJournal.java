@@ -0,0 +1,321 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ChangeJournal appends small records for single edits to a journal next to the data file,
+ * e.g. DataFile.txt.journal
+ * The journal is replayed on top of the last snapshot when data is loaded and
+ * folded back into a fresh snapshot by a checkpoint once it grows too large or too old
+ *
+ * Record format (one per line):
+ *   HIVE_NEW|hive_id|tag_number|tag_color|location|status|honey_level|has_queen|notes
+ *   HIVE|hive_id|field|value
+ *   ACTION_ADD|hive_id|action_description
+ *   ACTION_REMOVE|hive_id|action_description
+ *   TASK_NEW|task_id|name|description|location|status|notes
+ *   TASK_STATUS|task_id|status
+ *   LOCATION|location_name
+ *
+ * Replaying a record twice has the same effect as replaying it once, so records written
+ * while a checkpoint is in progress can safely be kept in the journal after it finishes
+ */
+public class ChangeJournal {
+    private final File file;
+    private final long maxBytes;
+    private final long maxAgeMillis;
+    private PrintWriter writer;
+    private long firstRecordTime = 0;
+    // Bytes already dropped from the front of the journal; checkpoint offsets count from the first record ever written
+    private long droppedBytes = 0;
+    private boolean flushEachRecord = true;
+
+    /**
+     * Constructor for ChangeJournal
+     * @param file The journal file, one per data file so processes on different data never share it
+     * @param maxBytes Journal size after which a checkpoint is due
+     * @param maxAgeMillis Age of the oldest record after which a checkpoint is due
+     */
+    public ChangeJournal(File file, long maxBytes, long maxAgeMillis) {
+        this.file = file;
+        this.maxBytes = maxBytes;
+        this.maxAgeMillis = maxAgeMillis;
+        if (file.length() > 0) {
+            firstRecordTime = file.lastModified();
+        }
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public long getMaxAgeMillis() {
+        return maxAgeMillis;
+    }
+
+    public void recordHiveAdded(BeeHive hive) {
+        append("HIVE_NEW|" + DataManager.formatHive(hive));
+    }
+
+    public void recordHiveField(int hiveId, String field, Object value) {
+        append("HIVE|" + hiveId + "|" + field + "|" + value);
+    }
+
+    public void recordActionAdded(int hiveId, String action) {
+        append("ACTION_ADD|" + hiveId + "|" + action);
+    }
+
+    public void recordActionRemoved(int hiveId, String action) {
+        append("ACTION_REMOVE|" + hiveId + "|" + action);
+    }
+
+    public void recordTaskAdded(Task task) {
+        append("TASK_NEW|" + DataManager.formatTask(task));
+    }
+
+    public void recordTaskStatus(int taskId, String status) {
+        append("TASK_STATUS|" + taskId + "|" + status);
+    }
+
+    public void recordLocationAdded(String location) {
+        append("LOCATION|" + location);
+    }
+
+    /**
+     * Choose whether every record is flushed to the file as it is appended
+     * @param flushEachRecord true to flush every record, false to leave it to flush(), e.g. once per batch
+     */
+    public synchronized void setFlushEachRecord(boolean flushEachRecord) {
+        this.flushEachRecord = flushEachRecord;
+    }
+
+    /**
+     * Flush appended records to the file
+     */
+    public synchronized void flush() {
+        if (writer != null) {
+            writer.flush();
+        }
+    }
+
+    private synchronized void append(String record) {
+        try {
+            if (writer == null) {
+                writer = new PrintWriter(new BufferedWriter(new FileWriter(file, true)));
+            }
+            writer.println(record);
+            if (flushEachRecord) {
+                writer.flush();
+            }
+            if (firstRecordTime == 0) {
+                firstRecordTime = System.currentTimeMillis();
+            }
+        } catch (IOException e) {
+            System.err.println("Error writing journal: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Check if the journal has grown past its size or time threshold
+     * @return true if a checkpoint should be taken, false otherwise
+     */
+    public synchronized boolean needsCheckpoint() {
+        if (firstRecordTime == 0) {
+            return false;
+        }
+        return file.length() >= maxBytes || System.currentTimeMillis() - firstRecordTime >= maxAgeMillis;
+    }
+
+    /**
+     * Mark the start of a checkpoint
+     * @return the journal position covered by the snapshot about to be written
+     */
+    public synchronized long beginCheckpoint() {
+        // Without flushing, the file may end partway through a buffered record, and
+        // completeCheckpoint would leave the rest of that record at the front of the journal
+        flush();
+        return droppedBytes + file.length();
+    }
+
+    /**
+     * Drop the records covered by a finished checkpoint, keeping any appended since it began
+     * @param checkpointOffset The journal position returned by beginCheckpoint
+     */
+    public synchronized void completeCheckpoint(long checkpointOffset) {
+        // Several saves may finish in one group commit; only drop what is still in the file
+        long offset = checkpointOffset - droppedBytes;
+        if (offset <= 0) {
+            return;
+        }
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long remaining = channel.size() - offset;
+            ByteBuffer tail = ByteBuffer.allocate((int) Math.max(remaining, 0));
+            while (tail.hasRemaining() && channel.read(tail, offset + tail.position()) >= 0) {
+                // keep reading until the tail is fully buffered
+            }
+            tail.flip();
+            channel.truncate(0);
+            channel.write(tail, 0);
+            droppedBytes += offset;
+            firstRecordTime = remaining > 0 ? System.currentTimeMillis() : 0;
+        } catch (IOException e) {
+            System.err.println("Error compacting journal: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Replay the journal on top of freshly loaded snapshot data
+     * @param hives List of hives loaded from the snapshot
+     * @param tasks List of tasks loaded from the snapshot
+     * @param locations List of locations loaded from the snapshot
+     * @return the number of records applied
+     */
+    public synchronized int replay(List<BeeHive> hives, List<Task> tasks, List<String> locations) {
+        flush();
+        if (!file.exists()) {
+            return 0;
+        }
+
+        Map<Integer, BeeHive> hivesById = new HashMap<>();
+        for (BeeHive hive : hives) {
+            hivesById.put(hive.getId(), hive);
+        }
+        Map<Integer, Task> tasksById = new HashMap<>();
+        for (Task task : tasks) {
+            tasksById.put(task.getId(), task);
+        }
+
+        int applied = 0;
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                try {
+                    if (applyRecord(line, hivesById, hives, tasksById, tasks, locations)) {
+                        applied++;
+                    }
+                } catch (RuntimeException e) {
+                    System.err.println("Error replaying journal record: " + line);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading journal: " + e.getMessage());
+        }
+        return applied;
+    }
+
+    private boolean applyRecord(String line, Map<Integer, BeeHive> hivesById, List<BeeHive> hives,
+                                Map<Integer, Task> tasksById, List<Task> tasks, List<String> locations) {
+        int separator = line.indexOf('|');
+        if (separator < 0) {
+            return false;
+        }
+        String type = line.substring(0, separator);
+        String body = line.substring(separator + 1);
+
+        switch (type) {
+            case "HIVE_NEW": {
+                BeeHive hive = DataManager.parseHiveRecord(body);
+                if (hive == null || hivesById.containsKey(hive.getId())) {
+                    return false;
+                }
+                hivesById.put(hive.getId(), hive);
+                hives.add(hive);
+                return true;
+            }
+            case "HIVE": {
+                String[] parts = body.split("\\|", 3);
+                BeeHive hive = parts.length == 3 ? hivesById.get(Integer.parseInt(parts[0])) : null;
+                if (hive == null) {
+                    return false;
+                }
+                applyHiveField(hive, parts[1], parts[2]);
+                return true;
+            }
+            case "ACTION_ADD":
+            case "ACTION_REMOVE": {
+                String[] parts = body.split("\\|", 2);
+                BeeHive hive = parts.length == 2 ? hivesById.get(Integer.parseInt(parts[0])) : null;
+                if (hive == null) {
+                    return false;
+                }
+                if (type.equals("ACTION_ADD")) {
+                    hive.addRequiredAction(parts[1]);
+                } else {
+                    hive.removeRequiredAction(parts[1]);
+                }
+                return true;
+            }
+            case "TASK_NEW": {
+                Task task = DataManager.parseTaskRecord(body);
+                if (task == null || tasksById.containsKey(task.getId())) {
+                    return false;
+                }
+                tasksById.put(task.getId(), task);
+                tasks.add(task);
+                return true;
+            }
+            case "TASK_STATUS": {
+                String[] parts = body.split("\\|", 2);
+                Task task = parts.length == 2 ? tasksById.get(Integer.parseInt(parts[0])) : null;
+                if (task == null) {
+                    return false;
+                }
+                task.setStatus(TaskStatus.parseStored(parts[1]));
+                return true;
+            }
+            case "LOCATION":
+                if (!locations.contains(body)) {
+                    locations.add(body);
+                }
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private void applyHiveField(BeeHive hive, String field, String value) {
+        switch (field) {
+            case "tagNumber":
+                hive.setTagNumber(Integer.parseInt(value));
+                break;
+            case "tagColor":
+                hive.setTagColor(value);
+                break;
+            case "location":
+                hive.setLocation(value);
+                break;
+            case "status":
+                hive.setStatus(value);
+                break;
+            case "honeyLevel":
+                hive.setHoneyLevel(Integer.parseInt(value));
+                break;
+            case "hasQueen":
+                hive.setHasQueen(Boolean.parseBoolean(value));
+                break;
+            case "notes":
+                hive.setNotes(value);
+                break;
+            default:
+                System.err.println("Unknown hive field in journal: " + field);
+        }
+    }
+
+    /**
+     * Close the journal writer
+     */
+    public synchronized void close() {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+    }
+}
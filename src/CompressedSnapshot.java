@@ -0,0 +1,170 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * CompressedSnapshot reads and writes the text format through GZIP
+ * Every section is followed by a "#CRC32:" line holding the checksum of the section's bytes,
+ * so a damaged section is detected as soon as it has been decompressed and before it is parsed
+ */
+public class CompressedSnapshot {
+    static final String CHECKSUM_PREFIX = "#CRC32:";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Writes the sections of a snapshot, calling endSection after each one
+     */
+    interface SectionWriter {
+        void write(PrintWriter writer, Runnable endSection) throws IOException;
+    }
+
+    /**
+     * Check if a file starts with the GZIP magic number
+     * @param file The file to check
+     * @return true if the file is GZIP compressed, false otherwise
+     */
+    public static boolean isCompressed(File file) {
+        if (!file.isFile() || file.length() < 2) {
+            return false;
+        }
+        try (InputStream in = new FileInputStream(file)) {
+            return in.read() == 0x1f && in.read() == 0x8b;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Write a compressed snapshot
+     * @param file The file to write
+     * @param level Deflate level from 0 (none) to 9 (smallest)
+     * @param sections Writes the text sections
+     */
+    static void write(File file, int level, SectionWriter sections) throws IOException {
+        try (OutputStream raw = new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE);
+             GZIPOutputStream gzip = new LeveledGZIPOutputStream(raw, level)) {
+            CRC32 crc = new CRC32();
+            PrintWriter writer = new PrintWriter(new BufferedWriter(
+                    new OutputStreamWriter(new CheckedOutputStream(gzip, crc), StandardCharsets.UTF_8), BUFFER_SIZE));
+            try {
+                sections.write(writer, () -> {
+                    writer.flush();
+                    try {
+                        // The checksum line itself is not part of the checksum
+                        gzip.write((CHECKSUM_PREFIX + Long.toHexString(crc.getValue()) + "\n").getBytes(StandardCharsets.UTF_8));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    crc.reset();
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            writer.flush();
+        }
+    }
+
+    /**
+     * Read a compressed snapshot, verifying each section before it is parsed
+     * @param file The file to read
+     * @param chunk Receives the parsed records
+     * @throws IOException if the file cannot be read or a section is damaged
+     */
+    static void read(File file, DataManager.TextChunk chunk) throws IOException {
+        ByteArrayOutputStream section = new ByteArrayOutputStream(BUFFER_SIZE);
+        CRC32 crc = new CRC32();
+        String sectionName = "start of file";
+
+        try (InputStream in = new GZIPInputStream(new FileInputStream(file), BUFFER_SIZE)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int limit = 0;
+            int pos = 0;
+            boolean eof = false;
+
+            while (true) {
+                int newline = -1;
+                for (int i = pos; i < limit; i++) {
+                    if (buffer[i] == '\n') {
+                        newline = i;
+                        break;
+                    }
+                }
+
+                if (newline < 0) {
+                    if (eof) {
+                        break;
+                    }
+                    // Keep the partial line and read more
+                    int pending = limit - pos;
+                    if (pending == buffer.length) {
+                        byte[] larger = new byte[buffer.length * 2];
+                        System.arraycopy(buffer, pos, larger, 0, pending);
+                        buffer = larger;
+                    } else {
+                        System.arraycopy(buffer, pos, buffer, 0, pending);
+                    }
+                    pos = 0;
+                    limit = pending;
+                    int read = in.read(buffer, limit, buffer.length - limit);
+                    if (read < 0) {
+                        eof = true;
+                    } else {
+                        limit += read;
+                    }
+                    continue;
+                }
+
+                int length = newline + 1 - pos;
+                if (startsWith(buffer, pos, newline, CHECKSUM_PREFIX)) {
+                    String expected = new String(buffer, pos + CHECKSUM_PREFIX.length(),
+                            newline - pos - CHECKSUM_PREFIX.length(), StandardCharsets.UTF_8).trim();
+                    if (!expected.equals(Long.toHexString(crc.getValue()))) {
+                        throw new IOException("Checksum mismatch in section " + sectionName + " of " + file);
+                    }
+                    char[] text = section.toString("UTF-8").toCharArray();
+                    DataManager.parseText(new RecordTokenizer(text, 0, text.length), "", chunk);
+                    section.reset();
+                    crc.reset();
+                } else {
+                    if (section.size() == 0) {
+                        sectionName = new String(buffer, pos, newline - pos, StandardCharsets.UTF_8).trim();
+                    }
+                    section.write(buffer, pos, length);
+                    crc.update(buffer, pos, length);
+                }
+                pos = newline + 1;
+            }
+
+            if (section.size() > 0 || pos < limit) {
+                throw new IOException("Missing checksum after section " + sectionName + " of " + file);
+            }
+        } catch (EOFException e) {
+            throw new IOException("Compressed data ends inside section " + sectionName + " of " + file, e);
+        }
+    }
+
+    private static boolean startsWith(byte[] buffer, int start, int end, String prefix) {
+        if (end - start < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (buffer[start + i] != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * GZIPOutputStream with a configurable deflate level
+     */
+    private static class LeveledGZIPOutputStream extends GZIPOutputStream {
+        LeveledGZIPOutputStream(OutputStream out, int level) throws IOException {
+            super(out, BUFFER_SIZE);
+            def.setLevel(level);
+        }
+    }
+}
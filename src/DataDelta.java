@@ -0,0 +1,243 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * DataDelta describes how freshly loaded data differs from the live data
+ * Records are matched by ID (hives, tasks) or username (users); changed records keep a reference
+ * to the live object, so applying a delta costs time proportional to the number of changes.
+ * Hives and tasks are applied through a RecordMerge, so changes made here since the last load
+ * or save are merged with the loaded records instead of being overwritten by them.
+ */
+public class DataDelta {
+    private final List<BeeHive> addedHives = new ArrayList<>();
+    private final List<BeeHive> removedHives = new ArrayList<>();
+    private final List<BeeHive[]> changedHives = new ArrayList<>();
+    private final List<Task> addedTasks = new ArrayList<>();
+    private final List<Task> removedTasks = new ArrayList<>();
+    private final List<Task[]> changedTasks = new ArrayList<>();
+    private final List<User> addedUsers = new ArrayList<>();
+    private final List<User> removedUsers = new ArrayList<>();
+    private final List<UserChange> changedUsers = new ArrayList<>();
+    private final List<String> addedLocations = new ArrayList<>();
+    private long syncGeneration = -1;
+
+    /**
+     * Compare live data with freshly loaded data
+     * @return the changes needed to bring the live data up to date
+     */
+    public static DataDelta compute(List<User> liveUsers, List<BeeHive> liveHives, List<Task> liveTasks, List<String> liveLocations,
+                                    List<User> users, List<BeeHive> hives, List<Task> tasks, List<String> locations) {
+        DataDelta delta = new DataDelta();
+
+        IntObjectMap<BeeHive> liveHivesById = new IntObjectMap<>(liveHives.size());
+        for (BeeHive hive : liveHives) {
+            liveHivesById.put(hive.getId(), hive);
+        }
+        for (BeeHive hive : hives) {
+            BeeHive live = liveHivesById.remove(hive.getId());
+            if (live == null) {
+                delta.addedHives.add(hive);
+            } else if (live.getVersion() != hive.getVersion() || !live.hasSameStateAs(hive)) {
+                delta.changedHives.add(new BeeHive[]{live, hive});
+            }
+        }
+        for (BeeHive hive : liveHivesById.values()) {
+            // Hives added here and never saved are not missing from the file, just new
+            if (hive.syncedVersion >= 0) {
+                delta.removedHives.add(hive);
+            }
+        }
+
+        IntObjectMap<Task> liveTasksById = new IntObjectMap<>(liveTasks.size());
+        for (Task task : liveTasks) {
+            liveTasksById.put(task.getId(), task);
+        }
+        for (Task task : tasks) {
+            Task live = liveTasksById.remove(task.getId());
+            if (live == null) {
+                delta.addedTasks.add(task);
+            } else if (live.getVersion() != task.getVersion() || !live.hasSameStateAs(task)) {
+                delta.changedTasks.add(new Task[]{live, task});
+            }
+        }
+        for (Task task : liveTasksById.values()) {
+            if (task.syncedVersion >= 0) {
+                delta.removedTasks.add(task);
+            }
+        }
+
+        Map<String, User> liveUsersByName = new HashMap<>();
+        for (User user : liveUsers) {
+            liveUsersByName.put(user.getUsername(), user);
+        }
+        for (User user : users) {
+            User live = liveUsersByName.remove(user.getUsername());
+            if (live == null) {
+                delta.addedUsers.add(user);
+            } else {
+                UserChange change = new UserChange(live, user);
+                if (change.changesCredentials() || !live.getName().equals(user.getName()) ||
+                        !live.getRole().equals(user.getRole())) {
+                    delta.changedUsers.add(change);
+                }
+            }
+        }
+        delta.removedUsers.addAll(liveUsersByName.values());
+
+        Set<String> known = new HashSet<>(liveLocations);
+        for (String location : locations) {
+            if (known.add(location)) {
+                delta.addedLocations.add(location);
+            }
+        }
+        return delta;
+    }
+
+    /**
+     * Apply the changes to the live data
+     * @return the merge of the hives and tasks, with any conflicts
+     */
+    public RecordMerge applyTo(List<User> users, Hives hivesManager, Tasks tasksManager, List<String> locations) {
+        RecordMerge merge = new RecordMerge();
+        for (String location : addedLocations) {
+            if (!locations.contains(location)) {
+                locations.add(location);
+            }
+        }
+
+        for (BeeHive hive : removedHives) {
+            merge.removeHive(hivesManager, hive);
+        }
+        for (BeeHive[] change : changedHives) {
+            merge.mergeHive(hivesManager, change[0], change[1]);
+        }
+        for (BeeHive hive : addedHives) {
+            merge.addHive(hivesManager, hive);
+        }
+
+        for (Task task : removedTasks) {
+            merge.removeTask(tasksManager, task);
+        }
+        for (Task[] change : changedTasks) {
+            merge.mergeTask(tasksManager, change[0], change[1]);
+        }
+        for (Task task : addedTasks) {
+            merge.addTask(tasksManager, task);
+        }
+
+        users.removeAll(removedUsers);
+        for (UserChange change : changedUsers) {
+            change.apply();
+        }
+        users.addAll(addedUsers);
+        return merge;
+    }
+
+    /**
+     * A live user and the same user as loaded, with the password and credential epoch the live user ends up with
+     * The epoch only grows when a password really changes, so a higher epoch brings its password. At the
+     * same epoch, different stored forms are usually one password hashed on either side (migrated from
+     * plain text on login, or rehashed with more iterations): a hash is kept over the plain text it was
+     * made from, and the local hash over another hash unless that one has more iterations. Only a plain
+     * text password that the other side does not verify is new, set by editing the data file, and raises
+     * the epoch.
+     */
+    private static class UserChange {
+        final User live;
+        final User loaded;
+        // The live password and epoch the decision was made for
+        private String seenPassword;
+        private int seenEpoch;
+        private String password; // The password to take, or null to keep the live one
+        private int epoch;
+
+        UserChange(User live, User loaded) {
+            this.live = live;
+            this.loaded = loaded;
+            decide();
+        }
+
+        private void decide() {
+            seenPassword = live.getPassword();
+            seenEpoch = live.getCredentialEpoch();
+            String other = loaded.getPassword();
+            password = null;
+            epoch = seenEpoch;
+            if (loaded.getCredentialEpoch() > seenEpoch) {
+                password = other;
+                epoch = loaded.getCredentialEpoch();
+            } else if (loaded.getCredentialEpoch() < seenEpoch || other.equals(seenPassword)) {
+                return;
+            } else if (PasswordHasher.isHashed(seenPassword) && PasswordHasher.isHashed(other)) {
+                if (PasswordHasher.iterationsOf(other) > PasswordHasher.iterationsOf(seenPassword)) {
+                    password = other;
+                }
+            } else if (PasswordHasher.isHashed(seenPassword) ? PasswordHasher.verify(other, seenPassword) :
+                    PasswordHasher.verify(seenPassword, other)) {
+                if (PasswordHasher.isHashed(other)) {
+                    password = other;
+                }
+            } else {
+                password = other;
+                epoch = seenEpoch + 1;
+            }
+        }
+
+        boolean changesCredentials() {
+            return password != null || epoch != seenEpoch;
+        }
+
+        void apply() {
+            synchronized (live) {
+                if (!live.getPassword().equals(seenPassword) || live.getCredentialEpoch() != seenEpoch) {
+                    // Hashed on login since the comparison
+                    decide();
+                }
+                if (password != null) {
+                    live.setPassword(password);
+                }
+                live.setCredentialEpoch(epoch);
+            }
+            live.setName(loaded.getName());
+            live.setRole(loaded.getRole());
+        }
+    }
+
+    /**
+     * Remember how many loads and saves of the data file had happened when the delta was computed
+     * @param syncGeneration See DataManager.getSyncGeneration
+     */
+    void setSyncGeneration(long syncGeneration) {
+        this.syncGeneration = syncGeneration;
+    }
+
+    long getSyncGeneration() {
+        return syncGeneration;
+    }
+
+    /**
+     * Get the number of changed records
+     * @return the size of the delta
+     */
+    public int size() {
+        return addedHives.size() + removedHives.size() + changedHives.size() +
+                addedTasks.size() + removedTasks.size() + changedTasks.size() +
+                addedUsers.size() + removedUsers.size() + changedUsers.size() + addedLocations.size();
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public String toString() {
+        return "hives +" + addedHives.size() + " -" + removedHives.size() + " ~" + changedHives.size() +
+                ", tasks +" + addedTasks.size() + " -" + removedTasks.size() + " ~" + changedTasks.size() +
+                ", users +" + addedUsers.size() + " -" + removedUsers.size() + " ~" + changedUsers.size() +
+                ", locations +" + addedLocations.size();
+    }
+}
@@ -0,0 +1,137 @@
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * DataFileWatcher watches the data file with a WatchService on a background thread
+ * When another process changes the file, its contents are loaded on the watcher thread and
+ * compared with the live data; the resulting delta is picked up by the program loop,
+ * which only has to merge the records that actually changed (see DataManager.applyDelta)
+ */
+public class DataFileWatcher implements Runnable {
+    // Wait this long after a change for further writes before reading the file
+    private static final long SETTLE_MILLIS = 200;
+
+    private final DataManager dataManager;
+    private final List<User> users;
+    private final Hives hivesManager;
+    private final Tasks tasksManager;
+    private final List<String> locations;
+    private final AtomicReference<DataDelta> pendingDelta = new AtomicReference<>();
+    private WatchService watchService;
+    private Thread thread;
+
+    /**
+     * Constructor for DataFileWatcher
+     * @param dataManager The data manager that owns the data file
+     * @param users The live list of users
+     * @param hivesManager The live hives
+     * @param tasksManager The live tasks
+     * @param locations The live list of locations
+     */
+    public DataFileWatcher(DataManager dataManager, List<User> users, Hives hivesManager, Tasks tasksManager, List<String> locations) {
+        this.dataManager = dataManager;
+        this.users = users;
+        this.hivesManager = hivesManager;
+        this.tasksManager = tasksManager;
+        this.locations = locations;
+    }
+
+    /**
+     * Start watching the data file on a daemon thread
+     * @throws IOException if the directory cannot be watched
+     */
+    public void start() throws IOException {
+        Path directory = Paths.get(dataManager.getDataFile()).toAbsolutePath().getParent();
+        watchService = FileSystems.getDefault().newWatchService();
+        directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        thread = new Thread(this, "DataFileWatcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stop watching the data file
+     */
+    public void stop() {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                System.err.println("Error closing file watcher: " + e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                boolean changed = false;
+                do {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (dataManager.isDataFileName(event.context().toString())) {
+                            changed = true;
+                        }
+                    }
+                    key.reset();
+                    // Collect the rest of a burst of writes before reading
+                    key = watchService.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS);
+                } while (key != null);
+
+                if (changed) {
+                    checkForChanges();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            // Watcher stopped
+        }
+    }
+
+    /**
+     * Load the data file if it changed since the last load or save and prepare the delta
+     */
+    public void checkForChanges() {
+        if (!dataManager.isDataFileModified()) {
+            return;
+        }
+        List<User> freshUsers = new ArrayList<>();
+        List<BeeHive> freshHives = new ArrayList<>();
+        List<Task> freshTasks = new ArrayList<>();
+        List<String> freshLocations = new ArrayList<>();
+        long generation = dataManager.getSyncGeneration();
+        try {
+            dataManager.loadForMerge(freshUsers, freshHives, freshTasks, freshLocations);
+        } catch (IOException e) {
+            System.err.println("Error reloading data: " + e.getMessage());
+            return;
+        }
+
+        // A newer delta replaces an unapplied one, since both are relative to the same live data
+        DataDelta delta = DataDelta.compute(new ArrayList<>(users), hivesManager.getAllHives(), tasksManager.getAllTasks(),
+                new ArrayList<>(locations), freshUsers, freshHives, freshTasks, freshLocations);
+        delta.setSyncGeneration(generation);
+        pendingDelta.set(delta.isEmpty() ? null : delta);
+    }
+
+    /**
+     * Take the delta prepared since the last call, if any
+     * @return the pending delta, or null if nothing changed
+     */
+    public DataDelta takePendingDelta() {
+        return pendingDelta.getAndSet(null);
+    }
+}
@@ -1,21 +1,148 @@
 import java.io.*;
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
-import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.StandardOpenOption;
 
 /**
  * DataManager class handles reading and writing data to DataFile.txt
  * It manages persistence for users, hives, tasks, and locations
+ * The data file is either plain text, compressed text (see CompressedSnapshot) or a binary snapshot (see BinarySnapshot),
+ * or the data is split into one file per location (see ShardedDataStore)
+ *
+ * Several processes can share the data file. saveMerged first merges what the others saved since the
+ * last load or save into the live data, record by record (see RecordMerge), so one process's save never
+ * drops another's edits; a lock file only keeps the others out while the file is read and replaced.
+ * The lock file also holds a save generation that every such save counts up, so a save by another
+ * process is noticed even when it leaves the data file with the same modification time.
  */
 public class DataManager {
     private static final String DATA_FILE = "DataFile.txt";
+    private final String dataFile;
     private ReadWriteLock lock = new ReentrantReadWriteLock();
     private long lastModified = 0;
+    private ChangeJournal journal;
+    private boolean binaryFormat = false;
+    private boolean parallelLoading = true;
+    private final GroupCommitWriter committer;
+    private int compressionLevel = -1;
+    private ShardedDataStore shards;
+    // Held while merging saved data into the live data and saving it, in this process
+    private final ReentrantLock syncLock = new ReentrantLock();
+    // Modification time of the data file and save generation of the lock file as last loaded or saved here
+    private long syncedModified = 0;
+    private long syncedSaveGeneration = 0;
+    // Counts loads, merges and saves, so a delta computed before one of them is not applied after it
+    private volatile long syncGeneration = 0;
+    // Numbers the snapshots saved without a journal, see beginCheckpoint
+    private final AtomicLong snapshotCount = new AtomicLong();
+
+    /**
+     * Constructor for DataManager using DataFile.txt in the working directory
+     */
+    public DataManager() {
+        this(DATA_FILE);
+    }
+
+    /**
+     * Constructor for DataManager using another data file
+     * @param dataFile Path of the data file
+     */
+    public DataManager(String dataFile) {
+        this.dataFile = dataFile;
+        this.committer = new GroupCommitWriter(new File(dataFile));
+    }
+
+    /**
+     * Switch to journal mode, where single edits are appended to a journal next to the data file,
+     * e.g. DataFile.txt.journal, instead of rewriting the whole data file
+     * @param maxBytes Journal size after which a checkpoint is due
+     * @param maxAgeMillis Age of the oldest journal record after which a checkpoint is due
+     */
+    public void enableJournal(long maxBytes, long maxAgeMillis) {
+        journal = new ChangeJournal(new File(getDataFile() + ".journal"), maxBytes, maxAgeMillis);
+    }
+
+    public boolean isJournalEnabled() {
+        return journal != null;
+    }
+
+    public ChangeJournal getJournal() {
+        return journal;
+    }
+
+    /**
+     * Check if the journal is due to be folded back into a fresh snapshot
+     * @return true if a checkpoint should be taken, false otherwise
+     */
+    public boolean needsCheckpoint() {
+        return journal != null && journal.needsCheckpoint();
+    }
+
+    /**
+     * Choose the format used when saving the data file
+     * Loading detects the format on disk, so either format can always be read
+     * @param binaryFormat true to save binary snapshots, false to save plain text
+     */
+    public void setBinaryFormat(boolean binaryFormat) {
+        this.binaryFormat = binaryFormat;
+    }
+
+    public boolean isBinaryFormat() {
+        return binaryFormat;
+    }
+
+    /**
+     * Choose whether plain text saves are compressed
+     * Loading detects compression on disk, so compressed and uncompressed files can always be read
+     * @param compressionLevel Deflate level from 0 to 9, or -1 to save uncompressed text
+     */
+    public void setCompressionLevel(int compressionLevel) {
+        if (compressionLevel < -1 || compressionLevel > 9) {
+            throw new IllegalArgumentException("Compression level must be between -1 and 9: " + compressionLevel);
+        }
+        this.compressionLevel = compressionLevel;
+    }
+
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    /**
+     * Keep the data in a directory with one file per location instead of a single data file
+     * @param directory Directory holding global.txt and the shard files
+     * @param selectedLocations Locations whose hives and tasks are loaded, or null for all locations
+     */
+    public void enableSharding(String directory, Collection<String> selectedLocations) {
+        shards = new ShardedDataStore(new File(directory), selectedLocations);
+        if (journal != null) {
+            // Move the journal next to the new data file
+            enableJournal(journal.getMaxBytes(), journal.getMaxAgeMillis());
+        }
+    }
+
+    public boolean isShardingEnabled() {
+        return shards != null;
+    }
+
+    /**
+     * Choose how plain text data files are parsed
+     * @param parallelLoading true to parse sections concurrently, false to parse them one after another
+     */
+    public void setParallelLoading(boolean parallelLoading) {
+        this.parallelLoading = parallelLoading;
+    }
 
     /**
      * Save all data to the data file
@@ -25,71 +152,375 @@ public class DataManager {
      * @param locations List of locations
      */
     public void saveData(List<User> users, List<BeeHive> hives, List<Task> tasks, List<String> locations) {
-        lock.writeLock().lock();
-        try (FileWriter fileWriter = new FileWriter(DATA_FILE);
-             FileChannel channel = FileChannel.open(new File(DATA_FILE).toPath(), StandardOpenOption.WRITE, StandardOpenOption.CREATE);
-             FileLock lock = channel.lock()) {
-
-            PrintWriter writer = new PrintWriter(fileWriter);
+        writeData(users, hives, tasks, locations, null, beginCheckpoint());
+    }
 
-            // Write users
-            writer.println("===USERS===");
-            for (User user : users) {
-                writer.println(user.getUsername() + "|" + user.getPassword() + "|" +
-                        user.getName() + "|" + user.getRole());
+    /**
+     * Save all data, first merging in the hives and tasks other processes saved since the last load or save
+     * Edits made here and edits saved by others both survive unless they changed the same field of the
+     * same record; such conflicts are reported and the value saved first is kept.
+     * @param users List of users
+     * @param hivesManager The live hives
+     * @param tasksManager The live tasks
+     * @param locations List of locations
+     * @return the merge, or null if nobody else had saved the data file
+     */
+    public RecordMerge saveMerged(List<User> users, Hives hivesManager, Tasks tasksManager, List<String> locations) {
+        syncLock.lock();
+        try (FileChannel channel = FileChannel.open(getLockFile().toPath(),
+                StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE)) {
+            // Released when the channel is closed
+            channel.lock();
+            // Taken before any record is read: an edit journaled after this point may be missing
+            // from the snapshot, so it has to stay in the journal
+            long journalOffset = beginCheckpoint();
+            RecordMerge merge = null;
+            long saveGeneration = readSaveGeneration(channel);
+            long modified = dataFileModified();
+            // Modification times alone miss saves within the file system's resolution (1 to 2 seconds), and
+            // the generation alone misses files written without saveMerged, e.g. edited by hand
+            if (modified != 0 && (saveGeneration != syncedSaveGeneration || modified != syncedModified)) {
+                List<User> savedUsers = new ArrayList<>();
+                List<BeeHive> savedHives = new ArrayList<>();
+                List<Task> savedTasks = new ArrayList<>();
+                List<String> savedLocations = new ArrayList<>();
+                loadForMerge(savedUsers, savedHives, savedTasks, savedLocations);
+                DataDelta delta = DataDelta.compute(new ArrayList<>(users), hivesManager.getAllHives(),
+                        tasksManager.getAllTasks(), new ArrayList<>(locations),
+                        savedUsers, savedHives, savedTasks, savedLocations);
+                merge = delta.applyTo(users, hivesManager, tasksManager, locations);
+                report("Merged data saved by another user", merge);
             }
 
-            // Write locations
-            writer.println("===LOCATIONS===");
-            for (String location : locations) {
-                writer.println(location);
+            // Removed records the file still holds, and the records as they are written
+            List<BeeHive> removedHives = hivesManager.getRemovedHives();
+            List<Task> removedTasks = tasksManager.getRemovedTasks();
+            List<BeeHive> liveHives = hivesManager.getAllHives();
+            List<Task> liveTasks = tasksManager.getAllTasks();
+            // Locations where a record changed, arrived or left since the last sync, for the shards to write
+            Set<String> changedLocations = new HashSet<>();
+            List<BeeHive> hives = new ArrayList<>(liveHives.size());
+            for (BeeHive hive : liveHives) {
+                BeeHive saved = hive.stateToSave();
+                hives.add(saved);
+                if (saved != hive) {
+                    changedLocations.add(saved.getLocation());
+                    changedLocations.add(hive.getSyncedLocation());
+                }
             }
-
-            // Write hives
-            writer.println("===HIVES===");
-            // Save the next ID for hives
-            writer.println("NEXT_HIVE_ID:" + BeeHive.getNextId());
-            for (BeeHive hive : hives) {
-                writer.println(hive.getId() + "|" + hive.getTagNumber() + "|" +
-                        hive.getTagColor() + "|" + hive.getLocation() + "|" +
-                        hive.getStatus() + "|" + hive.getHoneyLevel() + "|" +
-                        hive.hasQueen() + "|" + hive.getNotes());
-
-                // Write required actions for this hive
-                List<String> actions = hive.getRequiredActions();
-                if (!actions.isEmpty()) {
-                    writer.println("ACTIONS:" + hive.getId());
-                    for (String action : actions) {
-                        writer.println(action);
+            List<Task> tasks = new ArrayList<>(liveTasks.size());
+            for (Task task : liveTasks) {
+                Task saved = task.stateToSave();
+                tasks.add(saved);
+                if (saved != task) {
+                    changedLocations.add(saved.getLocation());
+                    changedLocations.add(task.getSyncedLocation());
+                }
+            }
+            for (BeeHive hive : removedHives) {
+                changedLocations.add(hive.getSyncedLocation());
+            }
+            for (Task task : removedTasks) {
+                changedLocations.add(task.getSyncedLocation());
+            }
+            changedLocations.remove(null);
+
+            // Still under the sync lock and the file lock: the save generation must count this very file,
+            // so merged saves never share a group commit; only saveData calls can
+            if (writeData(users, hives, tasks, locations, changedLocations, journalOffset)) {
+                writeSaveGeneration(channel, saveGeneration + 1);
+                for (int i = 0; i < hives.size(); i++) {
+                    BeeHive saved = hives.get(i);
+                    if (saved != liveHives.get(i)) {
+                        liveHives.get(i).markSynced(saved.getVersion(), saved);
+                    }
+                }
+                for (int i = 0; i < tasks.size(); i++) {
+                    Task saved = tasks.get(i);
+                    if (saved != liveTasks.get(i)) {
+                        liveTasks.get(i).markSynced(saved.getVersion(), saved);
                     }
-                    writer.println("ENDACTIONS:" + hive.getId());
                 }
+                hivesManager.forgetRemovedHives(removedHives);
+                tasksManager.forgetRemovedTasks(removedTasks);
+                syncedModified = dataFileModified();
+                syncedSaveGeneration = saveGeneration + 1;
+                syncGeneration++;
             }
+            return merge;
+        } catch (IOException e) {
+            System.err.println("Error saving data: " + e.getMessage());
+            return null;
+        } finally {
+            syncLock.unlock();
+        }
+    }
 
-            // Write tasks
-            writer.println("===TASKS===");
-            // Save the next ID for tasks
-            writer.println("NEXT_TASK_ID:" + Task.getNextId());
-            for (Task task : tasks) {
-                writer.println(task.getId() + "|" + task.getName() + "|" +
-                        task.getDescription() + "|" + task.getLocation() + "|" +
-                        task.getStatus() + "|" + task.getNotes());
+    /**
+     * Apply a delta the DataFileWatcher computed, merging it with the changes made here
+     * A delta computed before the last merge or save is dropped: that merge already covered it.
+     * @return true if the delta was applied, false if it was out of date
+     */
+    public boolean applyDelta(DataDelta delta, List<User> users, Hives hivesManager, Tasks tasksManager, List<String> locations) {
+        syncLock.lock();
+        try {
+            if (delta.getSyncGeneration() != syncGeneration) {
+                return false;
             }
+            System.out.println("Data updated by another user. Applying changes (" + delta + ")...");
+            report("Merged", delta.applyTo(users, hivesManager, tasksManager, locations));
+            syncGeneration++;
+            return true;
+        } finally {
+            syncLock.unlock();
+        }
+    }
 
-            writer.flush();
-            System.out.println("Data saved successfully to " + DATA_FILE);
-            // Update the last modified time
-            lastModified = new File(DATA_FILE).lastModified();
+    /**
+     * Get the number of loads, merges and saves so far
+     * @return a number that grows whenever the live data was brought in line with the data file
+     */
+    public long getSyncGeneration() {
+        return syncGeneration;
+    }
+
+    private static void report(String what, RecordMerge merge) {
+        if (merge.getChangeCount() > 0 || !merge.getMessages().isEmpty()) {
+            System.out.println(what + ": " + merge);
+        }
+        for (String message : merge.getMessages()) {
+            System.out.println("  " + message);
+        }
+    }
+
+    private long dataFileModified() {
+        return shards != null ? shards.getLastModified() : new File(dataFile).lastModified();
+    }
+
+    private File getLockFile() {
+        return new File(getDataFile() + ".lock");
+    }
+
+    /**
+     * Read the save generation from the lock file, without locking it
+     * Read before the data file: a save replaces the data file before it counts the generation up,
+     * so a generation read early is at worst older than the data, which only costs an extra merge.
+     * @return the generation, 0 if no save recorded one yet
+     */
+    private long readSaveGeneration() throws IOException {
+        File lockFile = getLockFile();
+        if (!lockFile.isFile()) {
+            return 0;
+        }
+        try (FileChannel channel = FileChannel.open(lockFile.toPath(), StandardOpenOption.READ)) {
+            return readSaveGeneration(channel);
+        }
+    }
+
+    private static long readSaveGeneration(FileChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(32);
+        channel.read(buffer, 0);
+        String text = new String(buffer.array(), 0, buffer.position(), StandardCharsets.US_ASCII).trim();
+        try {
+            return text.isEmpty() ? 0 : Long.parseLong(text);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static void writeSaveGeneration(FileChannel channel, long generation) throws IOException {
+        byte[] bytes = (generation + "\n").getBytes(StandardCharsets.US_ASCII);
+        channel.write(ByteBuffer.wrap(bytes), 0);
+        channel.truncate(bytes.length);
+        channel.force(false);
+    }
+
+    /**
+     * Number a snapshot about to be read from the records
+     * With a journal this is the journal position the snapshot will cover, which only grows,
+     * so it also tells the committer which of several waiting snapshots is the newest.
+     * @return the journal position, or a count of snapshots taken without a journal
+     */
+    private long beginCheckpoint() {
+        return journal != null ? journal.beginCheckpoint() : snapshotCount.incrementAndGet();
+    }
+
+    /**
+     * Write all data, reporting whether it worked
+     * No write lock here: the data file is replaced atomically, and concurrent saves
+     * must reach the committer together to share a single fsync
+     * @param changedLocations Locations whose hives or tasks changed since the last load or save, or null if unknown
+     * @param journalOffset The journal position from before the records were read, see beginCheckpoint;
+     *                      also orders this snapshot against others waiting for the committer
+     * @return true if the data was saved, false if saving failed
+     */
+    private boolean writeData(List<User> users, List<BeeHive> hives, List<Task> tasks, List<String> locations,
+                              Set<String> changedLocations, long journalOffset) {
+        try {
+            if (shards != null) {
+                // Only shards of changed locations are rewritten
+                int written = shards.save(users, hives, tasks, locations, changedLocations);
+                System.out.println("Data saved successfully, " + written + " files rewritten");
+                lastModified = shards.getLastModified();
+            } else {
+                committer.commit(journalOffset, target -> {
+                    if (binaryFormat) {
+                        BinarySnapshot.write(target, users, hives, tasks, locations);
+                    } else if (compressionLevel >= 0) {
+                        CompressedSnapshot.write(target, compressionLevel, (writer, endSection) ->
+                                writeSections(writer, endSection, users, hives, tasks, locations));
+                    } else {
+                        writeText(target.getPath(), users, hives, tasks, locations);
+                    }
+                });
+                System.out.println("Data saved successfully to " + dataFile);
+                // Update the last modified time
+                lastModified = new File(dataFile).lastModified();
+            }
+            // Everything journaled before the records were read is now part of the snapshot
+            if (journal != null) {
+                journal.completeCheckpoint(journalOffset);
+            }
+            return true;
         } catch (IOException e) {
             System.err.println("Error saving data: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Get the commit counters (commits, batch sizes, latency) of the data file writer
+     * @return the summary
+     */
+    public String getCommitStatistics() {
+        return shards != null ? shards.getStatistics() : committer.getStatistics();
+    }
+
+    /**
+     * Export all data to a plain text file, whatever format the data file uses
+     * @param path The file to write
+     */
+    public void exportText(String path, List<User> users, List<BeeHive> hives, List<Task> tasks, List<String> locations) {
+        lock.readLock().lock();
+        try {
+            writeText(path, users, hives, tasks, locations);
+            System.out.println("Data exported successfully to " + path);
+        } catch (IOException e) {
+            System.err.println("Error exporting data: " + e.getMessage());
         } finally {
-            lock.writeLock().unlock();
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Import all data from a plain text file, replacing the contents of the lists
+     * @param path The file to read
+     */
+    public void importText(String path, List<User> users, List<BeeHive> hives, List<Task> tasks, List<String> locations) {
+        users.clear();
+        hives.clear();
+        tasks.clear();
+        locations.clear();
+        try {
+            TextChunk result = new TextChunk(users, hives, tasks, locations);
+            readText(path, result);
+            applyNextIds(result);
+            System.out.println("Data imported successfully from " + path);
+        } catch (IOException e) {
+            System.err.println("Error importing data: " + e.getMessage());
+        }
+    }
+
+    private void writeText(String path, List<User> users, List<BeeHive> hives, List<Task> tasks, List<String> locations) throws IOException {
+        // Saves write a temp file that GroupCommitWriter renames over the data file, and other
+        // processes are kept out by the lock on the .lock file in saveMerged, so no lock is needed here
+        try (FileWriter fileWriter = new FileWriter(path)) {
+            PrintWriter writer = new PrintWriter(fileWriter);
+            writeSections(writer, () -> { }, users, hives, tasks, locations);
+            writer.flush();
+        }
+    }
+
+    /**
+     * Write all sections of the text format
+     * @param writer The writer to write to
+     * @param endSection Called after each section has been written
+     */
+    static void writeSections(PrintWriter writer, Runnable endSection,
+                                      List<User> users, List<BeeHive> hives, List<Task> tasks, List<String> locations) {
+        // Write users
+        writer.println("===USERS===");
+        for (User user : users) {
+            writer.println(user.getUsername() + "|" + user.getPassword() + "|" +
+                    user.getName() + "|" + user.getRole() + "|" + user.getCredentialEpoch());
+        }
+        endSection.run();
+
+        // Write locations
+        writer.println("===LOCATIONS===");
+        for (String location : locations) {
+            writer.println(location);
+        }
+        endSection.run();
+
+        // Write hives
+        writer.println("===HIVES===");
+        // Save the next ID for hives
+        writer.println("NEXT_HIVE_ID:" + BeeHive.getNextId());
+        writeHives(writer, hives);
+        endSection.run();
+
+        // Write tasks
+        writer.println("===TASKS===");
+        // Save the next ID for tasks
+        writer.println("NEXT_TASK_ID:" + Task.getNextId());
+        writeTasks(writer, tasks);
+        endSection.run();
+    }
+
+    /**
+     * Write hive records, each followed by its block of required actions
+     * @param writer The writer to write to
+     * @param hives The hives to write
+     */
+    static void writeHives(PrintWriter writer, List<BeeHive> hives) {
+        for (BeeHive hive : hives) {
+            writer.println(formatHive(hive));
+
+            // Write required actions for this hive
+            List<String> actions = hive.getRequiredActions();
+            if (!actions.isEmpty()) {
+                writer.println("ACTIONS:" + hive.getId());
+                for (String action : actions) {
+                    writer.println(action);
+                }
+                writer.println("ENDACTIONS:" + hive.getId());
+            }
+        }
+    }
+
+    /**
+     * Write task records
+     * @param writer The writer to write to
+     * @param tasks The tasks to write
+     */
+    static void writeTasks(PrintWriter writer, List<Task> tasks) {
+        for (Task task : tasks) {
+            writer.println(formatTask(task));
         }
     }
 
 
     public boolean isDataFileModified() {
-        File file = new File(DATA_FILE);
+        if (shards != null) {
+            long currentModified = shards.getLastModified();
+            if (currentModified > lastModified) {
+                lastModified = currentModified;
+                return true;
+            }
+            return false;
+        }
+        File file = new File(dataFile);
         if (file.exists()) {
             long currentModified = file.lastModified();
             if (currentModified > lastModified) {
@@ -100,146 +531,363 @@ public class DataManager {
         return false;
     }
 
-    public void loadData(List<User> users, List<BeeHive> hives, List<Task> tasks, List<String> locations) {
-        lock.readLock().lock();
-        try (FileReader fileReader = new FileReader(DATA_FILE);
-             BufferedReader reader = new BufferedReader(fileReader)) {
+    /**
+     * Get the path of the data file
+     * @return the data file path
+     */
+    public String getDataFile() {
+        return shards != null ? shards.getGlobalFile().getPath() : dataFile;
+    }
+
+    /**
+     * Check if a file in the data file's directory holds data of this manager
+     * @param name The file name without directory
+     * @return true if changes to the file should be reloaded, false otherwise
+     */
+    public boolean isDataFileName(String name) {
+        return shards != null ? ShardedDataStore.isStoreFileName(name) : new File(dataFile).getName().equals(name);
+    }
 
-            // Clear existing data
+    public void loadData(List<User> users, List<BeeHive> hives, List<Task> tasks, List<String> locations) {
+        try {
+            long saveGeneration = readSaveGeneration();
+            TextChunk result = new TextChunk(users, hives, tasks, locations);
+            readData(result, true);
+            applyNextIds(result);
+            // These lists become the live data, in line with the data file as loaded
+            for (BeeHive hive : hives) {
+                hive.markSynced(hive.getVersion(), null);
+            }
+            for (Task task : tasks) {
+                task.markSynced(task.getVersion(), null);
+            }
+            syncedModified = dataFileModified();
+            syncedSaveGeneration = saveGeneration;
+            syncGeneration++;
+            System.out.println("Data loaded successfully from " + getDataFile());
+        } catch (IOException e) {
+            System.err.println("Error loading data: " + e.getMessage());
+            // Initialize with default data if file doesn't exist
             users.clear();
-            // Clear the passed lists
             hives.clear();
             tasks.clear();
             locations.clear();
+            initializeDefaultData(users, hives, tasks, locations);
+            replayJournal(hives, tasks, locations);
+        }
+    }
+
+    /**
+     * Load the data file into the lists without falling back to default data
+     * @throws IOException if the data file cannot be read
+     */
+    public void reloadData(List<User> users, List<BeeHive> hives, List<Task> tasks, List<String> locations) throws IOException {
+        readData(new TextChunk(users, hives, tasks, locations), true);
+    }
 
-            String line;
-            String section = "";
+    /**
+     * Load the data file to merge it into the live data
+     * Loaded records only raise the ID counters past their own IDs; the next IDs stored in
+     * the file are left to loadData, so IDs already handed out here are never handed out again.
+     * The journal is not replayed: it holds this process's own edits, which are already in the
+     * live data, and replaying them would bump the loaded versions as if another process had saved.
+     * @throws IOException if the data file cannot be read
+     */
+    public void loadForMerge(List<User> users, List<BeeHive> hives, List<Task> tasks, List<String> locations) throws IOException {
+        readData(new TextChunk(users, hives, tasks, locations), false);
+    }
 
-            while ((line = reader.readLine()) != null) {
-                if (line.startsWith("===")) {
-                    section = line;
-                    continue;
-                }
+    /**
+     * Read the data file into the lists of a chunk, keeping the stored next IDs in the chunk
+     * @param result Receives the records, cleared first
+     * @param replay true to replay the change journal over the loaded records
+     * @throws IOException if the data file cannot be read
+     */
+    private void readData(TextChunk result, boolean replay) throws IOException {
+        lock.readLock().lock();
+        try {
+            // Clear the passed lists
+            result.users.clear();
+            result.hives.clear();
+            result.tasks.clear();
+            result.locations.clear();
+
+            File file = new File(dataFile);
+            if (shards != null) {
+                shards.load(result);
+            } else if (BinarySnapshot.isBinarySnapshot(file)) {
+                BinarySnapshot.read(file, result);
+            } else if (CompressedSnapshot.isCompressed(file)) {
+                readCompressed(file, result);
+            } else {
+                readText(dataFile, result);
+            }
+            if (replay) {
+                replayJournal(result.hives, result.tasks, result.locations);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
 
-                if (line.trim().isEmpty()) {
-                    continue;
+    private void readText(String path, TextChunk result) throws IOException {
+        long start = System.nanoTime();
+        String mode;
+        if (parallelLoading) {
+            int chunks = new ParallelTextLoader(ForkJoinPool.commonPool()).load(path, result);
+            mode = "parallel, " + chunks + " chunks";
+        } else {
+            try (FileReader fileReader = new FileReader(path)) {
+                parseText(new RecordTokenizer(fileReader), "", result);
+            }
+            mode = "serial";
+        }
+        long elapsed = (System.nanoTime() - start) / 1000000;
+        System.out.println("Parsed " + result.hives.size() + " hives and " + result.tasks.size() + " tasks in " +
+                elapsed + " ms (" + mode + ")");
+    }
+
+    private void readCompressed(File file, TextChunk result) throws IOException {
+        long start = System.nanoTime();
+        CompressedSnapshot.read(file, result);
+        long elapsed = (System.nanoTime() - start) / 1000000;
+        System.out.println("Parsed " + result.hives.size() + " hives and " + result.tasks.size() + " tasks in " +
+                elapsed + " ms (compressed)");
+    }
+
+    /**
+     * Parse data file lines into a chunk
+     * @param tokenizer Tokenizer positioned before the first line to parse
+     * @param section The section the first line belongs to, e.g. "===HIVES===", or "" for the whole file
+     * @param chunk Receives the parsed records
+     */
+    static void parseText(RecordTokenizer tokenizer, String section, TextChunk chunk) throws IOException {
+        List<User> users = chunk.users;
+        List<BeeHive> hives = chunk.hives;
+        List<Task> tasks = chunk.tasks;
+        List<String> locations = chunk.locations;
+        // Hive whose ACTIONS: block is being read, if any
+        BeeHive actionsHive = null;
+        boolean inActions = false;
+
+        while (tokenizer.nextLine()) {
+            if (inActions) {
+                if (tokenizer.startsWith("ENDACTIONS:")) {
+                    inActions = false;
+                } else if (actionsHive != null) {
+                    // Loading the saved actions is not a change, so the saved version stays
+                    long version = actionsHive.getVersion();
+                    actionsHive.addRequiredAction(tokenizer.line());
+                    actionsHive.setVersion(version);
                 }
+                continue;
+            }
 
-                switch (section) {
-                    case "===USERS===":
-                        parseUser(line, users);
-                        break;
-                    case "===LOCATIONS===":
-                        locations.add(line);
-                        break;
-                    case "===HIVES===":
-                        if (line.startsWith("NEXT_HIVE_ID:")) {
-                            try {
-                                int nextId = Integer.parseInt(line.substring(13));
-                                BeeHive.setNextId(nextId);
-                            } catch (NumberFormatException e) {
-                                System.err.println("Error parsing next hive ID: " + line);
-                            }
-                        } else {
-                            parseHive(line, hives, reader);
+            if (tokenizer.startsWith("===")) {
+                section = tokenizer.line();
+                continue;
+            }
+
+            if (tokenizer.isBlank()) {
+                continue;
+            }
+
+            switch (section) {
+                case "===USERS===":
+                    parseUser(tokenizer, users);
+                    break;
+                case "===LOCATIONS===":
+                    locations.add(tokenizer.line());
+                    break;
+                case "===HIVES===":
+                    if (tokenizer.startsWith("NEXT_HIVE_ID:")) {
+                        try {
+                            chunk.nextHiveId = tokenizer.intAt(13);
+                        } catch (NumberFormatException e) {
+                            System.err.println("Error parsing next hive ID: " + tokenizer.line());
                         }
-                        break;
-                    case "===TASKS===":
-                        if (line.startsWith("NEXT_TASK_ID:")) {
-                            try {
-                                int nextId = Integer.parseInt(line.substring(13));
-                                Task.setNextId(nextId);
-                            } catch (NumberFormatException e) {
-                                System.err.println("Error parsing next task ID: " + line);
-                            }
-                        } else {
-                            parseTask(line, tasks);
+                    } else if (tokenizer.startsWith("ACTIONS:")) {
+                        // Actions belong to the hive line right above them
+                        inActions = true;
+                        BeeHive previous = hives.isEmpty() ? null : hives.get(hives.size() - 1);
+                        try {
+                            actionsHive = previous != null && previous.getId() == tokenizer.intAt(8) ? previous : null;
+                        } catch (NumberFormatException e) {
+                            actionsHive = null;
                         }
-                        break;
-                }
+                    } else {
+                        BeeHive hive = parseHive(tokenizer);
+                        if (hive != null) {
+                            hives.add(hive);
+                        }
+                    }
+                    break;
+                case "===TASKS===":
+                    if (tokenizer.startsWith("NEXT_TASK_ID:")) {
+                        try {
+                            chunk.nextTaskId = tokenizer.intAt(13);
+                        } catch (NumberFormatException e) {
+                            System.err.println("Error parsing next task ID: " + tokenizer.line());
+                        }
+                    } else {
+                        Task task = parseTask(tokenizer);
+                        if (task != null) {
+                            tasks.add(task);
+                        }
+                    }
+                    break;
             }
+        }
+    }
 
-            System.out.println("Data loaded successfully from " + DATA_FILE);
-        } catch (IOException e) {
-            System.err.println("Error loading data: " + e.getMessage());
-            // Initialize with default data if file doesn't exist
-            initializeDefaultData(users, hives, tasks, locations);
-        } finally {
-            lock.readLock().unlock();
+    /**
+     * Raise the ID counters to the next IDs stored in the data file
+     * Loaded records have already raised them past their own IDs, and they are never lowered,
+     * so an ID that is already taken is never handed out again.
+     */
+    private void applyNextIds(TextChunk chunk) {
+        BeeHive.raiseNextId(chunk.nextHiveId);
+        Task.raiseNextId(chunk.nextTaskId);
+    }
+
+    /**
+     * Records parsed from the whole data file or from one part of it
+     */
+    static class TextChunk {
+        final List<User> users;
+        final List<BeeHive> hives;
+        final List<Task> tasks;
+        final List<String> locations;
+        int nextHiveId = -1;
+        int nextTaskId = -1;
+
+        TextChunk() {
+            this(new ArrayList<>(), new ArrayList<>(), new ArrayList<>(), new ArrayList<>());
+        }
+
+        TextChunk(List<User> users, List<BeeHive> hives, List<Task> tasks, List<String> locations) {
+            this.users = users;
+            this.hives = hives;
+            this.tasks = tasks;
+            this.locations = locations;
         }
     }
 
-    private void parseUser(String line, List<User> users) {
-        String[] parts = line.split("\\|");
-        if (parts.length == 4) {
-            users.add(new User(parts[0], parts[1], parts[2], parts[3]));
+    private void replayJournal(List<BeeHive> hives, List<Task> tasks, List<String> locations) {
+        if (journal != null) {
+            int applied = journal.replay(hives, tasks, locations);
+            if (applied > 0) {
+                System.out.println("Replayed " + applied + " journal records");
+            }
         }
     }
 
-    private void parseHive(String line, List<BeeHive> hives, BufferedReader reader) throws IOException {
-        String[] parts = line.split("\\|");
-        if (parts.length == 8) {
+    /**
+     * Format a hive as a single data file line (without its required actions)
+     * The version comes last, so lines saved before hives had versions still parse
+     * @param hive The hive to format
+     * @return The formatted line
+     */
+    static String formatHive(BeeHive hive) {
+        return hive.getId() + "|" + hive.getTagNumber() + "|" +
+                hive.getTagColor() + "|" + hive.getLocation() + "|" +
+                hive.getStatus() + "|" + hive.getHoneyLevel() + "|" +
+                hive.hasQueen() + "|" + hive.getNotes() + "|" + hive.getVersion();
+    }
+
+    /**
+     * Format a task as a single data file line
+     * @param task The task to format
+     * @return The formatted line
+     */
+    static String formatTask(Task task) {
+        return task.getId() + "|" + task.getName() + "|" +
+                task.getDescription() + "|" + task.getLocation() + "|" +
+                task.getStatus() + "|" + task.getNotes() + "|" + task.getVersion();
+    }
+
+    private static void parseUser(RecordTokenizer tokenizer, List<User> users) {
+        int fields = tokenizer.fieldCount();
+        if (fields == 4 || fields == 5) {
             try {
-                int id = Integer.parseInt(parts[0]);
-                int tagNumber = Integer.parseInt(parts[1]);
-                String tagColor = parts[2];
-                String location = parts[3];
-                String status = parts[4];
-                int honeyLevel = Integer.parseInt(parts[5]);
-                boolean hasQueen = Boolean.parseBoolean(parts[6]);
-                String notes = parts[7];
-
-                BeeHive hive = new BeeHive(tagNumber, tagColor, location);
-                // Set the ID to match the saved ID
-                hive.setId(id);
-                hive.setLocation(location);
+                User user = new User(tokenizer.nextString(), tokenizer.nextString(),
+                        tokenizer.nextString(), tokenizer.nextString());
+                user.setCredentialEpoch(fields == 5 ? tokenizer.nextInt() : 0);
+                users.add(user);
+            } catch (NumberFormatException e) {
+                System.err.println("Error parsing user data: " + tokenizer.line());
+            }
+        }
+    }
+
+    /**
+     * Parse a single hive line (without its required actions)
+     * @param line The line to parse
+     * @return The parsed hive, or null if the line is malformed
+     */
+    static BeeHive parseHiveRecord(String line) {
+        return parseHive(new RecordTokenizer(line));
+    }
+
+    private static BeeHive parseHive(RecordTokenizer tokenizer) {
+        int fields = tokenizer.fieldCount();
+        if (fields == 8 || fields == 9) {
+            try {
+                int id = tokenizer.nextInt();
+                int tagNumber = tokenizer.nextInt();
+                String tagColor = tokenizer.nextString();
+                String location = tokenizer.nextString();
+                String status = tokenizer.nextString();
+                int honeyLevel = tokenizer.nextInt();
+                boolean hasQueen = tokenizer.nextBoolean();
+                String notes = tokenizer.nextString();
+                long version = fields == 9 ? tokenizer.nextLong() : 0;
+
+                BeeHive hive = new BeeHive(id, tagNumber, tagColor, location);
                 hive.setStatus(status);
                 hive.setHoneyLevel(honeyLevel);
                 hive.setHasQueen(hasQueen);
                 hive.setNotes(notes);
-
-                // Check for actions
-                String nextLine = reader.readLine();
-                if (nextLine != null && nextLine.startsWith("ACTIONS:" + id)) {
-                    List<String> actions = new ArrayList<>();
-                    while ((nextLine = reader.readLine()) != null &&
-                            !nextLine.startsWith("ENDACTIONS:" + id)) {
-                        actions.add(nextLine);
-                    }
-                    // Add actions to hive
-                    for (String action : actions) {
-                        hive.addRequiredAction(action);
-                    }
-                }
-
-                hives.add(hive);
+                hive.setVersion(version);
+                return hive;
             } catch (NumberFormatException e) {
-                System.err.println("Error parsing hive data: " + line);
+                System.err.println("Error parsing hive data: " + tokenizer.line());
             }
         }
+        return null;
     }
 
-    private void parseTask(String line, List<Task> tasks) {
-        String[] parts = line.split("\\|");
-        if (parts.length == 6) {
+    /**
+     * Parse a single task line
+     * @param line The line to parse
+     * @return The parsed task, or null if the line is malformed
+     */
+    static Task parseTaskRecord(String line) {
+        return parseTask(new RecordTokenizer(line));
+    }
+
+    private static Task parseTask(RecordTokenizer tokenizer) {
+        int fields = tokenizer.fieldCount();
+        if (fields == 6 || fields == 7) {
             try {
-                int id = Integer.parseInt(parts[0]);
-                String name = parts[1];
-                String description = parts[2];
-                String location = parts[3];
-                String status = parts[4];
-                String notes = parts[5];
-
-                Task task = new Task(name, description, location);
-                task.setId(id);
-                task.setStatus(status);
+                int id = tokenizer.nextInt();
+                String name = tokenizer.nextString();
+                String description = tokenizer.nextString();
+                String location = tokenizer.nextString();
+                String status = tokenizer.nextString();
+                String notes = tokenizer.nextString();
+                long version = fields == 7 ? tokenizer.nextLong() : 0;
+
+                Task task = new Task(id, name, description, location);
+                task.setStatus(TaskStatus.parseStored(status));
                 task.setNotes(notes);
-
-                tasks.add(task);
+                task.setVersion(version);
+                return task;
             } catch (NumberFormatException e) {
-                System.err.println("Error parsing task data: " + line);
+                System.err.println("Error parsing task data: " + tokenizer.line());
             }
         }
+        return null;
     }
 
     private void initializeDefaultData(List<User> users, List<BeeHive> hives, List<Task> tasks, List<String> locations) {
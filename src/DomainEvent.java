@@ -0,0 +1,102 @@
+/**
+ * DomainEvent describes one change a user made to a hive, a task or the location list
+ * Events live in the slots of a DomainEventLog, which are created once and overwritten as the log
+ * wraps around, so publishing an event never allocates. The type says what happened; the other
+ * fields hold what the type needs:
+ * <pre>
+ * HIVE_ADDED            record: hive ID
+ * HIVE_TAG_CHANGED      record: hive ID, text: tag color, number: tag number
+ * HIVE_MOVED            record: hive ID, text: new location
+ * HIVE_STATUS_CHANGED   record: hive ID, text: new status
+ * HONEY_LEVEL_CHANGED   record: hive ID, number: new honey level
+ * QUEEN_MARKED_MISSING  record: hive ID
+ * QUEEN_MARKED_PRESENT  record: hive ID
+ * QUEEN_ACQUIRED        record: hive ID
+ * QUEEN_INSTALLED       record: hive ID, text: all notes, including the "Queen installed" note
+ * ACTION_ADDED          record: hive ID, text: the action
+ * ACTION_REMOVED        record: hive ID, text: the action
+ * HIVE_NOTES_CHANGED    record: hive ID, text: all notes
+ * TASK_ADDED            record: task ID
+ * TASK_CHANGED          record: task ID (name, description, location or notes)
+ * TASK_STATUS_CHANGED   record: task ID, text: new status label
+ * TASK_COMPLETED        record: task ID, text: "completed"
+ * LOCATION_ADDED        text: the location
+ * USER_CHANGED          text: username (e.g. the password was migrated to a hash)
+ * </pre>
+ * Hive and task events also carry the version of the record right after the change.
+ * The fields are volatile because a consumer reads a slot while the writer may already be
+ * reusing it; the log detects that afterwards (see DomainEventLog).
+ */
+public class DomainEvent {
+    public enum Type {
+        HIVE_ADDED,
+        HIVE_TAG_CHANGED,
+        HIVE_MOVED,
+        HIVE_STATUS_CHANGED,
+        HONEY_LEVEL_CHANGED,
+        QUEEN_MARKED_MISSING,
+        QUEEN_MARKED_PRESENT,
+        QUEEN_ACQUIRED,
+        QUEEN_INSTALLED,
+        ACTION_ADDED,
+        ACTION_REMOVED,
+        HIVE_NOTES_CHANGED,
+        TASK_ADDED,
+        TASK_CHANGED,
+        TASK_STATUS_CHANGED,
+        TASK_COMPLETED,
+        LOCATION_ADDED,
+        USER_CHANGED
+    }
+
+    private volatile Type type;
+    private volatile int recordId;
+    private volatile String text;
+    private volatile long number;
+    private volatile long version;
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Get the ID of the hive or task that changed
+     * @return the ID, or 0 for location events
+     */
+    public int getRecordId() {
+        return recordId;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public long getNumber() {
+        return number;
+    }
+
+    /**
+     * Get the version of the hive or task right after the change
+     * @return the version, or 0 for location events
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    void set(Type type, int recordId, String text, long number, long version) {
+        this.type = type;
+        this.recordId = recordId;
+        this.text = text;
+        this.number = number;
+        this.version = version;
+    }
+
+    void copyFrom(DomainEvent other) {
+        set(other.type, other.recordId, other.text, other.number, other.version);
+    }
+
+    @Override
+    public String toString() {
+        return type + "{record=" + recordId + ", text='" + text + "', number=" + number + ", version=" + version + "}";
+    }
+}
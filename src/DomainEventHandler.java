@@ -0,0 +1,19 @@
+/**
+ * DomainEventHandler consumes the events of a DomainEventLog on the log's consumer thread
+ */
+public interface DomainEventHandler {
+    /**
+     * Handle one event
+     * The event object is reused for the next event, so copy anything that has to be kept
+     * @param event The event
+     * @param sequence The position of the event in the log, counting from 0
+     * @param endOfBatch true for the last event that was available, e.g. to flush what the batch wrote
+     */
+    void onEvent(DomainEvent event, long sequence, boolean endOfBatch);
+
+    /**
+     * Called when the handler fell so far behind that the log overwrote events it had not handled
+     * @param missed The number of events lost
+     */
+    void onOverrun(long missed);
+}
@@ -0,0 +1,245 @@
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * DomainEventLog passes domain events from the threads that change data to background consumers
+ * Events are written into a ring of preallocated DomainEvent slots. Every consumer runs on its own
+ * daemon thread, remembers how far it got and handles everything published since in one batch,
+ * so a slow consumer handles many events per wake-up instead of falling further behind.
+ *
+ * Writers never wait for consumers. A consumer that lags by more than the ring's capacity loses
+ * the oldest events it had not handled; it notices when it reads a slot, skips to the oldest event
+ * still in the ring and is told how many it missed, so it can catch up another way, e.g. with a
+ * full save. To notice, writers mark a sequence as claimed before filling its slot, and consumers
+ * check after copying a slot that it was not claimed again in the meantime.
+ */
+public class DomainEventLog {
+    public static final int DEFAULT_CAPACITY = 4096;
+    // How long an idle consumer sleeps before looking again if no writer wakes it
+    private static final long IDLE_PARK_NANOS = 100_000_000L;
+
+    private final DomainEvent[] ring;
+    private final int mask;
+    private final Object writeLock = new Object();
+    // Highest sequence a writer started to fill, and highest sequence whose slot is filled
+    private volatile long claimed = -1;
+    private volatile long published = -1;
+    private volatile EventConsumer[] consumers = new EventConsumer[0];
+    private volatile boolean running = true;
+
+    public DomainEventLog() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor for DomainEventLog
+     * @param capacity How many events consumers may lag behind before they lose some; rounded up to a power of two
+     */
+    public DomainEventLog(int capacity) {
+        int size = 2;
+        while (size < capacity) {
+            size *= 2;
+        }
+        ring = new DomainEvent[size];
+        for (int i = 0; i < size; i++) {
+            ring[i] = new DomainEvent();
+        }
+        mask = size - 1;
+    }
+
+    /**
+     * Publish an event to all consumers
+     * @param type What happened
+     * @param recordId The ID of the hive or task, or 0
+     * @param text The text the type carries, or null
+     * @param number The number the type carries, or 0
+     * @param version The version of the hive or task after the change, or 0
+     */
+    public void publish(DomainEvent.Type type, int recordId, String text, long number, long version) {
+        synchronized (writeLock) {
+            long sequence = published + 1;
+            claimed = sequence;
+            ring[(int) sequence & mask].set(type, recordId, text, number, version);
+            published = sequence;
+        }
+        for (EventConsumer consumer : consumers) {
+            if (consumer.idle) {
+                LockSupport.unpark(consumer.thread);
+            }
+        }
+    }
+
+    /**
+     * Start a consumer on its own daemon thread
+     * It sees only events published from now on
+     * @param name The name of the consumer and its thread
+     * @param handler The handler the events are passed to
+     * @return the consumer, e.g. to read its lag
+     */
+    public synchronized EventConsumer addConsumer(String name, DomainEventHandler handler) {
+        EventConsumer consumer = new EventConsumer(name, handler, published);
+        EventConsumer[] updated = Arrays.copyOf(consumers, consumers.length + 1);
+        updated[updated.length - 1] = consumer;
+        consumers = updated;
+        consumer.thread.start();
+        return consumer;
+    }
+
+    /**
+     * Wait until every consumer has handled the events published so far
+     */
+    public void drain() {
+        long target = published;
+        for (EventConsumer consumer : consumers) {
+            while (consumer.sequence < target && consumer.thread.isAlive()) {
+                LockSupport.unpark(consumer.thread);
+                LockSupport.parkNanos(100_000L);
+            }
+        }
+    }
+
+    /**
+     * Let the consumers handle what is left, then stop them
+     */
+    public void shutdown() {
+        drain();
+        running = false;
+        for (EventConsumer consumer : consumers) {
+            LockSupport.unpark(consumer.thread);
+            try {
+                consumer.thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Get the number of events published so far
+     * @return the number of events
+     */
+    public long getPublishedCount() {
+        return published + 1;
+    }
+
+    public int getCapacity() {
+        return ring.length;
+    }
+
+    /**
+     * Get a one-line summary of the log and its consumers
+     * @return the summary
+     */
+    public String getStatistics() {
+        StringBuilder statistics = new StringBuilder("Events: ").append(getPublishedCount());
+        for (EventConsumer consumer : consumers) {
+            statistics.append(", ").append(consumer);
+        }
+        return statistics.toString();
+    }
+
+    /**
+     * A consumer and the thread that feeds it
+     */
+    public class EventConsumer implements Runnable {
+        private final String name;
+        private final DomainEventHandler handler;
+        private final Thread thread;
+        // Consumer-owned copy of the slot being handled, so a writer reusing the slot cannot tear it
+        private final DomainEvent current = new DomainEvent();
+        // Highest sequence handled
+        private volatile long sequence;
+        private volatile boolean idle;
+        private volatile long batchCount;
+        private volatile long largestBatch;
+        private volatile long missedCount;
+
+        EventConsumer(String name, DomainEventHandler handler, long sequence) {
+            this.name = name;
+            this.handler = handler;
+            this.sequence = sequence;
+            this.thread = new Thread(this, name);
+            thread.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            long next = sequence + 1;
+            while (true) {
+                long available = published;
+                if (available < next) {
+                    if (!running) {
+                        return;
+                    }
+                    // Set idle before looking again, so a writer either is seen here or sees idle and wakes us
+                    idle = true;
+                    if (published < next && running) {
+                        LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                    }
+                    idle = false;
+                    continue;
+                }
+                next = handleBatch(next, available);
+            }
+        }
+
+        /**
+         * Handle the events from next to available
+         * @return the sequence to continue from
+         */
+        private long handleBatch(long next, long available) {
+            long start = next;
+            while (next <= available) {
+                current.copyFrom(ring[(int) next & mask]);
+                // Slots before oldest have been claimed again, so they may hold newer events
+                long oldest = claimed - mask;
+                if (next < oldest) {
+                    missed(oldest - next);
+                    return oldest;
+                }
+                try {
+                    handler.onEvent(current, next, next == available);
+                } catch (RuntimeException e) {
+                    System.err.println("Error handling " + current + " in " + name + ": " + e);
+                }
+                sequence = next;
+                next++;
+            }
+            batchCount++;
+            largestBatch = Math.max(largestBatch, available - start + 1);
+            return next;
+        }
+
+        private void missed(long count) {
+            missedCount += count;
+            try {
+                handler.onOverrun(count);
+            } catch (RuntimeException e) {
+                System.err.println("Error handling overrun in " + name + ": " + e);
+            }
+        }
+
+        /**
+         * Get how many published events this consumer has not handled yet
+         * @return the number of events
+         */
+        public long getLag() {
+            return published - sequence;
+        }
+
+        public long getBatchCount() {
+            return batchCount;
+        }
+
+        public long getMissedCount() {
+            return missedCount;
+        }
+
+        @Override
+        public String toString() {
+            return name + ": " + batchCount + " batches, largest " + largestBatch + ", missed " + missedCount +
+                    ", lag " + getLag();
+        }
+    }
+}
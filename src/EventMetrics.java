@@ -0,0 +1,61 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * EventMetrics counts domain events by type as a DomainEventLog consumer
+ * Only the consumer thread writes the counters; anyone may read them.
+ */
+public class EventMetrics implements DomainEventHandler {
+    private static final DomainEvent.Type[] TYPES = DomainEvent.Type.values();
+
+    private final AtomicLongArray counts = new AtomicLongArray(TYPES.length);
+    private volatile long missedCount = 0;
+
+    @Override
+    public void onEvent(DomainEvent event, long sequence, boolean endOfBatch) {
+        int index = event.getType().ordinal();
+        // Single writer, so an ordered store is enough
+        counts.lazySet(index, counts.get(index) + 1);
+    }
+
+    @Override
+    public void onOverrun(long missed) {
+        missedCount += missed;
+    }
+
+    /**
+     * Get how many events of a type were counted
+     * @param type The event type
+     * @return the number of events
+     */
+    public long getCount(DomainEvent.Type type) {
+        return counts.get(type.ordinal());
+    }
+
+    /**
+     * Get how many events were lost before they could be counted
+     * @return the number of events
+     */
+    public long getMissedCount() {
+        return missedCount;
+    }
+
+    /**
+     * Get the counts of the types that occurred
+     * @return one line, e.g. "Changes: HIVE_STATUS_CHANGED 3, TASK_COMPLETED 1"
+     */
+    public String getStatistics() {
+        StringBuilder statistics = new StringBuilder("Changes:");
+        String separator = " ";
+        for (DomainEvent.Type type : TYPES) {
+            long count = counts.get(type.ordinal());
+            if (count > 0) {
+                statistics.append(separator).append(type).append(' ').append(count);
+                separator = ", ";
+            }
+        }
+        if (missedCount > 0) {
+            statistics.append(separator).append("missed ").append(missedCount);
+        }
+        return statistics.toString();
+    }
+}
@@ -0,0 +1,122 @@
+/**
+ * EventPersistence writes domain events to disk as a DomainEventLog consumer
+ * In journal mode every event becomes journal records, written in one go per batch. Otherwise a
+ * batch asks the save scheduler for one background save. Changes the journal has no record for,
+ * and events lost because the consumer fell behind, are covered by a full save instead.
+ */
+public class EventPersistence implements DomainEventHandler {
+    private final ChangeJournal journal;
+    private final SaveScheduler saveScheduler;
+    private final Hives hivesManager;
+    private final Tasks tasksManager;
+    private boolean saveNeeded = false;
+
+    /**
+     * Constructor for EventPersistence
+     * @param journal The journal to write to, or null to save the data file instead
+     * @param saveScheduler The scheduler of full saves
+     * @param hivesManager The hives, to write added hives in full
+     * @param tasksManager The tasks, to write added tasks in full
+     */
+    public EventPersistence(ChangeJournal journal, SaveScheduler saveScheduler, Hives hivesManager, Tasks tasksManager) {
+        this.journal = journal;
+        this.saveScheduler = saveScheduler;
+        this.hivesManager = hivesManager;
+        this.tasksManager = tasksManager;
+        if (journal != null) {
+            journal.setFlushEachRecord(false);
+        }
+    }
+
+    @Override
+    public void onEvent(DomainEvent event, long sequence, boolean endOfBatch) {
+        if (journal == null) {
+            saveNeeded = true;
+        } else {
+            journal(event);
+        }
+        if (endOfBatch) {
+            if (journal != null) {
+                journal.flush();
+            }
+            if (saveNeeded) {
+                saveNeeded = false;
+                saveScheduler.requestSave();
+            }
+        }
+    }
+
+    @Override
+    public void onOverrun(long missed) {
+        System.err.println("Persistence fell " + missed + " changes behind, saving all data");
+        saveScheduler.requestSave();
+    }
+
+    private void journal(DomainEvent event) {
+        int id = event.getRecordId();
+        switch (event.getType()) {
+            case HIVE_ADDED: {
+                // Written as the hive is now; any change events that follow are replayed on top
+                BeeHive hive = hivesManager.getHive(id);
+                if (hive != null) {
+                    journal.recordHiveAdded(hive);
+                }
+                break;
+            }
+            case HIVE_TAG_CHANGED:
+                journal.recordHiveField(id, "tagNumber", event.getNumber());
+                journal.recordHiveField(id, "tagColor", event.getText());
+                break;
+            case HIVE_MOVED:
+                journal.recordHiveField(id, "location", event.getText());
+                break;
+            case HIVE_STATUS_CHANGED:
+                journal.recordHiveField(id, "status", event.getText());
+                break;
+            case HONEY_LEVEL_CHANGED:
+                journal.recordHiveField(id, "honeyLevel", event.getNumber());
+                break;
+            case QUEEN_MARKED_MISSING:
+                journal.recordHiveField(id, "hasQueen", false);
+                break;
+            case QUEEN_MARKED_PRESENT:
+                journal.recordHiveField(id, "hasQueen", true);
+                break;
+            case QUEEN_ACQUIRED:
+                journal.recordActionRemoved(id, KnownAction.NEED_QUEEN.getLabel());
+                journal.recordActionAdded(id, KnownAction.QUEEN_ACQUIRED.getLabel());
+                break;
+            case QUEEN_INSTALLED:
+                journal.recordHiveField(id, "hasQueen", true);
+                journal.recordActionRemoved(id, KnownAction.QUEEN_ACQUIRED.getLabel());
+                journal.recordHiveField(id, "notes", event.getText());
+                break;
+            case ACTION_ADDED:
+                journal.recordActionAdded(id, event.getText());
+                break;
+            case ACTION_REMOVED:
+                journal.recordActionRemoved(id, event.getText());
+                break;
+            case HIVE_NOTES_CHANGED:
+                journal.recordHiveField(id, "notes", event.getText());
+                break;
+            case TASK_ADDED: {
+                Task task = tasksManager.getTask(id);
+                if (task != null) {
+                    journal.recordTaskAdded(task);
+                }
+                break;
+            }
+            case TASK_STATUS_CHANGED:
+            case TASK_COMPLETED:
+                journal.recordTaskStatus(id, event.getText());
+                break;
+            case LOCATION_ADDED:
+                journal.recordLocationAdded(event.getText());
+                break;
+            default:
+                // The journal has no record for this change, so it goes into the next full save
+                saveNeeded = true;
+        }
+    }
+}
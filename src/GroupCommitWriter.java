@@ -0,0 +1,255 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * GroupCommitWriter replaces a file durably and lets concurrent writers share one commit
+ * Each commit writes a temp file next to the target, forces it to disk once and renames it
+ * over the target, so readers and crashes only ever see a complete file.
+ * Requests that arrive while a commit is running are batched into the next commit, which
+ * writes the newest snapshot only: all requests describe the same shared in-memory data,
+ * so the newest one covers the others. Newest means highest snapshot sequence, not last
+ * to arrive, since a snapshot taken earlier can reach the writer later. Batching needs
+ * callers that save concurrently; DataManager.saveMerged holds its sync lock across the
+ * commit, so only DataManager.saveData calls ever share one.
+ */
+public class GroupCommitWriter {
+
+    /**
+     * Writes a complete snapshot to the given file
+     */
+    public interface SnapshotWriter {
+        void write(File target) throws IOException;
+    }
+
+    // How often a rename blocked by another process is tried, waiting a little longer each time
+    private static final int MOVE_ATTEMPTS = 10;
+    private static final long MOVE_RETRY_MILLIS = 20;
+
+    private final File file;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition finished = lock.newCondition();
+    private List<Ticket> waiting = new ArrayList<>();
+    private SnapshotWriter latest;
+    private long latestSequence = Long.MIN_VALUE;
+    // Sequence of the newest snapshot on disk
+    private long committedSequence = Long.MIN_VALUE;
+    private long arrivals = 0;
+    private boolean committing = false;
+
+    private long commitCount = 0;
+    private long requestCount = 0;
+    private long maxBatchSize = 0;
+    private long totalLatencyNanos = 0;
+    private long lastLatencyNanos = 0;
+
+    /**
+     * Constructor for GroupCommitWriter
+     * @param file The file that commits replace
+     */
+    public GroupCommitWriter(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Write a snapshot and wait until it, or a newer snapshot, is durably on disk
+     * Snapshots are ordered by arrival, for callers that never commit concurrently
+     * @param writer Writes the snapshot to the file it is given
+     * @throws IOException if the commit covering this request failed
+     */
+    public void commit(SnapshotWriter writer) throws IOException {
+        long sequence;
+        lock.lock();
+        try {
+            sequence = ++arrivals;
+        } finally {
+            lock.unlock();
+        }
+        commit(sequence, writer);
+    }
+
+    /**
+     * Write a snapshot and wait until it, or a newer snapshot, is durably on disk
+     * @param sequence Orders the snapshots by when their data was read; a higher sequence is newer
+     * @param writer Writes the snapshot to the file it is given
+     * @throws IOException if the commit covering this request failed
+     */
+    public void commit(long sequence, SnapshotWriter writer) throws IOException {
+        lock.lock();
+        try {
+            Ticket ticket = new Ticket();
+            waiting.add(ticket);
+            if (sequence >= latestSequence) {
+                latest = writer;
+                latestSequence = sequence;
+            }
+
+            while (!ticket.done) {
+                if (committing) {
+                    finished.await();
+                    continue;
+                }
+
+                // Lead the next commit for everyone waiting so far
+                committing = true;
+                List<Ticket> batch = waiting;
+                waiting = new ArrayList<>();
+                SnapshotWriter snapshot = latest;
+                long snapshotSequence = latestSequence;
+                latest = null;
+                latestSequence = Long.MIN_VALUE;
+
+                IOException failure = null;
+                long start = System.nanoTime();
+                if (snapshotSequence > committedSequence) {
+                    lock.unlock();
+                    try {
+                        writeDurably(snapshot);
+                    } catch (IOException e) {
+                        failure = e;
+                    } catch (RuntimeException e) {
+                        failure = new IOException(e);
+                    } finally {
+                        lock.lock();
+                    }
+                    if (failure == null) {
+                        committedSequence = snapshotSequence;
+                    }
+                }
+                // Otherwise a newer snapshot is already on disk, and it covers this batch
+                long latency = System.nanoTime() - start;
+
+                committing = false;
+                commitCount++;
+                requestCount += batch.size();
+                maxBatchSize = Math.max(maxBatchSize, batch.size());
+                totalLatencyNanos += latency;
+                lastLatencyNanos = latency;
+                for (Ticket done : batch) {
+                    done.done = true;
+                    done.failure = failure;
+                }
+                finished.signalAll();
+            }
+
+            if (ticket.failure != null) {
+                throw ticket.failure;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for commit");
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void writeDurably(SnapshotWriter snapshot) throws IOException {
+        Path target = file.getAbsoluteFile().toPath();
+        Path directory = target.getParent();
+        Path temp = Files.createTempFile(directory, file.getName(), ".tmp");
+        try {
+            snapshot.write(temp.toFile());
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+            moveIntoPlace(temp, target);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+
+        // Persist the rename itself; not every platform can open a directory for this
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // The file contents are already durable
+        }
+    }
+
+    /**
+     * Rename the temp file over the target
+     * On Windows the rename fails while another process has the target open, e.g. to read it,
+     * so it is retried a few times before the commit fails
+     */
+    private static void moveIntoPlace(Path temp, Path target) throws IOException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                try {
+                    Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+                }
+                return;
+            } catch (FileSystemException e) {
+                // Windows reports a target in use as AccessDeniedException or a plain FileSystemException
+                if (attempt == MOVE_ATTEMPTS || e instanceof NoSuchFileException) {
+                    throw e;
+                }
+            }
+            try {
+                Thread.sleep(MOVE_RETRY_MILLIS * attempt);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while replacing " + target);
+            }
+        }
+    }
+
+    public long getCommitCount() {
+        lock.lock();
+        try {
+            return commitCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the average number of save requests covered by one commit
+     * @return the average batch size
+     */
+    public double getAverageBatchSize() {
+        lock.lock();
+        try {
+            return commitCount == 0 ? 0 : (double) requestCount / commitCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get a one-line summary of the commit counters
+     * @return the summary
+     */
+    public String getStatistics() {
+        lock.lock();
+        try {
+            double averageMillis = commitCount == 0 ? 0 : totalLatencyNanos / 1e6 / commitCount;
+            return String.format("Commits: %d, requests: %d, average batch: %.1f, max batch: %d, " +
+                            "average latency: %.1f ms, last latency: %.1f ms",
+                    commitCount, requestCount, commitCount == 0 ? 0.0 : (double) requestCount / commitCount,
+                    maxBatchSize, averageMillis, lastLatencyNanos / 1e6);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * A save request waiting for its commit
+     */
+    private static class Ticket {
+        boolean done;
+        IOException failure;
+    }
+}
@@ -1,68 +1,723 @@
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
 
+/**
+ * Hives class holds all hives and indexes them by ID, tag number, location and whether they need attention
+ * Hives notify their owning Hives when they move or their state changes, so the per-location
+ * buckets, the attention set and the per-location statistics stay correct without scanning
+ *
+ * Hives is safe to share between sessions. The hive list and the ID and tag indexes are guarded
+ * by one lock that only adding, removing, re-keying and moving hives write to. Everything kept per
+ * location sits in a Stripe with its own lock, so honey, queen, status and action changes at
+ * different locations never wait for each other. Readers try an optimistic read first and only
+ * wait if a writer got in the way. Locks are always taken in the order: hive, structure lock,
+ * stripe locks in location order.
+ */
 public class Hives {
+    private final StampedLock lock = new StampedLock();
+    // Hives in the order they were added; removed hives leave a null until the list is compacted
     private List<BeeHive> hives;
+    private int removedCount = 0;
+    private IntObjectMap<BeeHive> hivesById;
+    // First hive with each tag number; later ones are chained through BeeHive.nextWithSameTag
+    private IntObjectMap<BeeHive> hivesByTag;
+    // Removed hives that the data file still holds, by ID, until a save writes it without them
+    private final IntObjectMap<BeeHive> removedSinceSave = new IntObjectMap<>();
     private List<String> locations;
+    private final Map<String, Stripe> stripes = new ConcurrentHashMap<>();
+    private volatile boolean consistencyCheck = false;
+    private volatile DomainEventLog eventLog; // Where hive changes are published, if anywhere
+    // Bumped whenever a hive is added or removed or a location appears
+    private volatile long version = 0;
+    private volatile int hiveCount = 0;
+    private volatile SnapshotList<BeeHive> hivesSnapshot = new SnapshotList<>(new Object[0], 0);
+    private volatile SnapshotList<String> locationsSnapshot = new SnapshotList<>(new Object[0], 0);
+    private final AtomicInteger attentionCount = new AtomicInteger();
+    private final AtomicInteger queenlessCount = new AtomicInteger();
+    // Bumped whenever a counted statistic changes
+    private final AtomicLong statisticsVersion = new AtomicLong();
 
     public Hives() {
         this.hives = new ArrayList<>();
+        this.hivesById = new IntObjectMap<>();
+        this.hivesByTag = new IntObjectMap<>();
         this.locations = new ArrayList<>();
     }
 
     public void addBeeHive(BeeHive hive) {
-        hives.add(hive);
-        // Add location if it's not already in the list
-        if (!locations.contains(hive.getLocation())) {
-            locations.add(hive.getLocation());
+        synchronized (hive) {
+            Hives previousOwner = hive.getOwner();
+            if (previousOwner != null) {
+                previousOwner.removeHive(hive);
+            }
+            long stamp = lock.writeLock();
+            try {
+                hive.ownerIndex = hives.size();
+                hives.add(hive);
+                hiveCount++;
+                hive.setOwner(this);
+                changed();
+                hivesById.put(hive.getId(), hive);
+                removedSinceSave.remove(hive.getId());
+                addToTag(hive, hive.getTagNumber());
+                Stripe stripe = stripeFor(hive.getLocation());
+                long stripeStamp = stripe.lock.writeLock();
+                try {
+                    hive.stripe = stripe;
+                    stripe.hives.add(hive);
+                    stripe.version++;
+                    updateAttention(stripe, hive);
+                } finally {
+                    stripe.lock.unlockWrite(stripeStamp);
+                }
+            } finally {
+                lock.unlockWrite(stamp);
+            }
         }
     }
 
-    public void addBeeHive(int tagNumber, String tagColor, String location) {
-        hives.add(new BeeHive(tagNumber, tagColor, location));
-        // Add location if it's not already in the list
-        if (!locations.contains(location)) {
-            locations.add(location);
-        }
+    public BeeHive addBeeHive(int tagNumber, String tagColor, String location) {
+        BeeHive hive = new BeeHive(tagNumber, tagColor, location);
+        addBeeHive(hive);
+        publish(DomainEvent.Type.HIVE_ADDED, hive.getId(), null, 0, hive.getVersion());
+        return hive;
     }
 
+    /**
+     * Get all hives, in the order they were added
+     * @return a read-only snapshot, the same instance until a hive is added or removed
+     */
     public List<BeeHive> getAllHives() {
-        return new ArrayList<>(hives);
+        SnapshotList<BeeHive> snapshot = hivesSnapshot;
+        if (snapshot.getVersion() != version) {
+            snapshot = OptimisticRead.read(lock, () -> {
+                Object[] live = new Object[hiveCount];
+                int i = 0;
+                for (BeeHive hive : hives) {
+                    if (hive != null) {
+                        live[i++] = hive;
+                    }
+                }
+                return new SnapshotList<BeeHive>(live, version);
+            });
+            // A racing reader may publish an older snapshot; the version check above then rebuilds it
+            hivesSnapshot = snapshot;
+        }
+        return snapshot;
     }
 
-    public List<BeeHive> getHivesByLocation(String location) {
-        List<BeeHive> result = new ArrayList<>();
-        for (BeeHive hive : hives) {
-            if (hive.getLocation().equals(location)) {
+    /**
+     * Get the version of the hive and location lists
+     * @return a number that changes whenever a hive is added or removed or a location appears
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Get a hive by its ID
+     * @param id The hive ID
+     * @return the hive, or null if there is no hive with that ID
+     */
+    public BeeHive getHive(int id) {
+        return OptimisticRead.read(lock, () -> hivesById.get(id));
+    }
+
+    /**
+     * Change a hive only if nobody has changed it since the caller read it (compare-and-set)
+     * The version check and the update run under the hive's lock, so no other change gets in between
+     * @param id The hive ID
+     * @param expectedVersion The version the caller read, see BeeHive.getVersion
+     * @param update Makes the change through the hive's setters
+     * @return true if the hive was updated, false if there is no such hive or its version has moved on
+     */
+    public boolean updateHive(int id, long expectedVersion, Consumer<BeeHive> update) {
+        BeeHive hive = getHive(id);
+        if (hive == null) {
+            return false;
+        }
+        synchronized (hive) {
+            if (hive.getOwner() != this || hive.getId() != id || hive.getVersion() != expectedVersion) {
+                return false;
+            }
+            update.accept(hive);
+            return true;
+        }
+    }
+
+    /**
+     * Get a hive removed since the last save, if the data file still holds it
+     * @param id The hive ID
+     * @return the removed hive, or null if there is none with that ID
+     */
+    BeeHive getRemovedHive(int id) {
+        return OptimisticRead.read(lock, () -> removedSinceSave.get(id));
+    }
+
+    /**
+     * Get every hive removed since the last save that the data file still holds
+     * @return a new list of the removed hives
+     */
+    List<BeeHive> getRemovedHives() {
+        return OptimisticRead.read(lock, removedSinceSave::values);
+    }
+
+    /**
+     * Forget removed hives once a save has written the data file without them
+     * @param saved The removed hives as returned by getRemovedHives before the save
+     */
+    void forgetRemovedHives(List<BeeHive> saved) {
+        long stamp = lock.writeLock();
+        try {
+            for (BeeHive hive : saved) {
+                removedSinceSave.remove(hive.getId(), hive);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Get a hive by its tag number
+     * @param tagNumber The tag number
+     * @return the first hive added with that tag number, or null if there is none
+     */
+    public BeeHive getHiveByTagNumber(int tagNumber) {
+        return OptimisticRead.read(lock, () -> hivesByTag.get(tagNumber));
+    }
+
+    /**
+     * Get every hive with a tag number, e.g. tags of different colors with the same number
+     * @param tagNumber The tag number
+     * @return the hives, in the order they were added
+     */
+    public List<BeeHive> getHivesByTagNumber(int tagNumber) {
+        return OptimisticRead.read(lock, () -> {
+            List<BeeHive> result = new ArrayList<>(1);
+            for (BeeHive hive = hivesByTag.get(tagNumber); hive != null; hive = hive.nextWithSameTag) {
+                // A chain read while it was relinked may not end; give up and read it under the lock
+                if (result.size() > hiveCount) {
+                    throw new IllegalStateException("Tag chain changed while reading");
+                }
                 result.add(hive);
             }
+            return result;
+        });
+    }
+
+    /**
+     * Get the hives at a location
+     * @param location The location
+     * @return a read-only snapshot, the same instance until a hive arrives at or leaves the location
+     */
+    public List<BeeHive> getHivesByLocation(String location) {
+        Stripe stripe = stripes.get(location);
+        if (stripe == null) {
+            return new SnapshotList<>(new Object[0], 0);
         }
-        return result;
+        SnapshotList<BeeHive> snapshot = stripe.snapshot;
+        if (snapshot == null || snapshot.getVersion() != stripe.version) {
+            snapshot = OptimisticRead.read(stripe.lock,
+                    () -> new SnapshotList<BeeHive>(stripe.hives.toArray(), stripe.version));
+            stripe.snapshot = snapshot;
+        }
+        return snapshot;
     }
 
+    /**
+     * Get the hives that need attention, read from the attention set
+     * @return the hives needing attention, grouped by location
+     */
     public List<BeeHive> getHivesNeedingAttention() {
+        if (consistencyCheck) {
+            checkAttentionSet();
+        }
+        List<BeeHive> result = new ArrayList<>(attentionCount.get());
+        for (Stripe stripe : stripesInOrder(getLocations())) {
+            result.addAll(Arrays.asList(OptimisticRead.read(stripe.lock, stripe::needingAttention)));
+        }
+        return result;
+    }
+
+    /**
+     * Get the hives that require a known action
+     * Every hive with a required action needs attention, so only that set is scanned
+     * @param action The action, e.g. KnownAction.NEED_QUEEN
+     * @return the hives with the action
+     */
+    public List<BeeHive> getHivesWithAction(KnownAction action) {
+        if (consistencyCheck) {
+            checkAttentionSet();
+        }
+        long bit = action.bit();
         List<BeeHive> result = new ArrayList<>();
-        for (BeeHive hive : hives) {
-            if (hive.needsAttention()) {
-                result.add(hive);
+        for (Stripe stripe : stripesInOrder(getLocations())) {
+            for (BeeHive hive : OptimisticRead.read(stripe.lock, stripe::needingAttention)) {
+                if ((hive.getRequiredActionBits() & bit) != 0) {
+                    result.add(hive);
+                }
             }
         }
         return result;
     }
 
+    public int getAttentionCount() {
+        return attentionCount.get();
+    }
+
+    public int getQueenlessCount() {
+        return queenlessCount.get();
+    }
+
+    /**
+     * Get the running statistics of a location
+     * @param location The location
+     * @return a copy of the statistics, all zero if no hive was ever there
+     */
+    public LocationStatistics getLocationStatistics(String location) {
+        Stripe stripe = stripes.get(location);
+        if (stripe == null) {
+            return new LocationStatistics(location);
+        }
+        return OptimisticRead.read(stripe.lock, () -> new LocationStatistics(stripe.statistics));
+    }
+
+    /**
+     * Get the version of the statistics
+     * @return a number that changes whenever a hive is added, removed, moved, or its honey level,
+     * queen or attention state changes
+     */
+    public long getStatisticsVersion() {
+        return statisticsVersion.get();
+    }
+
+    /**
+     * Compare the attention set with a full scan on every attention query
+     * @param consistencyCheck true to check the set, false to trust it
+     */
+    public void setConsistencyCheck(boolean consistencyCheck) {
+        this.consistencyCheck = consistencyCheck;
+    }
+
+    /**
+     * Publish hives created here and every change users make to the hives to an event log
+     * @param eventLog The log, or null to stop publishing
+     */
+    public void setEventLog(DomainEventLog eventLog) {
+        this.eventLog = eventLog;
+    }
+
+    /**
+     * Compare the attention set with a full scan of all hives, repairing it if it differs
+     * Hives changed by another session during the check may be reported as out of date,
+     * so the result is only exact while no hive is being changed
+     * @return true if the set was correct, false otherwise
+     */
+    public boolean checkAttentionSet() {
+        long stamp = lock.writeLock();
+        // Read the locations directly: the structure lock is held, and StampedLock is not reentrant
+        List<Stripe> locked = stripesInOrder(locations);
+        long[] stripeStamps = new long[locked.size()];
+        for (int i = 0; i < stripeStamps.length; i++) {
+            stripeStamps[i] = locked.get(i).lock.writeLock();
+        }
+        try {
+            Set<BeeHive> expected = new HashSet<>();
+            for (BeeHive hive : hives) {
+                if (hive != null && hive.needsAttention()) {
+                    expected.add(hive);
+                }
+            }
+            Set<BeeHive> indexed = new HashSet<>();
+            for (Stripe stripe : locked) {
+                indexed.addAll(Arrays.asList(stripe.needingAttention()));
+            }
+            if (expected.equals(indexed)) {
+                return true;
+            }
+            System.err.println("Attention set out of date: " + indexed.size() + " hives indexed, " +
+                    expected.size() + " found by scanning");
+            // The statistics count attention too, so recount them from scratch
+            attentionCount.set(0);
+            queenlessCount.set(0);
+            for (Stripe stripe : locked) {
+                stripe.clearAttention();
+                stripe.statistics.reset();
+                for (BeeHive hive : stripe.hives) {
+                    hive.counted = false;
+                    updateAttention(stripe, hive);
+                }
+            }
+            statisticsVersion.incrementAndGet();
+            return false;
+        } finally {
+            for (int i = stripeStamps.length - 1; i >= 0; i--) {
+                locked.get(i).lock.unlockWrite(stripeStamps[i]);
+            }
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Get the locations, in the order they were first used
+     * @return a read-only snapshot, the same instance until a location is added
+     */
     public List<String> getLocations() {
-        return new ArrayList<>(locations);
+        SnapshotList<String> snapshot = locationsSnapshot;
+        // Locations are never removed, so the snapshot is current while it has as many as there are stripes
+        if (snapshot.size() != stripes.size()) {
+            snapshot = OptimisticRead.read(lock, () -> new SnapshotList<String>(locations.toArray(), version));
+            locationsSnapshot = snapshot;
+        }
+        return snapshot;
     }
 
     public int getHiveCount() {
-        return hives.size();
+        return hiveCount;
     }
 
     public int getHiveCountByLocation(String location) {
-        return getHivesByLocation(location).size();
+        Stripe stripe = stripes.get(location);
+        return stripe == null ? 0 : OptimisticRead.read(stripe.lock, () -> stripe.hives.size());
     }
 
     public void removeHive(BeeHive hive) {
-        hives.remove(hive);
+        remove(hive);
+    }
+
+    /**
+     * Remove a hive by its ID
+     * @param id The hive ID
+     * @return the removed hive, or null if there is no hive with that ID
+     */
+    public BeeHive removeHive(int id) {
+        BeeHive hive = getHive(id);
+        return hive != null && remove(hive) ? hive : null;
+    }
+
+    private boolean remove(BeeHive hive) {
+        synchronized (hive) {
+            if (hive.getOwner() != this) {
+                return false;
+            }
+            long stamp = lock.writeLock();
+            try {
+                hives.set(hive.ownerIndex, null);
+                hive.ownerIndex = -1;
+                hiveCount--;
+                changed();
+                // Compact once half the list is holes, so removal stays O(1) on average
+                if (++removedCount > hives.size() / 2) {
+                    compact();
+                }
+                hivesById.remove(hive.getId(), hive);
+                if (hive.syncedVersion >= 0) {
+                    removedSinceSave.put(hive.getId(), hive);
+                }
+                removeFromTag(hive, hive.getTagNumber());
+                Stripe stripe = hive.stripe;
+                long stripeStamp = stripe.lock.writeLock();
+                try {
+                    stripe.hives.remove(hive);
+                    stripe.version++;
+                    if (stripe.removeAttention(hive)) {
+                        attentionCount.decrementAndGet();
+                    }
+                    uncount(stripe, hive);
+                    hive.stripe = null;
+                } finally {
+                    stripe.lock.unlockWrite(stripeStamp);
+                }
+                hive.setOwner(null);
+                return true;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+    }
+
+    /**
+     * Re-key a hive whose ID changed, called by BeeHive.setId
+     * @param hive The hive that changed
+     * @param previousId The ID it had before
+     */
+    void idChanged(BeeHive hive, int previousId) {
+        long stamp = lock.writeLock();
+        try {
+            hivesById.remove(previousId, hive);
+            hivesById.put(hive.getId(), hive);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Re-key a hive whose tag number changed, called by BeeHive.setTagNumber
+     * @param hive The hive that changed
+     * @param previousTagNumber The tag number it had before
+     */
+    void tagNumberChanged(BeeHive hive, int previousTagNumber) {
+        long stamp = lock.writeLock();
+        try {
+            removeFromTag(hive, previousTagNumber);
+            addToTag(hive, hive.getTagNumber());
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Move a hive to the bucket of its new location, called by BeeHive.setLocation
+     * @param hive The hive that moved
+     * @param previousLocation The location it moved from
+     */
+    void hiveMoved(BeeHive hive, String previousLocation) {
+        long stamp = lock.writeLock();
+        try {
+            Stripe from = hive.stripe;
+            Stripe to = stripeFor(hive.getLocation());
+            if (from == to) {
+                return;
+            }
+            Stripe first = from.order < to.order ? from : to;
+            Stripe second = first == from ? to : from;
+            long firstStamp = first.lock.writeLock();
+            long secondStamp = second.lock.writeLock();
+            try {
+                from.hives.remove(hive);
+                from.version++;
+                boolean needsAttention = from.removeAttention(hive);
+                uncount(from, hive);
+                hive.stripe = to;
+                to.hives.add(hive);
+                to.version++;
+                if (needsAttention) {
+                    to.addAttention(hive);
+                }
+                recount(to, hive, needsAttention);
+            } finally {
+                second.lock.unlockWrite(secondStamp);
+                first.lock.unlockWrite(firstStamp);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Publish a change to a hive, called by BeeHive
+     */
+    void publish(DomainEvent.Type type, int hiveId, String text, long number, long version) {
+        DomainEventLog eventLog = this.eventLog;
+        if (eventLog != null) {
+            eventLog.publish(type, hiveId, text, number, version);
+        }
+    }
+
+    /**
+     * Update the attention set after a hive changed, called by BeeHive
+     * Only the hive's location is locked, so changes at other locations go ahead in parallel
+     * @param hive The hive that changed
+     */
+    void attentionChanged(BeeHive hive) {
+        Stripe stripe = hive.stripe;
+        long stamp = stripe.lock.writeLock();
+        try {
+            updateAttention(stripe, hive);
+        } finally {
+            stripe.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * File a hive in or out of its stripe's attention set and recount it, holding the stripe lock
+     */
+    private void updateAttention(Stripe stripe, BeeHive hive) {
+        boolean needsAttention = hive.needsAttention();
+        if (needsAttention) {
+            if (stripe.addAttention(hive)) {
+                attentionCount.incrementAndGet();
+            }
+        } else if (stripe.removeAttention(hive)) {
+            attentionCount.decrementAndGet();
+        }
+        recount(stripe, hive, needsAttention);
+    }
+
+    /**
+     * Replace a hive's contribution to the location statistics with its current state, holding the stripe lock
+     */
+    private void recount(Stripe stripe, BeeHive hive, boolean needsAttention) {
+        int honeyLevel = hive.getHoneyLevel();
+        boolean queenless = !hive.hasQueen();
+        if (hive.counted && hive.countedHoneyLevel == honeyLevel &&
+                hive.countedQueenless == queenless && hive.countedAttention == needsAttention) {
+            return;
+        }
+        uncount(stripe, hive);
+        stripe.statistics.count(1, honeyLevel, queenless, needsAttention);
+        if (queenless) {
+            queenlessCount.incrementAndGet();
+        }
+        hive.counted = true;
+        hive.countedHoneyLevel = honeyLevel;
+        hive.countedQueenless = queenless;
+        hive.countedAttention = needsAttention;
+        statisticsVersion.incrementAndGet();
+    }
+
+    private void uncount(Stripe stripe, BeeHive hive) {
+        if (hive.counted) {
+            stripe.statistics.count(-1, hive.countedHoneyLevel, hive.countedQueenless, hive.countedAttention);
+            if (hive.countedQueenless) {
+                queenlessCount.decrementAndGet();
+            }
+            hive.counted = false;
+            statisticsVersion.incrementAndGet();
+        }
+    }
+
+    private void changed() {
+        version++;
+    }
+
+    private void compact() {
+        List<BeeHive> live = new ArrayList<>(hiveCount);
+        for (BeeHive hive : hives) {
+            if (hive != null) {
+                hive.ownerIndex = live.size();
+                live.add(hive);
+            }
+        }
+        hives = live;
+        removedCount = 0;
+    }
+
+    private void addToTag(BeeHive hive, int tagNumber) {
+        hive.nextWithSameTag = null;
+        BeeHive first = hivesByTag.get(tagNumber);
+        if (first == null) {
+            hivesByTag.put(tagNumber, hive);
+            return;
+        }
+        BeeHive last = first;
+        while (last.nextWithSameTag != null) {
+            last = last.nextWithSameTag;
+        }
+        last.nextWithSameTag = hive;
+    }
+
+    private void removeFromTag(BeeHive hive, int tagNumber) {
+        BeeHive first = hivesByTag.get(tagNumber);
+        if (first == hive) {
+            if (hive.nextWithSameTag == null) {
+                hivesByTag.remove(tagNumber);
+            } else {
+                hivesByTag.put(tagNumber, hive.nextWithSameTag);
+            }
+        } else if (first != null) {
+            BeeHive previous = first;
+            while (previous.nextWithSameTag != null && previous.nextWithSameTag != hive) {
+                previous = previous.nextWithSameTag;
+            }
+            previous.nextWithSameTag = hive.nextWithSameTag;
+        }
+        hive.nextWithSameTag = null;
+    }
+
+    /**
+     * Get the stripe of a location, adding the location if it is new, holding the structure write lock
+     */
+    private Stripe stripeFor(String location) {
+        Stripe stripe = stripes.get(location);
+        if (stripe == null) {
+            stripe = new Stripe(location, locations.size());
+            locations.add(location);
+            stripes.put(location, stripe);
+            version++;
+        }
+        return stripe;
+    }
+
+    private List<Stripe> stripesInOrder(List<String> locations) {
+        List<Stripe> result = new ArrayList<>(locations.size());
+        for (String location : locations) {
+            result.add(stripes.get(location));
+        }
+        return result;
+    }
+
+    /**
+     * Everything Hives keeps for one location, guarded by the stripe's own lock
+     */
+    static final class Stripe {
+        final StampedLock lock = new StampedLock();
+        final int order; // Position of the location, which fixes the order stripe locks are taken in
+        final List<BeeHive> hives = new ArrayList<>();
+        // The hives needing attention, each knowing its position through BeeHive.attentionIndex; an array
+        // rather than a set, so readers can copy it without a lock
+        BeeHive[] attention = new BeeHive[16];
+        int attentionSize = 0;
+        final LocationStatistics statistics;
+        volatile long version = 0; // Bumped whenever a hive arrives or leaves
+        volatile SnapshotList<BeeHive> snapshot;
+
+        Stripe(String location, int order) {
+            this.order = order;
+            this.statistics = new LocationStatistics(location);
+        }
+
+        /**
+         * Copy the hives needing attention
+         * @return the hives, in no particular order
+         */
+        BeeHive[] needingAttention() {
+            return Arrays.copyOf(attention, attentionSize);
+        }
+
+        boolean addAttention(BeeHive hive) {
+            if (hive.attentionIndex >= 0) {
+                return false;
+            }
+            if (attentionSize == attention.length) {
+                attention = Arrays.copyOf(attention, attentionSize * 2);
+            }
+            hive.attentionIndex = attentionSize;
+            attention[attentionSize++] = hive;
+            return true;
+        }
+
+        /**
+         * Remove a hive by moving the last one into its place
+         */
+        boolean removeAttention(BeeHive hive) {
+            int index = hive.attentionIndex;
+            if (index < 0) {
+                return false;
+            }
+            BeeHive last = attention[--attentionSize];
+            attention[index] = last;
+            last.attentionIndex = index;
+            attention[attentionSize] = null;
+            hive.attentionIndex = -1;
+            return true;
+        }
+
+        void clearAttention() {
+            for (int i = 0; i < attentionSize; i++) {
+                attention[i].attentionIndex = -1;
+            }
+            Arrays.fill(attention, null);
+            attentionSize = 0;
+        }
     }
-}
\ No newline at end of file
+}
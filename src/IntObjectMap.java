@@ -0,0 +1,199 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * IntObjectMap maps int keys to objects without boxing the keys
+ * Keys and values sit in two parallel arrays probed linearly from the key's hash, so a lookup
+ * is a few array reads. Removal shifts the following entries back instead of leaving
+ * tombstones, so lookups never slow down after many removals. Null values are not allowed.
+ * The map is not thread-safe. Hives and Tasks read it optimistically, without a lock: a read
+ * racing a write may return a wrong value or throw, but it always ends, so they validate the
+ * read afterwards and repeat it under the lock if a write got in the way.
+ * @param <V> The value type
+ */
+public class IntObjectMap<V> {
+    private static final int MIN_CAPACITY = 16;
+
+    private int[] keys;
+    private Object[] values; // null marks a free slot
+    private int size = 0;
+    private int mask;
+
+    public IntObjectMap() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * Constructor for IntObjectMap
+     * @param expectedSize Number of entries to make room for without resizing
+     */
+    public IntObjectMap(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity * 3 / 4 < expectedSize) {
+            capacity *= 2;
+        }
+        allocate(capacity);
+    }
+
+    /**
+     * Get the value of a key
+     * @param key The key
+     * @return the value, or null if the key is not in the map
+     */
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        int slot = find(key);
+        return slot < 0 ? null : (V) values[slot];
+    }
+
+    public boolean containsKey(int key) {
+        return find(key) >= 0;
+    }
+
+    /**
+     * Map a key to a value, replacing any previous value
+     * @param key The key
+     * @param value The value, not null
+     * @return the previous value, or null if the key was not in the map
+     */
+    @SuppressWarnings("unchecked")
+    public V put(int key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Null values are not allowed");
+        }
+        int slot = hash(key) & mask;
+        while (values[slot] != null) {
+            if (keys[slot] == key) {
+                V previous = (V) values[slot];
+                values[slot] = value;
+                return previous;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size > (mask + 1) * 3 / 4) {
+            resize((mask + 1) * 2);
+        }
+        return null;
+    }
+
+    /**
+     * Remove a key
+     * @param key The key
+     * @return the removed value, or null if the key was not in the map
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(int key) {
+        int slot = find(key);
+        if (slot < 0) {
+            return null;
+        }
+        V removed = (V) values[slot];
+        // Shift back every following entry of the probe run that would otherwise become unreachable
+        int free = slot;
+        int next = (free + 1) & mask;
+        while (values[next] != null) {
+            int home = hash(keys[next]) & mask;
+            // Move the entry if its home slot is not between the free slot and where it sits now
+            if (((next - home) & mask) >= ((next - free) & mask)) {
+                keys[free] = keys[next];
+                values[free] = values[next];
+                free = next;
+            }
+            next = (next + 1) & mask;
+        }
+        values[free] = null;
+        size--;
+        return removed;
+    }
+
+    /**
+     * Remove a key only if it maps to a value
+     * @param key The key
+     * @param value The value the key must map to, compared by identity
+     * @return true if the entry was removed, false otherwise
+     */
+    public boolean remove(int key, V value) {
+        int slot = find(key);
+        if (slot < 0 || values[slot] != value) {
+            return false;
+        }
+        remove(key);
+        return true;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    /**
+     * Get all values, in no particular order
+     * @return a new list of the values
+     */
+    @SuppressWarnings("unchecked")
+    public List<V> values() {
+        List<V> result = new ArrayList<>(size);
+        for (Object value : values) {
+            if (value != null) {
+                result.add((V) value);
+            }
+        }
+        return result;
+    }
+
+    private int find(int key) {
+        // Take the mask from the same array that is probed, so a read racing a resize stays in bounds
+        int[] keys = this.keys;
+        Object[] values = this.values;
+        int mask = values.length - 1;
+        int slot = hash(key) & mask;
+        while (values[slot] != null) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void resize(int capacity) {
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != null) {
+                int slot = hash(oldKeys[i]) & mask;
+                while (values[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+    }
+
+    /**
+     * Spread sequential keys such as IDs over the table
+     */
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
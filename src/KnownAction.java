@@ -0,0 +1,77 @@
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * KnownAction lists the required actions offered by the menus
+ * A hive keeps these as bits in a long instead of as strings; anything else the user types is
+ * kept as a custom action. The ordinal is the bit position and is stored in binary snapshots,
+ * so new actions must be added at the end and existing ones never reordered.
+ */
+public enum KnownAction {
+    NEED_QUEEN("Need to acquire queen"),
+    QUEEN_ACQUIRED("Queen acquired - needs installation"),
+    HONEY_HARVEST("Honey harvest needed"),
+    INSPECTION("Hive inspection required"),
+    ADD_SUPERS("Add supers"),
+    REMOVE_SUPERS("Remove supers"),
+    SWARM_PREVENTION("Swarm prevention measures needed"),
+    DISEASE_TREATMENT("Disease treatment required");
+
+    private static final KnownAction[] VALUES = values();
+    private static final Map<String, KnownAction> BY_LABEL = new HashMap<>();
+
+    static {
+        for (KnownAction action : VALUES) {
+            BY_LABEL.put(action.label, action);
+        }
+    }
+
+    private final String label;
+
+    KnownAction(String label) {
+        this.label = label;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    /**
+     * Get the bit of this action in a hive's action bits
+     * @return a long with only this action's bit set
+     */
+    public long bit() {
+        return 1L << ordinal();
+    }
+
+    /**
+     * Find the known action with a label
+     * @param label The action text, e.g. "Add supers"
+     * @return the action, or null if the text is a custom action
+     */
+    public static KnownAction find(String label) {
+        return BY_LABEL.get(label);
+    }
+
+    /**
+     * Get the action of a bit position
+     * @param index The bit position, from 0 to count() - 1
+     * @return the action
+     */
+    public static KnownAction get(int index) {
+        return VALUES[index];
+    }
+
+    /**
+     * Get the number of known actions
+     * @return the number of known actions
+     */
+    public static int count() {
+        return VALUES.length;
+    }
+
+    @Override
+    public String toString() {
+        return label;
+    }
+}
@@ -0,0 +1,74 @@
+/**
+ * LocationStatistics holds running totals for the hives at one location
+ * Hives updates the totals whenever a hive is added, removed, moved or changed,
+ * so reading them never scans the hives
+ */
+public class LocationStatistics {
+    private final String location;
+    private int hiveCount;
+    private long honeyTotal;
+    private int queenlessCount;
+    private int attentionCount;
+
+    LocationStatistics(String location) {
+        this.location = location;
+    }
+
+    /**
+     * Copy constructor, so Hives can hand out totals that no longer change
+     * @param other The statistics to copy
+     */
+    LocationStatistics(LocationStatistics other) {
+        this.location = other.location;
+        this.hiveCount = other.hiveCount;
+        this.honeyTotal = other.honeyTotal;
+        this.queenlessCount = other.queenlessCount;
+        this.attentionCount = other.attentionCount;
+    }
+
+    public String getLocation() {
+        return location;
+    }
+
+    public int getHiveCount() {
+        return hiveCount;
+    }
+
+    /**
+     * Get the average honey level of the hives at the location
+     * @return the average honey level, or 0 if there are no hives there
+     */
+    public double getAverageHoneyLevel() {
+        return hiveCount == 0 ? 0 : (double) honeyTotal / hiveCount;
+    }
+
+    public int getQueenlessCount() {
+        return queenlessCount;
+    }
+
+    public int getAttentionCount() {
+        return attentionCount;
+    }
+
+    void reset() {
+        hiveCount = 0;
+        honeyTotal = 0;
+        queenlessCount = 0;
+        attentionCount = 0;
+    }
+
+    /**
+     * Add or remove one hive's contribution
+     * @param sign 1 to add the hive, -1 to remove it
+     */
+    void count(int sign, int honeyLevel, boolean queenless, boolean needsAttention) {
+        hiveCount += sign;
+        honeyTotal += sign * honeyLevel;
+        if (queenless) {
+            queenlessCount += sign;
+        }
+        if (needsAttention) {
+            attentionCount += sign;
+        }
+    }
+}
@@ -1,4 +1,6 @@
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 public class Main {
@@ -11,12 +13,92 @@ public class Main {
 
         // Initialize data manager
         DataManager dataManager = new DataManager();
+        List<String> options = Arrays.asList(args);
+        if (options.contains("--journal")) {
+            // Append edits to DataFile.txt.journal, checkpoint after 1 MB or 5 minutes
+            dataManager.enableJournal(1024 * 1024, 5 * 60 * 1000);
+        }
+        if (options.contains("--serial-load")) {
+            // Parse DataFile.txt on one thread instead of one task per section chunk
+            dataManager.setParallelLoading(false);
+        }
+        if (options.contains("--binary")) {
+            // Save DataFile.txt as a binary snapshot; either format is detected on load
+            dataManager.setBinaryFormat(true);
+        }
+        for (String option : options) {
+            if (option.startsWith("--hash-iterations=")) {
+                // Hash new and migrated passwords with this many PBKDF2 iterations
+                PasswordHasher.setIterations(Integer.parseInt(option.substring(18)));
+            }
+        }
+        for (String option : options) {
+            if (option.startsWith("--compress=")) {
+                // Save DataFile.txt as GZIP compressed text at this level (0-9); detected on load
+                dataManager.setCompressionLevel(Integer.parseInt(option.substring(11)));
+            }
+        }
+        String shardDirectory = null;
+        List<String> shardLocations = null;
+        for (String option : options) {
+            if (option.startsWith("--shards=")) {
+                // Keep one file per location in this directory instead of DataFile.txt
+                shardDirectory = option.substring(9);
+            } else if (option.startsWith("--shard-locations=")) {
+                // Only load the hives and tasks of these comma separated locations
+                shardLocations = Arrays.asList(option.substring(18).split(","));
+            }
+        }
+        if (shardDirectory != null) {
+            dataManager.enableSharding(shardDirectory, shardLocations);
+        }
 
         // Load existing data or initialize with defaults
         dataManager.loadData(users, hives, tasks, locations);
 
-        // Create program loop and run
-        ProgramLoop program = new ProgramLoop(users, hives, tasks, locations, dataManager);
-        program.run();
+        // Create program loop, or a server that hosts the data for many worker sessions
+        SessionServer server = null;
+        for (String option : options) {
+            if (option.startsWith("--serve=")) {
+                // Serve worker sessions on this local TCP port instead of running the console menu
+                server = new SessionServer(users, hives, tasks, locations, dataManager,
+                        Integer.parseInt(option.substring(8)));
+            }
+        }
+        ProgramLoop program = server == null ? new ProgramLoop(users, hives, tasks, locations, dataManager) : null;
+        SaveScheduler saveScheduler = server != null ? server.getSaveScheduler() : program.getSaveScheduler();
+        Tasks tasksManager = server != null ? server.getTasksManager() : program.getTasksManager();
+        for (String option : options) {
+            if (option.startsWith("--save-window=")) {
+                // Merge saves requested within this many milliseconds into one write
+                saveScheduler.setWindowMillis(Long.parseLong(option.substring(14)));
+            }
+        }
+        for (String option : options) {
+            if (option.startsWith("--overdue-days=")) {
+                // Either a default for all tasks, or "<task name>=<days>" for one kind of task
+                String value = option.substring(15);
+                int separator = value.lastIndexOf('=');
+                if (separator < 0) {
+                    tasksManager.setDefaultOverdueThreshold(Duration.ofDays(Long.parseLong(value)));
+                } else {
+                    tasksManager.setOverdueThreshold(value.substring(0, separator),
+                            Duration.ofDays(Long.parseLong(value.substring(separator + 1))));
+                }
+            }
+        }
+        if (options.contains("--check-indexes")) {
+            // Compare the maintained indexes with full scans on every query
+            if (server != null) {
+                server.setIndexChecks(true);
+            } else {
+                program.setIndexChecks(true);
+            }
+        }
+        if (server != null) {
+            server.run();
+        } else {
+            program.run();
+        }
     }
 }
\ No newline at end of file
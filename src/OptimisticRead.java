@@ -0,0 +1,39 @@
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Supplier;
+
+/**
+ * OptimisticRead runs a read against state guarded by a StampedLock without blocking
+ * The read first runs without the lock; if a writer got in the way, which the stamp reveals,
+ * the result is thrown away and the read runs again under the read lock.
+ */
+final class OptimisticRead {
+
+    private OptimisticRead() {
+    }
+
+    /**
+     * Run a read against the state guarded by a lock
+     * @param lock The lock writers hold while changing the state
+     * @param reader The read; it must not change anything and may see torn state when racing a writer
+     * @return the result of a read that did not overlap any write
+     */
+    static <T> T read(StampedLock lock, Supplier<T> reader) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                T result = reader.get();
+                if (lock.validate(stamp)) {
+                    return result;
+                }
+            } catch (RuntimeException e) {
+                // Torn state from a concurrent writer, e.g. an index past a resized array; read again below
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return reader.get();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * ParallelTextLoader parses the sections of a plain text data file concurrently
+ * One pre-scan over the file finds the section boundaries and cuts large HIVES and TASKS
+ * sections into chunks that start on a record line, so a hive always stays together with
+ * its ACTIONS: block. Every chunk is parsed on a ForkJoinPool and the results are appended
+ * to the target lists in file order.
+ */
+class ParallelTextLoader {
+    static final int CHUNK_SIZE = 256 * 1024;
+
+    private final ForkJoinPool pool;
+
+    /**
+     * Constructor for ParallelTextLoader
+     * @param pool The pool that parses the chunks
+     */
+    ParallelTextLoader(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Parse a data file into a chunk
+     * @param path The file to read
+     * @param target Receives all parsed records in file order
+     * @return the number of chunks the file was parsed in
+     */
+    int load(String path, DataManager.TextChunk target) throws IOException {
+        CharBuffer decoded = Charset.defaultCharset().decode(ByteBuffer.wrap(Files.readAllBytes(Paths.get(path))));
+        char[] text = decoded.array();
+        int length = decoded.limit();
+
+        List<Range> ranges = scan(text, length);
+        List<ForkJoinTask<DataManager.TextChunk>> parsed = new ArrayList<>();
+        for (Range range : ranges) {
+            parsed.add(pool.submit(() -> {
+                DataManager.TextChunk chunk = new DataManager.TextChunk();
+                DataManager.parseText(new RecordTokenizer(text, range.start, range.end), range.section, chunk);
+                return chunk;
+            }));
+        }
+
+        try {
+            for (ForkJoinTask<DataManager.TextChunk> task : parsed) {
+                DataManager.TextChunk chunk = task.get();
+                target.users.addAll(chunk.users);
+                target.locations.addAll(chunk.locations);
+                target.hives.addAll(chunk.hives);
+                target.tasks.addAll(chunk.tasks);
+                if (chunk.nextHiveId >= 0) {
+                    target.nextHiveId = chunk.nextHiveId;
+                }
+                if (chunk.nextTaskId >= 0) {
+                    target.nextTaskId = chunk.nextTaskId;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading " + path, e);
+        } catch (ExecutionException e) {
+            throw new IOException("Error parsing " + path, e.getCause());
+        }
+        return ranges.size();
+    }
+
+    /**
+     * Find the section bodies and cut the large ones into record-aligned chunks
+     */
+    private List<Range> scan(char[] text, int length) {
+        List<Range> ranges = new ArrayList<>();
+        String section = "";
+        int chunkStart = 0;
+        boolean splittable = false;
+        boolean inActions = false;
+
+        int pos = 0;
+        while (pos < length) {
+            int lineEnd = pos;
+            while (lineEnd < length && text[lineEnd] != '\n') {
+                lineEnd++;
+            }
+
+            if (inActions) {
+                inActions = !startsWith(text, pos, lineEnd, "ENDACTIONS:");
+            } else if (startsWith(text, pos, lineEnd, "===")) {
+                addRange(ranges, section, chunkStart, pos);
+                int headerEnd = lineEnd > pos && text[lineEnd - 1] == '\r' ? lineEnd - 1 : lineEnd;
+                section = new String(text, pos, headerEnd - pos);
+                splittable = section.equals("===HIVES===") || section.equals("===TASKS===");
+                chunkStart = Math.min(lineEnd + 1, length);
+            } else if (startsWith(text, pos, lineEnd, "ACTIONS:")) {
+                inActions = true;
+            } else if (splittable && pos - chunkStart >= CHUNK_SIZE) {
+                // This line is a record of its own, so a new chunk can start here
+                addRange(ranges, section, chunkStart, pos);
+                chunkStart = pos;
+            }
+
+            pos = lineEnd + 1;
+        }
+        addRange(ranges, section, chunkStart, length);
+        return ranges;
+    }
+
+    private static void addRange(List<Range> ranges, String section, int start, int end) {
+        if (!section.isEmpty() && end > start) {
+            ranges.add(new Range(section, start, end));
+        }
+    }
+
+    private static boolean startsWith(char[] text, int start, int end, String prefix) {
+        if (end - start < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (text[start + i] != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Part of one section that is parsed as a unit
+     */
+    private static class Range {
+        final String section;
+        final int start;
+        final int end;
+
+        Range(String section, int start, int end) {
+            this.section = section;
+            this.start = start;
+            this.end = end;
+        }
+    }
+}
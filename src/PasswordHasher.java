@@ -0,0 +1,131 @@
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+/**
+ * PasswordHasher stores passwords as salted PBKDF2 hashes instead of plain text
+ * A stored password has the form "pbkdf2$iterations$salt$hash", with salt and hash in Base64,
+ * so it never contains the data file's '|' separator. Anything else is a password from before
+ * hashing, still in plain text; it is checked as it is and should be replaced by a hash on the
+ * next successful login (see needsRehash).
+ */
+public class PasswordHasher {
+    public static final int DEFAULT_ITERATIONS = 100_000;
+    private static final String PREFIX = "pbkdf2$";
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BITS = 256;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private static volatile int iterations = DEFAULT_ITERATIONS;
+
+    private PasswordHasher() {
+    }
+
+    /**
+     * Hash a password with a new random salt
+     * @param password The password
+     * @return the stored form, "pbkdf2$iterations$salt$hash"
+     */
+    public static String hash(String password) {
+        byte[] salt = new byte[SALT_BYTES];
+        RANDOM.nextBytes(salt);
+        int iterations = PasswordHasher.iterations;
+        Base64.Encoder encoder = Base64.getEncoder();
+        return PREFIX + iterations + "$" + encoder.encodeToString(salt) + "$" +
+                encoder.encodeToString(derive(password, salt, iterations));
+    }
+
+    /**
+     * Check a password against its stored form, hashed or still in plain text
+     * Compares in constant time, so the time taken does not tell how much of the password matched
+     * @param password The password that was entered
+     * @param stored The stored form
+     * @return true if the password matches, false otherwise
+     */
+    public static boolean verify(String password, String stored) {
+        if (!isHashed(stored)) {
+            return MessageDigest.isEqual(password.getBytes(StandardCharsets.UTF_8), stored.getBytes(StandardCharsets.UTF_8));
+        }
+        String[] parts = stored.split("\\$");
+        if (parts.length != 4) {
+            return false;
+        }
+        try {
+            Base64.Decoder decoder = Base64.getDecoder();
+            byte[] salt = decoder.decode(parts[2]);
+            byte[] expected = decoder.decode(parts[3]);
+            return MessageDigest.isEqual(derive(password, salt, Integer.parseInt(parts[1])), expected);
+        } catch (IllegalArgumentException e) {
+            // Damaged stored form: no password matches it
+            return false;
+        }
+    }
+
+    /**
+     * Check if a stored password is a hash
+     * @param stored The stored form
+     * @return true if it is a PBKDF2 hash, false if it is plain text
+     */
+    public static boolean isHashed(String stored) {
+        return stored.startsWith(PREFIX);
+    }
+
+    /**
+     * Check if a stored password should be hashed again after a successful login:
+     * it is still plain text, or hashed with fewer iterations than are used now
+     * @param stored The stored form
+     * @return true if it should be replaced by hash(password)
+     */
+    public static boolean needsRehash(String stored) {
+        return iterationsOf(stored) < iterations;
+    }
+
+    /**
+     * Get the number of iterations a stored password was hashed with
+     * @param stored The stored form
+     * @return the iterations, or 0 if it is plain text or damaged
+     */
+    static int iterationsOf(String stored) {
+        if (!isHashed(stored)) {
+            return 0;
+        }
+        int end = stored.indexOf('$', PREFIX.length());
+        try {
+            return end < 0 ? 0 : Integer.parseInt(stored.substring(PREFIX.length(), end));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Set the number of PBKDF2 iterations for new hashes; existing hashes keep theirs until rehashed
+     * @param iterations The number of iterations
+     */
+    public static void setIterations(int iterations) {
+        if (iterations < 1) {
+            throw new IllegalArgumentException("Iterations must be at least 1");
+        }
+        PasswordHasher.iterations = iterations;
+    }
+
+    public static int getIterations() {
+        return iterations;
+    }
+
+    private static byte[] derive(String password, byte[] salt, int iterations) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, HASH_BITS);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            // Every Java 8 runtime provides PBKDF2WithHmacSHA256
+            throw new IllegalStateException("Cannot hash passwords: " + e.getMessage(), e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+}
@@ -1,18 +1,35 @@
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Scanner;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 public class ProgramLoop{
+    // Actions offered by the Add Required Action menu, in menu order
+    private static final KnownAction[] MENU_ACTIONS = {KnownAction.NEED_QUEEN, KnownAction.HONEY_HARVEST,
+            KnownAction.INSPECTION, KnownAction.ADD_SUPERS, KnownAction.REMOVE_SUPERS,
+            KnownAction.SWARM_PREVENTION, KnownAction.DISEASE_TREATMENT};
+
     private Scanner scanner;
     private List<User> users;
     private Hives hivesManager;
     private Tasks tasksManager;
     private List<String> locations;
     private User currentUser;
+    // Checks passwords and migrates plain text ones to hashes; users are looked up in the list,
+    // which reloads keep up to date
+    private UserManager userManager;
     private DataManager dataManager;
-    private ExecutorService executor;
+    private ScheduledExecutorService executor;
+    private ChangeJournal journal;
+    private SaveScheduler saveScheduler;
+    private DomainEventLog eventLog;
+    private EventMetrics eventMetrics;
+    private DataFileWatcher watcher;
+    private StatisticsService statisticsService;
+    private boolean watching;
 
     public ProgramLoop(List<User> users, List<BeeHive> hives, List<Task> tasks, List<String> locations, DataManager dataManager) {
         this.scanner = new Scanner(System.in);
@@ -21,7 +38,9 @@ public class ProgramLoop{
         this.tasksManager = new Tasks();
         this.locations = locations;
         this.dataManager = dataManager;
-        this.executor = Executors.newSingleThreadExecutor();
+        this.executor = Executors.newSingleThreadScheduledExecutor();
+        this.journal = dataManager.getJournal();
+        this.saveScheduler = new SaveScheduler(this::saveAll, executor, 500, 2000);
 
         // Initialize hives manager with existing hives
         for (BeeHive hive : hives) {
@@ -32,6 +51,51 @@ public class ProgramLoop{
         for (Task task : tasks) {
             this.tasksManager.addTask(task);
         }
+
+        // Persistence and metrics follow the changes users make through the event log
+        this.eventLog = new DomainEventLog();
+        this.eventMetrics = new EventMetrics();
+        hivesManager.setEventLog(eventLog);
+        tasksManager.setEventLog(eventLog);
+        this.userManager = new UserManager();
+        userManager.setEventLog(eventLog);
+        eventLog.addConsumer("event-persistence", new EventPersistence(journal, saveScheduler, hivesManager, tasksManager));
+        eventLog.addConsumer("event-metrics", eventMetrics);
+
+        // In journal mode, fold the journal back into a snapshot in the background
+        if (journal != null) {
+            executor.scheduleWithFixedDelay(this::checkpointIfNeeded, 5, 5, TimeUnit.SECONDS);
+        }
+
+        // Watch the data file for changes made by other instances
+        this.watcher = new DataFileWatcher(dataManager, users, hivesManager, tasksManager, locations);
+        this.statisticsService = new StatisticsService(users, hivesManager, tasksManager, locations);
+        try {
+            watcher.start();
+            watching = true;
+        } catch (IOException e) {
+            System.err.println("Could not watch data file, checking between screens instead: " + e.getMessage());
+        }
+
+        // Write pending changes if the process is stopped without using the Exit option
+        Runtime.getRuntime().addShutdownHook(new Thread(this::flushChanges));
+    }
+
+    public SaveScheduler getSaveScheduler() {
+        return saveScheduler;
+    }
+
+    /**
+     * Verify the incrementally maintained indexes against full scans whenever they are queried
+     * @param enabled true to check the indexes, false to trust them
+     */
+    public void setIndexChecks(boolean enabled) {
+        hivesManager.setConsistencyCheck(enabled);
+        tasksManager.setConsistencyCheck(enabled);
+    }
+
+    public Tasks getTasksManager() {
+        return tasksManager;
     }
 
     public void run() {
@@ -72,12 +136,9 @@ public class ProgramLoop{
     }
 
     private User authenticateUser(String username, String password) {
-        for (User user : users) {
-            if (user.getUsername().equals(username) && user.getPassword().equals(password)) {
-                return user;
-            }
-        }
-        return null;
+        // Merges and reloads change the users list, so look the user up in it as it is now
+        userManager.syncUsers(users);
+        return userManager.authenticate(username, password);
     }
 
     private void showMainMenu() {
@@ -127,11 +188,13 @@ public class ProgramLoop{
             case "0":
                 System.out.println("Goodbye!");
                 // Save data before exiting
-                executor.submit(() -> {
-                    List<BeeHive> hivesList = hivesManager.getAllHives();
-                    List<Task> tasksList = tasksManager.getAllTasks();
-                    dataManager.saveData(users, hivesList, tasksList, locations);
-                });
+                eventLog.shutdown();
+                saveScheduler.requestSave();
+                saveScheduler.shutdown();
+                System.out.println(eventLog.getStatistics());
+                System.out.println(eventMetrics.getStatistics());
+                System.out.println(saveScheduler.getStatistics());
+                System.out.println(dataManager.getCommitStatistics());
                 System.exit(0);
                 break;
             default:
@@ -204,7 +267,7 @@ public class ProgramLoop{
         }
 
         System.out.println();
-        System.out.print("Select hive number (0 to cancel): ");
+        System.out.print("Select hive number, #ID or T<tag number> (0 to cancel): ");
         String choice = scanner.nextLine().trim();
 
         if (choice.equals("0")) {
@@ -212,9 +275,8 @@ public class ProgramLoop{
         }
 
         try {
-            int hiveIndex = Integer.parseInt(choice) - 1;
-            if (hiveIndex >= 0 && hiveIndex < hivesList.size()) {
-                BeeHive selectedHive = hivesList.get(hiveIndex);
+            BeeHive selectedHive = selectHive(choice, hivesList);
+            if (selectedHive != null) {
 
                 System.out.println("\n--- Hive " + selectedHive.getId() + " Details ---");
                 System.out.println("Tag Number: " + selectedHive.getTagNumber());
@@ -249,32 +311,14 @@ public class ProgramLoop{
                     case "1":
                         selectedHive.setHasQueen(false);
                         System.out.println("Queen marked as missing for hive " + selectedHive.getId());
-                        // Save data after modification
-                        executor.submit(() -> {
-                            List<BeeHive> hivesListSave = hivesManager.getAllHives();
-                            List<Task> tasksList = tasksManager.getAllTasks();
-                            dataManager.saveData(users, hivesListSave, tasksList, locations);
-                        });
                         break;
                     case "2":
                         selectedHive.markQueenAcquired();
                         System.out.println("Queen marked as acquired for hive " + selectedHive.getId());
-                        // Save data after modification
-                        executor.submit(() -> {
-                            List<BeeHive> hivesListSave = hivesManager.getAllHives();
-                            List<Task> tasksList = tasksManager.getAllTasks();
-                            dataManager.saveData(users, hivesListSave, tasksList, locations);
-                        });
                         break;
                     case "3":
                         selectedHive.markQueenInstalled();
                         System.out.println("Queen marked as installed for hive " + selectedHive.getId());
-                        // Save data after modification
-                        executor.submit(() -> {
-                            List<BeeHive> hivesListSave = hivesManager.getAllHives();
-                            List<Task> tasksList = tasksManager.getAllTasks();
-                            dataManager.saveData(users, hivesListSave, tasksList, locations);
-                        });
                         break;
                     case "4":
                         System.out.print("Enter custom action: ");
@@ -282,12 +326,6 @@ public class ProgramLoop{
                         if (!customAction.isEmpty()) {
                             selectedHive.addRequiredAction(customAction);
                             System.out.println("Action added to hive " + selectedHive.getId());
-                            // Save data after modification
-                            executor.submit(() -> {
-                                List<BeeHive> hivesListSave = hivesManager.getAllHives();
-                                List<Task> tasksList = tasksManager.getAllTasks();
-                                dataManager.saveData(users, hivesListSave, tasksList, locations);
-                            });
                         }
                         break;
                     case "0":
@@ -307,6 +345,25 @@ public class ProgramLoop{
         scanner.nextLine();
     }
 
+    /**
+     * Pick a hive from a menu answer: a list position, "#" followed by a hive ID,
+     * or "T" followed by a tag number
+     * @param choice The answer, already trimmed
+     * @param hivesList The hives as listed in the menu
+     * @return the hive, or null if nothing matches
+     * @throws NumberFormatException if the answer is not a number in one of those forms
+     */
+    private BeeHive selectHive(String choice, List<BeeHive> hivesList) {
+        if (choice.startsWith("#")) {
+            return hivesManager.getHive(Integer.parseInt(choice.substring(1)));
+        }
+        if (choice.startsWith("T") || choice.startsWith("t")) {
+            return hivesManager.getHiveByTagNumber(Integer.parseInt(choice.substring(1)));
+        }
+        int hiveIndex = Integer.parseInt(choice) - 1;
+        return hiveIndex >= 0 && hiveIndex < hivesList.size() ? hivesList.get(hiveIndex) : null;
+    }
+
     private void manageHives() {
         System.out.println("--- Manage Hives ---");
         System.out.println("1. Add New Hive");
@@ -362,26 +419,15 @@ public class ProgramLoop{
                     location = locations.get(locationIndex);
                 } else {
                     location = locationInput;
-                    if (!locations.contains(location)) {
-                        locations.add(location);
-                    }
+                    addLocation(location);
                 }
             } catch (NumberFormatException e) {
                 location = locationInput;
-                if (!locations.contains(location)) {
-                    locations.add(location);
-                }
+                addLocation(location);
             }
 
             hivesManager.addBeeHive(tagNumber, tagColor, location);
-
             System.out.println("Hive added successfully.");
-            // Save data after modification
-            executor.submit(() -> {
-                List<BeeHive> hivesList = hivesManager.getAllHives();
-                List<Task> tasksList = tasksManager.getAllTasks();
-                dataManager.saveData(users, hivesList, tasksList, locations);
-            });
         } catch (NumberFormatException e) {
             System.out.println("Invalid tag number format.");
         }
@@ -409,7 +455,7 @@ public class ProgramLoop{
         }
 
         System.out.println();
-        System.out.print("Select hive number (0 to cancel): ");
+        System.out.print("Select hive number, #ID or T<tag number> (0 to cancel): ");
         String choice = scanner.nextLine().trim();
 
         if (choice.equals("0")) {
@@ -417,9 +463,8 @@ public class ProgramLoop{
         }
 
         try {
-            int hiveIndex = Integer.parseInt(choice) - 1;
-            if (hiveIndex >= 0 && hiveIndex < hivesList.size()) {
-                BeeHive selectedHive = hivesList.get(hiveIndex);
+            BeeHive selectedHive = selectHive(choice, hivesList);
+            if (selectedHive != null) {
 
                 System.out.println("Current status: " + selectedHive.getStatus());
                 System.out.print("New status (healthy/needs attention/queenless/empty): ");
@@ -455,13 +500,6 @@ public class ProgramLoop{
                     selectedHive.addNotes(notes);
                     System.out.println("Notes added successfully.");
                 }
-
-                // Save data after modification
-                executor.submit(() -> {
-                    List<BeeHive> hivesListSave = hivesManager.getAllHives();
-                    List<Task> tasksList = tasksManager.getAllTasks();
-                    dataManager.saveData(users, hivesListSave, tasksList, locations);
-                });
             } else {
                 System.out.println("Invalid hive number.");
             }
@@ -492,7 +530,7 @@ public class ProgramLoop{
         }
 
         System.out.println();
-        System.out.print("Select hive number (0 to cancel): ");
+        System.out.print("Select hive number, #ID or T<tag number> (0 to cancel): ");
         String choice = scanner.nextLine().trim();
 
         if (choice.equals("0")) {
@@ -500,67 +538,42 @@ public class ProgramLoop{
         }
 
         try {
-            int hiveIndex = Integer.parseInt(choice) - 1;
-            if (hiveIndex >= 0 && hiveIndex < hivesList.size()) {
-                BeeHive selectedHive = hivesList.get(hiveIndex);
+            BeeHive selectedHive = selectHive(choice, hivesList);
+            if (selectedHive != null) {
 
                 System.out.println("Predefined actions:");
-                System.out.println("1. Need to acquire queen");
-                System.out.println("2. Honey harvest needed");
-                System.out.println("3. Hive inspection required");
-                System.out.println("4. Add supers");
-                System.out.println("5. Remove supers");
-                System.out.println("6. Swarm prevention measures needed");
-                System.out.println("7. Disease treatment required");
-                System.out.println("8. Custom action");
+                for (int i = 0; i < MENU_ACTIONS.length; i++) {
+                    System.out.println((i + 1) + ". " + MENU_ACTIONS[i].getLabel());
+                }
+                int customChoice = MENU_ACTIONS.length + 1;
+                System.out.println(customChoice + ". Custom action");
                 System.out.println();
-                System.out.print("Select action (1-8): ");
+                System.out.print("Select action (1-" + customChoice + "): ");
 
                 String actionChoice = scanner.nextLine().trim();
-                String action = "";
+                String action;
+                int actionIndex;
+                try {
+                    actionIndex = Integer.parseInt(actionChoice);
+                } catch (NumberFormatException e) {
+                    actionIndex = 0;
+                }
 
-                switch (actionChoice) {
-                    case "1":
-                        action = "Need to acquire queen";
-                        break;
-                    case "2":
-                        action = "Honey harvest needed";
-                        break;
-                    case "3":
-                        action = "Hive inspection required";
-                        break;
-                    case "4":
-                        action = "Add supers";
-                        break;
-                    case "5":
-                        action = "Remove supers";
-                        break;
-                    case "6":
-                        action = "Swarm prevention measures needed";
-                        break;
-                    case "7":
-                        action = "Disease treatment required";
-                        break;
-                    case "8":
-                        System.out.print("Enter custom action: ");
-                        action = scanner.nextLine().trim();
-                        break;
-                    default:
-                        System.out.println("Invalid action selection.");
-                        System.out.println("Press Enter to continue...");
-                        scanner.nextLine();
-                        return;
+                if (actionIndex >= 1 && actionIndex <= MENU_ACTIONS.length) {
+                    action = MENU_ACTIONS[actionIndex - 1].getLabel();
+                } else if (actionIndex == customChoice) {
+                    System.out.print("Enter custom action: ");
+                    action = scanner.nextLine().trim();
+                } else {
+                    System.out.println("Invalid action selection.");
+                    System.out.println("Press Enter to continue...");
+                    scanner.nextLine();
+                    return;
                 }
 
                 if (!action.isEmpty()) {
                     selectedHive.addRequiredAction(action);
                     System.out.println("Action '" + action + "' added to hive " + selectedHive.getId());
-                    // Save data after modification
-                    executor.submit(() -> {
-                        List<BeeHive> hivesListSave = hivesManager.getAllHives();
-                        List<Task> tasksList = tasksManager.getAllTasks();
-                        dataManager.saveData(users, hivesListSave, tasksList, locations);
-                    });
                 }
             } else {
                 System.out.println("Invalid hive number.");
@@ -630,26 +643,15 @@ public class ProgramLoop{
                 location = locations.get(locationIndex);
             } else {
                 location = locationInput;
-                if (!locations.contains(location)) {
-                    locations.add(location);
-                }
+                addLocation(location);
             }
         } catch (NumberFormatException e) {
             location = locationInput;
-            if (!locations.contains(location)) {
-                locations.add(location);
-            }
+            addLocation(location);
         }
 
         tasksManager.addTask(name, description, location);
-
         System.out.println("Task created successfully.");
-        // Save data after modification
-        executor.submit(() -> {
-            List<BeeHive> hivesList = hivesManager.getAllHives();
-            List<Task> tasksList = tasksManager.getAllTasks();
-            dataManager.saveData(users, hivesList, tasksList, locations);
-        });
         System.out.println("Press Enter to continue...");
         scanner.nextLine();
     }
@@ -697,7 +699,7 @@ public class ProgramLoop{
         }
 
         System.out.println();
-        System.out.print("Select task number to complete (0 to cancel): ");
+        System.out.print("Select task number or #ID to complete (0 to cancel): ");
         String taskChoice = scanner.nextLine().trim();
 
         if (taskChoice.equals("0")) {
@@ -705,17 +707,16 @@ public class ProgramLoop{
         }
 
         try {
-            int taskIndex = Integer.parseInt(taskChoice) - 1;
-            if (taskIndex >= 0 && taskIndex < allTasks.size()) {
-                Task selectedTask = allTasks.get(taskIndex);
+            Task selectedTask;
+            if (taskChoice.startsWith("#")) {
+                selectedTask = tasksManager.getTask(Integer.parseInt(taskChoice.substring(1)));
+            } else {
+                int taskIndex = Integer.parseInt(taskChoice) - 1;
+                selectedTask = taskIndex >= 0 && taskIndex < allTasks.size() ? allTasks.get(taskIndex) : null;
+            }
+            if (selectedTask != null) {
                 selectedTask.complete();
                 System.out.println("Task '" + selectedTask.getName() + "' marked as completed.");
-                // Save data after modification
-                executor.submit(() -> {
-                    List<BeeHive> hivesList = hivesManager.getAllHives();
-                    List<Task> tasksList = tasksManager.getAllTasks();
-                    dataManager.saveData(users, hivesList, tasksList, locations);
-                });
             } else {
                 System.out.println("Invalid task number.");
             }
@@ -728,43 +729,56 @@ public class ProgramLoop{
     }
 
     private void viewStatistics() {
-        System.out.println("--- System Statistics ---");
-        System.out.println("Users: " + users.size());
-        System.out.println("Hives: " + hivesManager.getHiveCount());
-        System.out.println("Tasks: " + tasksManager.getTaskCount());
-        System.out.println("Locations: " + locations.size());
-        System.out.println();
+        // Built from running counters and cached until the data changes
+        System.out.println(statisticsService.getReport());
 
-        // Hive statistics
-        System.out.println("--- Hive Statistics ---");
-        System.out.println("Total Hives: " + hivesManager.getHiveCount());
+        System.out.println("Press Enter to continue...");
+        scanner.nextLine();
+    }
 
-        // Count hives by location
-        System.out.println("Location Distribution:");
-        for (String location : locations) {
-            int count = hivesManager.getHiveCountByLocation(location);
-            System.out.println("  " + location + ": " + count);
+    private void addLocation(String location) {
+        if (!locations.contains(location)) {
+            locations.add(location);
+            eventLog.publish(DomainEvent.Type.LOCATION_ADDED, 0, location, 0, 0);
         }
+    }
 
-        // Task statistics
-        System.out.println();
-        System.out.println(tasksManager.getTaskStatistics());
+    /**
+     * Write everything users changed so far: let persistence catch up with the event log, then save
+     */
+    private void flushChanges() {
+        eventLog.drain();
+        saveScheduler.flush();
+    }
 
-        System.out.println("Press Enter to continue...");
-        scanner.nextLine();
+    private void saveAll() {
+        // Merges what other users saved in the meantime instead of overwriting it
+        dataManager.saveMerged(users, hivesManager, tasksManager, locations);
+    }
+
+    private void checkpointIfNeeded() {
+        if (dataManager.needsCheckpoint()) {
+            saveAll();
+        }
     }
 
     private void logout() {
         System.out.println("Goodbye, " + currentUser.getName() + "!");
         currentUser = null;
+        // Make sure everything this user changed is on disk
+        flushChanges();
         System.out.println();
     }
 
     private void checkForDataUpdates() {
-        // Check for data file modifications every few operations
-        if (dataManager.isDataFileModified()) {
-            System.out.println("Data updated by another user. Reloading...");
-            dataManager.loadData(users, hivesManager.getAllHives(), tasksManager.getAllTasks(), locations);
+        // Without a running watcher, look for data file modifications between screens
+        if (!watching) {
+            watcher.checkForChanges();
+        }
+        // Merge only the records that changed since the data was last loaded or saved
+        DataDelta delta = watcher.takePendingDelta();
+        if (delta != null) {
+            dataManager.applyDelta(delta, users, hivesManager, tasksManager, locations);
         }
     }
 
@@ -0,0 +1,317 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * RecordMerge brings hives and tasks that another process saved into the live data, one record at a time
+ * Every record carries a version that grows with every change, and remembers the version the data file
+ * held when it was last loaded or saved. A saved record with a higher version than that was changed by
+ * someone else since:
+ * <ul>
+ *   <li>if the live record has not changed either, it takes the saved state as it is</li>
+ *   <li>if both changed, each field is merged against the state both started from: a field changed on
+ *       one side keeps that change, required actions are merged one by one, and notes that both sides
+ *       added to keep both additions</li>
+ *   <li>a field both sides changed to different values is a conflict; the saved value, which was
+ *       written first, wins and the conflict is reported</li>
+ * </ul>
+ * So edits to different records, or to different fields of one record, never overwrite each other.
+ * Records added on both sides with the same ID keep both, the live one under a new ID.
+ */
+public class RecordMerge {
+    private final List<String> messages = new ArrayList<>();
+    private int taken = 0;
+    private int merged = 0;
+    private int removed = 0;
+    private int conflicts = 0;
+
+    // Hives
+
+    /**
+     * Merge a saved hive into the live hive that had the same ID when the data was compared
+     * @param hivesManager The live hives
+     * @param live The live hive
+     * @param saved The hive as another process saved it
+     */
+    void mergeHive(Hives hivesManager, BeeHive live, BeeHive saved) {
+        if (live.getOwner() != hivesManager || live.getId() != saved.getId()) {
+            // Removed or renumbered here since the comparison
+            addHive(hivesManager, saved);
+        } else if (live.syncedVersion < 0) {
+            // Both sides added a hive and gave it the same ID
+            int id = BeeHive.takeNextId();
+            messages.add("Hive " + live.getId() + " was also added by another user, yours is now hive " + id);
+            live.setId(id);
+            addHive(hivesManager, saved);
+        } else {
+            mergeHive(live, saved);
+        }
+    }
+
+    /**
+     * Merge a saved hive into a live hive with the same ID that was loaded or saved before
+     * @param live The live hive
+     * @param saved The hive as another process saved it
+     */
+    void mergeHive(BeeHive live, BeeHive saved) {
+        synchronized (live) {
+            long savedVersion = saved.getVersion();
+            if (savedVersion <= live.syncedVersion) {
+                // Nothing newer than what was loaded, saved or merged before
+                return;
+            }
+            if (live.getVersion() == live.syncedVersion) {
+                live.applyMerge(saved, savedVersion);
+                live.markSynced(savedVersion, null);
+                taken++;
+                return;
+            }
+
+            BeeHive base = live.syncedState;
+            String record = "Hive " + live.getId();
+            BeeHive result = saved.copy();
+            result.storeTagNumber(pick(record, "tag number", base.getTagNumber(), live.getTagNumber(), saved.getTagNumber()));
+            result.storeTagColor(pick(record, "tag color", base.getTagColor(), live.getTagColor(), saved.getTagColor()));
+            result.storeLocation(pick(record, "location", base.getLocation(), live.getLocation(), saved.getLocation()));
+            result.storeStatus(pick(record, "status", base.getStatus(), live.getStatus(), saved.getStatus()));
+            result.storeHoneyLevel(pick(record, "honey level", base.getHoneyLevel(), live.getHoneyLevel(), saved.getHoneyLevel()));
+            // Both sides can only have changed a flag to the same value, so flags never conflict
+            result.storeHasQueen(live.hasQueen() != base.hasQueen() ? live.hasQueen() : saved.hasQueen());
+            long changedHere = live.getRequiredActionBits() ^ base.getRequiredActionBits();
+            result.storeActionBits((live.getRequiredActionBits() & changedHere) | (saved.getRequiredActionBits() & ~changedHere));
+            List<String> custom = mergeActions(base.getCustomActions(), live.getCustomActions(), saved.getCustomActions());
+            result.storeCustomActions(custom.isEmpty() ? null : Collections.unmodifiableList(custom));
+            result.storeNotes(mergeNotes(record, base.getNotes(), live.getNotes(), saved.getNotes()));
+
+            live.applyMerge(result, Math.max(live.getVersion(), savedVersion) + 1);
+            // The data file now holds the saved hive, so later merges start from it
+            live.markSynced(savedVersion, saved);
+            merged++;
+        }
+    }
+
+    /**
+     * Add a hive another process saved that has no live hive with its ID
+     * @param hivesManager The live hives
+     * @param saved The hive as another process saved it
+     */
+    void addHive(Hives hivesManager, BeeHive saved) {
+        BeeHive live = hivesManager.getHive(saved.getId());
+        if (live != null) {
+            // Added here since the comparison
+            mergeHive(hivesManager, live, saved);
+            return;
+        }
+        BeeHive removedHere = hivesManager.getRemovedHive(saved.getId());
+        if (removedHere != null) {
+            if (saved.getVersion() <= removedHere.syncedVersion) {
+                // Removed here and not changed since, so it stays removed
+                return;
+            }
+            messages.add("Hive " + saved.getId() + " was removed here but changed by another user, so it is kept");
+            conflicts++;
+        }
+        saved.markSynced(saved.getVersion(), null);
+        hivesManager.addBeeHive(saved);
+        taken++;
+    }
+
+    /**
+     * Remove a live hive that another process removed from the data file
+     * @param hivesManager The live hives
+     * @param live The live hive
+     */
+    void removeHive(Hives hivesManager, BeeHive live) {
+        synchronized (live) {
+            if (live.syncedVersion < 0 || live.getOwner() != hivesManager) {
+                // Added here and never saved, or already gone
+                return;
+            }
+            if (live.getVersion() != live.syncedVersion) {
+                messages.add("Hive " + live.getId() + " was removed by another user, so your changes to it were dropped");
+                conflicts++;
+            }
+            // The data file no longer holds it, so there is nothing to remember for the next save
+            live.markSynced(-1, null);
+            hivesManager.removeHive(live);
+            removed++;
+        }
+    }
+
+    // Tasks
+
+    /**
+     * Merge a saved task into the live task that had the same ID when the data was compared
+     * @param tasksManager The live tasks
+     * @param live The live task
+     * @param saved The task as another process saved it
+     */
+    void mergeTask(Tasks tasksManager, Task live, Task saved) {
+        if (live.getOwner() != tasksManager || live.getId() != saved.getId()) {
+            addTask(tasksManager, saved);
+        } else if (live.syncedVersion < 0) {
+            int id = Task.takeNextId();
+            messages.add("Task " + live.getId() + " was also added by another user, yours is now task " + id);
+            live.setId(id);
+            addTask(tasksManager, saved);
+        } else {
+            mergeTask(live, saved);
+        }
+    }
+
+    /**
+     * Merge a saved task into a live task with the same ID that was loaded or saved before
+     * @param live The live task
+     * @param saved The task as another process saved it
+     */
+    void mergeTask(Task live, Task saved) {
+        synchronized (live) {
+            long savedVersion = saved.getVersion();
+            if (savedVersion <= live.syncedVersion) {
+                return;
+            }
+            if (live.getVersion() == live.syncedVersion) {
+                live.applyMerge(saved, savedVersion);
+                live.markSynced(savedVersion, null);
+                taken++;
+                return;
+            }
+
+            Task base = live.syncedState;
+            String record = "Task " + live.getId();
+            Task result = saved.copy();
+            result.setName(pick(record, "name", base.getName(), live.getName(), saved.getName()));
+            result.setDescription(pick(record, "description", base.getDescription(), live.getDescription(), saved.getDescription()));
+            result.setLocation(pick(record, "location", base.getLocation(), live.getLocation(), saved.getLocation()));
+            result.setStatus(pick(record, "status", base.getTaskStatus(), live.getTaskStatus(), saved.getTaskStatus()));
+            result.setNotes(mergeNotes(record, base.getNotes(), live.getNotes(), saved.getNotes()));
+
+            live.applyMerge(result, Math.max(live.getVersion(), savedVersion) + 1);
+            live.markSynced(savedVersion, saved);
+            merged++;
+        }
+    }
+
+    /**
+     * Add a task another process saved that has no live task with its ID
+     * @param tasksManager The live tasks
+     * @param saved The task as another process saved it
+     */
+    void addTask(Tasks tasksManager, Task saved) {
+        Task live = tasksManager.getTask(saved.getId());
+        if (live != null) {
+            mergeTask(tasksManager, live, saved);
+            return;
+        }
+        Task removedHere = tasksManager.getRemovedTask(saved.getId());
+        if (removedHere != null) {
+            if (saved.getVersion() <= removedHere.syncedVersion) {
+                return;
+            }
+            messages.add("Task " + saved.getId() + " was removed here but changed by another user, so it is kept");
+            conflicts++;
+        }
+        saved.markSynced(saved.getVersion(), null);
+        tasksManager.addTask(saved);
+        taken++;
+    }
+
+    /**
+     * Remove a live task that another process removed from the data file
+     * @param tasksManager The live tasks
+     * @param live The live task
+     */
+    void removeTask(Tasks tasksManager, Task live) {
+        synchronized (live) {
+            if (live.syncedVersion < 0 || live.getOwner() != tasksManager) {
+                return;
+            }
+            if (live.getVersion() != live.syncedVersion) {
+                messages.add("Task " + live.getId() + " was removed by another user, so your changes to it were dropped");
+                conflicts++;
+            }
+            live.markSynced(-1, null);
+            tasksManager.removeTask(live);
+            removed++;
+        }
+    }
+
+    // Fields
+
+    /**
+     * Three-way merge of one field
+     * @return the side that changed the field, or the saved value if both changed it differently
+     */
+    private <T> T pick(String record, String field, T base, T live, T saved) {
+        if (Objects.equals(live, base) || Objects.equals(live, saved)) {
+            return saved;
+        }
+        if (Objects.equals(saved, base)) {
+            return live;
+        }
+        messages.add(record + ": " + field + " was changed to '" + saved + "' by another user, so your change to '" +
+                live + "' was not kept");
+        conflicts++;
+        return saved;
+    }
+
+    /**
+     * Merge notes: if both sides only added to the notes they started from, keep both additions
+     */
+    private String mergeNotes(String record, String base, String live, String saved) {
+        if (!live.equals(base) && !saved.equals(base) && !live.equals(saved) &&
+                live.startsWith(base) && saved.startsWith(base)) {
+            String added = live.substring(base.length());
+            return base.isEmpty() ? saved + "; " + added : saved + added;
+        }
+        return pick(record, "notes", base, live, saved);
+    }
+
+    /**
+     * Merge custom actions: the saved actions, plus the ones added here, minus the ones removed here
+     */
+    private static List<String> mergeActions(List<String> base, List<String> live, List<String> saved) {
+        List<String> result = new ArrayList<>(saved);
+        for (String action : live) {
+            if (!base.contains(action) && !result.contains(action)) {
+                result.add(action);
+            }
+        }
+        for (String action : base) {
+            if (!live.contains(action)) {
+                result.remove(action);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get what happened to records that need the user's attention: conflicts and new IDs
+     * @return one message per event
+     */
+    public List<String> getMessages() {
+        return messages;
+    }
+
+    /**
+     * Get the number of conflicts, where a change made here was not kept
+     * @return the number of conflicts
+     */
+    public int getConflictCount() {
+        return conflicts;
+    }
+
+    /**
+     * Get the number of records that changed
+     * @return records taken as saved, merged or removed
+     */
+    public int getChangeCount() {
+        return taken + merged + removed;
+    }
+
+    @Override
+    public String toString() {
+        return taken + " taken, " + merged + " merged, " + removed + " removed, " + conflicts + " conflicts";
+    }
+}
@@ -0,0 +1,277 @@
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * RecordTokenizer scans the data file line by line inside a reusable char buffer
+ * Fields are separated by '|' and located in place; numbers and booleans are parsed
+ * straight from the buffer and Strings are only created for fields that are asked for as text
+ */
+public class RecordTokenizer {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Reader reader;
+    private char[] buffer;
+    private int limit;
+    private boolean eof;
+
+    private int lineStart;
+    private int lineEnd;
+    private int next;
+    private int cursor;
+    private int fieldStart;
+    private int fieldEnd;
+
+    /**
+     * Constructor for RecordTokenizer reading lines from a reader
+     * @param reader The reader to scan
+     */
+    public RecordTokenizer(Reader reader) {
+        this.reader = reader;
+        this.buffer = new char[BUFFER_SIZE];
+    }
+
+    /**
+     * Constructor for RecordTokenizer reading lines from part of a char array
+     * @param text The characters to scan
+     * @param start Index of the first character
+     * @param end Index after the last character
+     */
+    public RecordTokenizer(char[] text, int start, int end) {
+        this.reader = null;
+        this.buffer = text;
+        this.limit = end;
+        this.eof = true;
+        this.next = start;
+    }
+
+    /**
+     * Constructor for RecordTokenizer positioned on a single line
+     * @param line The line to scan
+     */
+    public RecordTokenizer(String line) {
+        this.reader = null;
+        this.buffer = line.toCharArray();
+        this.limit = buffer.length;
+        this.eof = true;
+        setLine(0, limit, limit);
+    }
+
+    /**
+     * Advance to the next line
+     * @return true if a line is available, false at the end of the input
+     */
+    public boolean nextLine() throws IOException {
+        int start = next;
+        int scan = start;
+        while (true) {
+            for (int i = scan; i < limit; i++) {
+                if (buffer[i] == '\n') {
+                    setLine(start, i, i + 1);
+                    return true;
+                }
+            }
+            if (eof) {
+                if (start < limit) {
+                    setLine(start, limit, limit);
+                    return true;
+                }
+                return false;
+            }
+
+            // The line continues past the buffered data: move it to the front and read more
+            int pending = limit - start;
+            if (pending == buffer.length) {
+                char[] larger = new char[buffer.length * 2];
+                System.arraycopy(buffer, start, larger, 0, pending);
+                buffer = larger;
+            } else if (start > 0) {
+                System.arraycopy(buffer, start, buffer, 0, pending);
+            }
+            start = 0;
+            scan = pending;
+            limit = pending;
+            next = 0;
+            int read = reader.read(buffer, limit, buffer.length - limit);
+            if (read < 0) {
+                eof = true;
+            } else {
+                limit += read;
+            }
+        }
+    }
+
+    private void setLine(int start, int end, int nextLine) {
+        if (end > start && buffer[end - 1] == '\r') {
+            end--;
+        }
+        lineStart = start;
+        lineEnd = end;
+        next = nextLine;
+        cursor = start;
+    }
+
+    /**
+     * Check if the current line starts with a prefix
+     * @param prefix The prefix to check
+     * @return true if the line starts with the prefix, false otherwise
+     */
+    public boolean startsWith(String prefix) {
+        int length = prefix.length();
+        if (lineEnd - lineStart < length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (buffer[lineStart + i] != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Check if the current line is exactly the given text
+     * @param text The text to compare with
+     * @return true if the line equals the text, false otherwise
+     */
+    public boolean lineEquals(String text) {
+        return lineEnd - lineStart == text.length() && startsWith(text);
+    }
+
+    /**
+     * Check if the current line holds only whitespace
+     * @return true if the line is blank, false otherwise
+     */
+    public boolean isBlank() {
+        for (int i = lineStart; i < lineEnd; i++) {
+            if (buffer[i] > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get the current line as a String
+     * @return the current line
+     */
+    public String line() {
+        return new String(buffer, lineStart, lineEnd - lineStart);
+    }
+
+    /**
+     * Count the '|' separated fields on the current line
+     * @return the number of fields
+     */
+    public int fieldCount() {
+        int count = 1;
+        for (int i = lineStart; i < lineEnd; i++) {
+            if (buffer[i] == '|') {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private void advanceField() {
+        if (cursor > lineEnd) {
+            throw new NumberFormatException("Missing field");
+        }
+        fieldStart = cursor;
+        int i = cursor;
+        while (i < lineEnd && buffer[i] != '|') {
+            i++;
+        }
+        fieldEnd = i;
+        cursor = i + 1;
+    }
+
+    /**
+     * Read the next field as text
+     * @return the field
+     */
+    public String nextString() {
+        advanceField();
+        return new String(buffer, fieldStart, fieldEnd - fieldStart);
+    }
+
+    /**
+     * Read the next field as an int, parsed in place
+     * @return the field value
+     */
+    public int nextInt() {
+        advanceField();
+        return parseInt(fieldStart, fieldEnd);
+    }
+
+    /**
+     * Read the next field as a non-negative long, parsed in place
+     * @return the field value
+     */
+    public long nextLong() {
+        advanceField();
+        if (fieldStart == fieldEnd) {
+            throw new NumberFormatException("Empty number");
+        }
+        long value = 0;
+        for (int i = fieldStart; i < fieldEnd; i++) {
+            int digit = buffer[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("Invalid number");
+            }
+            if (value > (Long.MAX_VALUE - digit) / 10) {
+                throw new NumberFormatException("Number out of range");
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    /**
+     * Read the next field as a boolean, with the same rules as Boolean.parseBoolean
+     * @return true if the field is "true" ignoring case, false otherwise
+     */
+    public boolean nextBoolean() {
+        advanceField();
+        if (fieldEnd - fieldStart != 4) {
+            return false;
+        }
+        return (buffer[fieldStart] | 0x20) == 't' && (buffer[fieldStart + 1] | 0x20) == 'r' &&
+                (buffer[fieldStart + 2] | 0x20) == 'u' && (buffer[fieldStart + 3] | 0x20) == 'e';
+    }
+
+    /**
+     * Parse an int that runs from a fixed offset to the end of the current line
+     * @param offset Offset from the start of the line, e.g. past "NEXT_HIVE_ID:"
+     * @return the parsed value
+     */
+    public int intAt(int offset) {
+        return parseInt(lineStart + offset, lineEnd);
+    }
+
+    private int parseInt(int start, int end) {
+        if (start >= end) {
+            throw new NumberFormatException("Empty number");
+        }
+        boolean negative = buffer[start] == '-';
+        int i = negative || buffer[start] == '+' ? start + 1 : start;
+        if (i == end) {
+            throw new NumberFormatException("Invalid number");
+        }
+        long value = 0;
+        for (; i < end; i++) {
+            int digit = buffer[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("Invalid number");
+            }
+            value = value * 10 + digit;
+            if (value > Integer.MAX_VALUE + 1L) {
+                throw new NumberFormatException("Number out of range");
+            }
+        }
+        value = negative ? -value : value;
+        if (value > Integer.MAX_VALUE) {
+            throw new NumberFormatException("Number out of range");
+        }
+        return (int) value;
+    }
+}
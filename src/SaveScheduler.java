@@ -0,0 +1,137 @@
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SaveScheduler merges bursts of save requests into a single background write
+ * A request only marks the data as dirty; the write runs once the save window has passed,
+ * and never sooner than the minimum interval after the previous write
+ */
+public class SaveScheduler {
+    private final Runnable saveAction;
+    private final ScheduledExecutorService executor;
+    private long windowMillis;
+    private long minIntervalMillis;
+
+    private boolean dirty = false;
+    private ScheduledFuture<?> pending;
+    private long lastSaveTime = 0;
+    private long requestCount = 0;
+    private long saveCount = 0;
+
+    /**
+     * Constructor for SaveScheduler
+     * @param saveAction The action that writes all data
+     * @param executor The executor the writes run on
+     * @param windowMillis How long to wait for more requests before writing
+     * @param minIntervalMillis Minimum time between two writes
+     */
+    public SaveScheduler(Runnable saveAction, ScheduledExecutorService executor, long windowMillis, long minIntervalMillis) {
+        this.saveAction = saveAction;
+        this.executor = executor;
+        this.windowMillis = windowMillis;
+        this.minIntervalMillis = minIntervalMillis;
+    }
+
+    public synchronized void setWindowMillis(long windowMillis) {
+        this.windowMillis = windowMillis;
+    }
+
+    public synchronized void setMinIntervalMillis(long minIntervalMillis) {
+        this.minIntervalMillis = minIntervalMillis;
+    }
+
+    /**
+     * Mark the data as dirty and make sure a write is scheduled
+     */
+    public synchronized void requestSave() {
+        requestCount++;
+        dirty = true;
+        if (pending == null) {
+            long sinceLastSave = System.currentTimeMillis() - lastSaveTime;
+            long delay = Math.max(windowMillis, minIntervalMillis - sinceLastSave);
+            try {
+                pending = executor.schedule(this::saveIfDirty, delay, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                System.err.println("Save requested after shutdown");
+            }
+        }
+    }
+
+    private void saveIfDirty() {
+        synchronized (this) {
+            pending = null;
+            if (!dirty) {
+                return;
+            }
+            dirty = false;
+        }
+        saveAction.run();
+        synchronized (this) {
+            lastSaveTime = System.currentTimeMillis();
+            saveCount++;
+        }
+    }
+
+    /**
+     * Write any pending changes now and wait until they are written
+     */
+    public void flush() {
+        synchronized (this) {
+            if (pending != null) {
+                pending.cancel(false);
+                pending = null;
+            }
+            if (!dirty) {
+                return;
+            }
+        }
+        try {
+            Future<?> save = executor.submit(this::saveIfDirty);
+            save.get();
+        } catch (RejectedExecutionException e) {
+            // The executor is gone, write on the calling thread instead
+            saveIfDirty();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            System.err.println("Error flushing data: " + e.getCause());
+        }
+    }
+
+    /**
+     * Flush pending changes and stop the executor
+     */
+    public void shutdown() {
+        flush();
+        executor.shutdown();
+    }
+
+    public synchronized long getRequestCount() {
+        return requestCount;
+    }
+
+    public synchronized long getSaveCount() {
+        return saveCount;
+    }
+
+    /**
+     * Get the number of save requests that were merged into another write
+     * @return the number of coalesced requests
+     */
+    public synchronized long getCoalescedCount() {
+        return requestCount - saveCount - (dirty ? 1 : 0);
+    }
+
+    /**
+     * Get a one-line summary of the save counters
+     * @return the summary
+     */
+    public synchronized String getStatistics() {
+        return "Save requests: " + requestCount + ", writes: " + saveCount +
+                ", coalesced: " + getCoalescedCount();
+    }
+}
@@ -0,0 +1,673 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * SessionServer hosts one in-memory copy of the data and serves many worker sessions over TCP
+ * Instead of every worker running its own process against DataFile.txt and reloading, workers
+ * connect to the server, which listens on the loopback interface. Every connection runs on its
+ * own virtual thread when the JVM has them (Java 21+), otherwise on a pooled platform thread.
+ *
+ * The protocol is line based and mirrors the menu. A request is a command, optionally followed by
+ * a space and its arguments separated by '|', the same separator as the data file:
+ * <pre>
+ * LOGIN pavel|password123       answers with a "Token: ..." line
+ * TOKEN Xy3...                   resume a login on a new connection without the password
+ * HIVES                          list all hives
+ * HIVE 12                        details of a hive: an ID, #ID or T followed by a tag number
+ * STATUS 12|needs attention      update hive status (admin)
+ * HONEY 12|80                    update honey level (admin)
+ * HONEY 12|80|7                  ... only if the hive is still at version 7, as HIVE showed it
+ * QUEEN 12|missing               queen missing, acquired or installed
+ * ACTION 12|Honey harvest needed add a required action
+ * NOTE 12|Calm bees              add notes
+ * ADDHIVE 105|Red|Forest Location                     (admin)
+ * TASKS                          list all tasks
+ * ADDTASK Inspect Hive|Weekly check|Forest Location   (admin)
+ * COMPLETE 7                     complete a task by ID
+ * STATS                          the statistics screen
+ * LOGOUT, QUIT, HELP
+ * </pre>
+ * Every response starts with a line "OK ..." or "ERR ..." and ends with a line holding a single
+ * ".". Lines of the response that start with "." get a second "." in front.
+ *
+ * Only LOGIN checks a password. Every later request of the session is checked against the
+ * session's token, a hash map lookup, so a revoked or expired token ends the session at once.
+ */
+public class SessionServer {
+    // Line starts with a meaning of their own in the data file
+    private static final String[] DATA_FILE_MARKERS = {"===", "ACTIONS:", "ENDACTIONS:"};
+    private static final String HELP = "Commands: LOGIN user|password, TOKEN token, HIVES, HIVE id, STATUS id|status[|version], " +
+            "HONEY id|level[|version], QUEEN id|missing/acquired/installed, ACTION id|action, NOTE id|notes, " +
+            "ADDHIVE tag|color|location, TASKS, ADDTASK name|description|location, COMPLETE id, STATS, LOGOUT, QUIT";
+
+    private final List<User> users;
+    private final UserManager userManager;
+    private final Hives hivesManager;
+    private final Tasks tasksManager;
+    private final CopyOnWriteArrayList<String> locations;
+    private final DataManager dataManager;
+    private final ChangeJournal journal;
+    private final ScheduledExecutorService executor;
+    private final SaveScheduler saveScheduler;
+    private final DomainEventLog eventLog;
+    private final EventMetrics eventMetrics;
+    private final StatisticsService statisticsService;
+    private final int requestedPort;
+
+    private ServerSocket serverSocket;
+    private ExecutorService sessions;
+    private boolean virtualThreads;
+    private volatile boolean running;
+    private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger openSessions = new AtomicInteger();
+    private final AtomicInteger peakSessions = new AtomicInteger();
+    private final AtomicLong requestCount = new AtomicLong();
+
+    /**
+     * Constructor for SessionServer
+     * @param port The TCP port to listen on, or 0 for any free port
+     */
+    public SessionServer(List<User> users, List<BeeHive> hives, List<Task> tasks, List<String> locations,
+                         DataManager dataManager, int port) {
+        this.users = new CopyOnWriteArrayList<>(users);
+        this.userManager = new UserManager();
+        for (User user : users) {
+            userManager.addUser(user);
+        }
+        this.hivesManager = new Hives();
+        for (BeeHive hive : hives) {
+            hivesManager.addBeeHive(hive);
+        }
+        this.tasksManager = new Tasks();
+        for (Task task : tasks) {
+            tasksManager.addTask(task);
+        }
+        // Sessions add locations while saves read them, so the list is copied on write
+        this.locations = new CopyOnWriteArrayList<>(locations);
+        this.dataManager = dataManager;
+        this.journal = dataManager.getJournal();
+        this.executor = Executors.newSingleThreadScheduledExecutor();
+        this.saveScheduler = new SaveScheduler(this::saveAll, executor, 500, 2000);
+        this.statisticsService = new StatisticsService(this.users, hivesManager, tasksManager, this.locations);
+        this.requestedPort = port;
+
+        // Persistence and metrics follow the changes sessions make through the event log
+        this.eventLog = new DomainEventLog();
+        this.eventMetrics = new EventMetrics();
+        hivesManager.setEventLog(eventLog);
+        tasksManager.setEventLog(eventLog);
+        userManager.setEventLog(eventLog);
+        eventLog.addConsumer("event-persistence", new EventPersistence(journal, saveScheduler, hivesManager, tasksManager));
+        eventLog.addConsumer("event-metrics", eventMetrics);
+
+        // In journal mode, fold the journal back into a snapshot in the background
+        if (journal != null) {
+            executor.scheduleWithFixedDelay(this::checkpointIfNeeded, 5, 5, TimeUnit.SECONDS);
+        }
+    }
+
+    public SaveScheduler getSaveScheduler() {
+        return saveScheduler;
+    }
+
+    public Tasks getTasksManager() {
+        return tasksManager;
+    }
+
+    /**
+     * Verify the incrementally maintained indexes against full scans whenever they are queried
+     * @param enabled true to check the indexes, false to trust them
+     */
+    public void setIndexChecks(boolean enabled) {
+        hivesManager.setConsistencyCheck(enabled);
+        tasksManager.setConsistencyCheck(enabled);
+    }
+
+    /**
+     * Start listening and accepting sessions in the background
+     * @throws IOException if the port cannot be opened
+     */
+    public void start() throws IOException {
+        serverSocket = new ServerSocket(requestedPort, 1024, InetAddress.getLoopbackAddress());
+        sessions = newSessionExecutor();
+        virtualThreads = !(sessions instanceof ThreadPoolExecutor);
+        running = true;
+        Thread acceptor = new Thread(this::acceptSessions, "session-acceptor");
+        acceptor.start();
+    }
+
+    /**
+     * Start the server and serve sessions until the process is stopped
+     */
+    public void run() {
+        try {
+            start();
+        } catch (IOException e) {
+            System.err.println("Could not start server on port " + requestedPort + ": " + e.getMessage());
+            return;
+        }
+        // Write pending changes when the process is stopped
+        Runtime.getRuntime().addShutdownHook(new Thread(this::stop));
+        System.out.println("Serving " + hivesManager.getHiveCount() + " hives and " + tasksManager.getTaskCount() +
+                " tasks on " + serverSocket.getLocalSocketAddress() + " (" +
+                (virtualThreads ? "virtual threads" : "platform threads") + ")");
+    }
+
+    /**
+     * Stop accepting sessions, close the open ones and write pending changes
+     */
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            System.err.println("Error closing server socket: " + e.getMessage());
+        }
+        // Blocked reads only end when their socket is closed
+        for (Socket connection : connections) {
+            try {
+                connection.close();
+            } catch (IOException e) {
+                // Closing anyway
+            }
+        }
+        sessions.shutdownNow();
+        eventLog.shutdown();
+        saveScheduler.requestSave();
+        saveScheduler.shutdown();
+        executor.shutdown();
+    }
+
+    /**
+     * Get the port the server listens on
+     * @return the port, useful when the server was started on port 0
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public boolean usesVirtualThreads() {
+        return virtualThreads;
+    }
+
+    public int getOpenSessionCount() {
+        return openSessions.get();
+    }
+
+    /**
+     * Get the most sessions that were open at the same time
+     * @return the peak number of open sessions
+     */
+    public int getPeakSessionCount() {
+        return peakSessions.get();
+    }
+
+    /**
+     * Get the event log and change counters, e.g. to see whether persistence kept up
+     * @return two lines of statistics
+     */
+    public String getEventStatistics() {
+        return eventLog.getStatistics() + "\n" + eventMetrics.getStatistics();
+    }
+
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * Create an executor that runs every task on a new virtual thread, or on pooled platform
+     * threads if this JVM has no virtual threads
+     * Looked up reflectively, so the program still builds and runs on Java 8
+     * @return the executor
+     */
+    static ExecutorService newSessionExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    private void acceptSessions() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                sessions.execute(() -> serve(socket));
+            } catch (IOException e) {
+                if (running) {
+                    System.err.println("Error accepting session: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        peakSessions.accumulateAndGet(openSessions.incrementAndGet(), Math::max);
+        connections.add(socket);
+        Session session = new Session();
+        try (Socket connection = socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8));
+             BufferedWriter out = new BufferedWriter(new OutputStreamWriter(connection.getOutputStream(), StandardCharsets.UTF_8))) {
+            connection.setTcpNoDelay(true);
+            String line;
+            while (!session.closed && (line = in.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty()) {
+                    continue;
+                }
+                requestCount.incrementAndGet();
+                out.write(handle(session, line));
+                out.flush();
+            }
+        } catch (SocketException e) {
+            // The client went away or the server is stopping
+        } catch (IOException e) {
+            System.err.println("Error in session: " + e.getMessage());
+        } finally {
+            connections.remove(socket);
+            openSessions.decrementAndGet();
+        }
+    }
+
+    /**
+     * Run one request
+     * @param session The session the request came in on
+     * @param line The request line, trimmed
+     * @return the complete response, including the final "." line
+     */
+    String handle(Session session, String line) {
+        int space = line.indexOf(' ');
+        String command = (space < 0 ? line : line.substring(0, space)).toUpperCase();
+        String[] args = space < 0 ? new String[0] : line.substring(space + 1).split("\\|", -1);
+        for (int i = 0; i < args.length; i++) {
+            args[i] = args[i].trim();
+        }
+        Response response = new Response();
+        try {
+            if (command.equals("LOGIN")) {
+                login(session, args, response);
+            } else if (command.equals("TOKEN")) {
+                resume(session, args, response);
+            } else if (command.equals("HELP")) {
+                response.ok(HELP);
+            } else if (command.equals("QUIT")) {
+                session.closed = true;
+                response.ok("Goodbye!");
+            } else if (session.user == null) {
+                response.error("Log in first");
+            } else if ((session.user = userManager.validateToken(session.token)) == null) {
+                session.token = null;
+                response.error("Session expired, log in again");
+            } else {
+                handleCommand(session, command, args, response);
+            }
+        } catch (NumberFormatException e) {
+            response.error("Invalid number: " + e.getMessage());
+        } catch (IllegalArgumentException e) {
+            response.error(e.getMessage());
+        }
+        return response.finish();
+    }
+
+    private void handleCommand(Session session, String command, String[] args, Response response) {
+        boolean admin = session.user.getRole().equals("admin");
+        switch (command) {
+            case "HIVES":
+                listHives(response);
+                break;
+            case "HIVE":
+                showHive(hive(args, 1), response);
+                break;
+            case "STATUS":
+                requireAdmin(admin);
+                updateStatus(hive(args, 2), storable(args[1], "Status"), expectedVersion(args), response);
+                break;
+            case "HONEY":
+                requireAdmin(admin);
+                updateHoneyLevel(hive(args, 2), Integer.parseInt(args[1]), expectedVersion(args), response);
+                break;
+            case "QUEEN":
+                updateQueen(hive(args, 2), args[1], response);
+                break;
+            case "ACTION":
+                addRequiredAction(hive(args, 2), storable(args[1], "Action"), response);
+                break;
+            case "NOTE":
+                addNotes(hive(args, 2), storable(args[1], "Notes"), response);
+                break;
+            case "ADDHIVE":
+                requireAdmin(admin);
+                requireArgs(args, 3);
+                addHive(Integer.parseInt(args[0]), storable(args[1], "Tag color"), storable(args[2], "Location"), response);
+                break;
+            case "TASKS":
+                listTasks(response);
+                break;
+            case "ADDTASK":
+                requireAdmin(admin);
+                requireArgs(args, 3);
+                addTask(storable(args[0], "Task name"), storable(args[1], "Description"),
+                        storable(args[2], "Location"), response);
+                break;
+            case "COMPLETE":
+                requireArgs(args, 1);
+                completeTask(tasksManager.getTask(Integer.parseInt(args[0].replace("#", ""))), response);
+                break;
+            case "STATS":
+                response.ok("Statistics");
+                response.lines(statisticsService.getReport());
+                break;
+            case "LOGOUT":
+                response.ok("Goodbye, " + session.user.getName() + "!");
+                userManager.logout(session.token);
+                session.user = null;
+                session.token = null;
+                break;
+            default:
+                response.error("Unknown command " + command + ". " + HELP);
+        }
+    }
+
+    private void login(Session session, String[] args, Response response) {
+        requireArgs(args, 2);
+        String token = userManager.login(args[0], args[1]);
+        User user = token == null ? null : userManager.validateToken(token);
+        if (user == null) {
+            response.error("Invalid username or password!");
+        } else {
+            session.user = user;
+            session.token = token;
+            response.ok("Welcome, " + user.getName() + "! (" + user.getRole() + ")");
+            response.line("Token: " + token);
+        }
+    }
+
+    private void resume(Session session, String[] args, Response response) {
+        requireArgs(args, 1);
+        User user = userManager.validateToken(args[0]);
+        if (user == null) {
+            response.error("Unknown or expired token, log in again");
+        } else {
+            session.user = user;
+            session.token = args[0];
+            response.ok("Welcome back, " + user.getName() + "! (" + user.getRole() + ")");
+        }
+    }
+
+    private void listHives(Response response) {
+        List<BeeHive> hivesList = hivesManager.getAllHives();
+        response.ok(hivesList.size() + " hives");
+        for (BeeHive hive : hivesList) {
+            response.line(hive.getId() + "|" + hive.getTagNumber() + "|" + hive.getTagColor() + "|" +
+                    hive.getLocation() + "|" + hive.getStatus() + "|" + hive.getHoneyLevel() + "|" + hive.hasQueen());
+        }
+    }
+
+    private void showHive(BeeHive hive, Response response) {
+        response.ok("Hive " + hive.getId());
+        response.line("Tag Number: " + hive.getTagNumber());
+        response.line("Tag Color: " + hive.getTagColor());
+        response.line("Location: " + hive.getLocation());
+        response.line("Status: " + hive.getStatus());
+        response.line("Honey Level: " + hive.getHoneyLevel() + "%");
+        response.line("Has Queen: " + (hive.hasQueen() ? "Yes" : "No"));
+        response.line("Notes: " + hive.getNotes());
+        for (String action : hive.getRequiredActions()) {
+            response.line("Required Action: " + action);
+        }
+        response.line("Version: " + hive.getVersion());
+    }
+
+    private void updateStatus(BeeHive hive, String status, long expectedVersion, Response response) {
+        if (status.isEmpty()) {
+            throw new IllegalArgumentException("Status cannot be empty");
+        }
+        if (!update(hive, expectedVersion, h -> h.setStatus(status), response)) {
+            return;
+        }
+        response.ok("Status updated successfully.");
+    }
+
+    private void updateHoneyLevel(BeeHive hive, int honeyLevel, long expectedVersion, Response response) {
+        if (honeyLevel < 0 || honeyLevel > 100) {
+            throw new IllegalArgumentException("Honey level must be between 0 and 100");
+        }
+        if (!update(hive, expectedVersion, h -> h.setHoneyLevel(honeyLevel), response)) {
+            return;
+        }
+        response.ok("Honey level updated successfully.");
+    }
+
+    private void updateQueen(BeeHive hive, String change, Response response) {
+        switch (change.toLowerCase()) {
+            case "missing":
+                hive.setHasQueen(false);
+                response.ok("Queen marked as missing for hive " + hive.getId());
+                break;
+            case "acquired":
+                hive.markQueenAcquired();
+                response.ok("Queen marked as acquired for hive " + hive.getId());
+                break;
+            case "installed":
+                hive.markQueenInstalled();
+                response.ok("Queen marked as installed for hive " + hive.getId());
+                break;
+            default:
+                throw new IllegalArgumentException("Queen change must be missing, acquired or installed");
+        }
+    }
+
+    private void addRequiredAction(BeeHive hive, String action, Response response) {
+        if (action.isEmpty()) {
+            throw new IllegalArgumentException("Action cannot be empty");
+        }
+        hive.addRequiredAction(action);
+        response.ok("Action '" + action + "' added to hive " + hive.getId());
+    }
+
+    private void addNotes(BeeHive hive, String notes, Response response) {
+        if (notes.isEmpty()) {
+            throw new IllegalArgumentException("Notes cannot be empty");
+        }
+        hive.addNotes(notes);
+        response.ok("Notes added successfully.");
+    }
+
+    private void addHive(int tagNumber, String tagColor, String location, Response response) {
+        addLocation(location);
+        BeeHive hive = hivesManager.addBeeHive(tagNumber, tagColor, location);
+        response.ok("Hive " + hive.getId() + " added successfully.");
+    }
+
+    private void listTasks(Response response) {
+        List<Task> tasksList = tasksManager.getAllTasks();
+        response.ok(tasksList.size() + " tasks");
+        for (Task task : tasksList) {
+            response.line(task.getId() + "|" + task.getName() + "|" + task.getDescription() + "|" +
+                    task.getLocation() + "|" + task.getStatus());
+        }
+    }
+
+    private void addTask(String name, String description, String location, Response response) {
+        if (name.isEmpty()) {
+            throw new IllegalArgumentException("Task name cannot be empty.");
+        }
+        addLocation(location);
+        Task task = tasksManager.addTask(name, description, location);
+        response.ok("Task " + task.getId() + " created successfully.");
+    }
+
+    private void completeTask(Task task, Response response) {
+        if (task == null) {
+            throw new IllegalArgumentException("No such task");
+        }
+        task.complete();
+        response.ok("Task '" + task.getName() + "' marked as completed.");
+    }
+
+    /**
+     * Change a hive, if a version was given only while the hive is still at that version
+     * @param expectedVersion The version the client read, or -1 to change the hive whatever its version
+     * @return true if the hive was changed, false if it had moved on; the response then says so
+     */
+    private boolean update(BeeHive hive, long expectedVersion, Consumer<BeeHive> change, Response response) {
+        if (expectedVersion < 0) {
+            change.accept(hive);
+        } else if (!hivesManager.updateHive(hive.getId(), expectedVersion, change)) {
+            response.error("Hive " + hive.getId() + " was changed by someone else and is now at version " +
+                    hive.getVersion() + "; read it again before changing it");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Get the optional version argument of STATUS and HONEY
+     * @return the version, or -1 if none was given
+     */
+    private static long expectedVersion(String[] args) {
+        return args.length > 2 && !args[2].isEmpty() ? Long.parseLong(args[2]) : -1;
+    }
+
+    /**
+     * Find the hive named by the first argument: an ID, "#" followed by an ID, or "T" followed by a tag number
+     * @param args The arguments
+     * @param count How many arguments the command needs
+     * @throws IllegalArgumentException if there are too few arguments or no such hive
+     */
+    private BeeHive hive(String[] args, int count) {
+        requireArgs(args, count);
+        String name = args[0];
+        BeeHive hive;
+        if (name.startsWith("T") || name.startsWith("t")) {
+            hive = hivesManager.getHiveByTagNumber(Integer.parseInt(name.substring(1)));
+        } else {
+            hive = hivesManager.getHive(Integer.parseInt(name.startsWith("#") ? name.substring(1) : name));
+        }
+        if (hive == null) {
+            throw new IllegalArgumentException("No such hive: " + name);
+        }
+        return hive;
+    }
+
+    private static void requireArgs(String[] args, int count) {
+        if (args.length < count) {
+            throw new IllegalArgumentException("Expected " + count + " arguments separated by '|'");
+        }
+    }
+
+    /**
+     * Check text from a client before it reaches the data file
+     * Actions and locations are stored as whole lines, where a line starting like a section
+     * marker would end the ACTIONS block or switch the section on the next load.
+     * @param value The text
+     * @param what What the text is, for the error message
+     * @return the text
+     * @throws IllegalArgumentException if the text starts like a marker of the data file or holds control characters
+     */
+    private static String storable(String value, String what) {
+        for (String marker : DATA_FILE_MARKERS) {
+            if (value.startsWith(marker)) {
+                throw new IllegalArgumentException(what + " cannot start with '" + marker + "'");
+            }
+        }
+        for (int i = 0; i < value.length(); i++) {
+            if (Character.isISOControl(value.charAt(i))) {
+                throw new IllegalArgumentException(what + " cannot contain control characters");
+            }
+        }
+        return value;
+    }
+
+    private static void requireAdmin(boolean admin) {
+        if (!admin) {
+            throw new IllegalArgumentException("Only admins can do that");
+        }
+    }
+
+    private void addLocation(String location) {
+        // addIfAbsent, so two sessions adding the same new location store it once
+        if (locations.addIfAbsent(location)) {
+            eventLog.publish(DomainEvent.Type.LOCATION_ADDED, 0, location, 0, 0);
+        }
+    }
+
+    private void saveAll() {
+        dataManager.saveMerged(users, hivesManager, tasksManager, locations);
+        // The merge may have added or removed users that other processes saved
+        userManager.syncUsers(users);
+    }
+
+    private void checkpointIfNeeded() {
+        if (dataManager.needsCheckpoint()) {
+            saveAll();
+        }
+    }
+
+    /**
+     * The state of one connection
+     */
+    static class Session {
+        User user;
+        String token; // Checked on every request while logged in
+        boolean closed;
+    }
+
+    /**
+     * Collects the lines of a response
+     */
+    private static class Response {
+        private final StringBuilder text = new StringBuilder();
+
+        void ok(String message) {
+            text.append("OK ").append(message).append('\n');
+        }
+
+        void error(String message) {
+            text.setLength(0);
+            text.append("ERR ").append(message).append('\n');
+        }
+
+        void line(String line) {
+            if (line.startsWith(".")) {
+                text.append('.');
+            }
+            text.append(line).append('\n');
+        }
+
+        void lines(String block) {
+            for (String line : block.split("\n")) {
+                line(line);
+            }
+        }
+
+        String finish() {
+            return text.append(".\n").toString();
+        }
+    }
+}
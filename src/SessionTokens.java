@@ -0,0 +1,167 @@
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * SessionTokens hands out random tokens for logged in users, so later requests can prove who they
+ * are with one hash map lookup instead of another password check
+ * A token is 256 random bits, far too many to guess, and expires after it has not been used for
+ * the idle timeout. The cache holds at most a fixed number of tokens; when it is full, issuing a
+ * token drops the oldest ones. A token also stops working once its user's password changes, which
+ * the user's credential epoch tells; hashing the same password again does not end any session.
+ */
+public class SessionTokens {
+    public static final int DEFAULT_MAX_TOKENS = 10_000;
+    public static final long DEFAULT_IDLE_MILLIS = 30 * 60 * 1000;
+    private static final int TOKEN_BYTES = 32;
+
+    private final SecureRandom random = new SecureRandom();
+    private final Map<String, Entry> tokens = new ConcurrentHashMap<>();
+    // Tokens in the order they were issued
+    private final Queue<String> issueOrder = new ConcurrentLinkedQueue<>();
+    private final int maxTokens;
+    private final long idleMillis;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public SessionTokens() {
+        this(DEFAULT_MAX_TOKENS, DEFAULT_IDLE_MILLIS);
+    }
+
+    /**
+     * Constructor for SessionTokens
+     * @param maxTokens Most tokens kept at once
+     * @param idleMillis How long a token stays valid without being used
+     */
+    public SessionTokens(int maxTokens, long idleMillis) {
+        this.maxTokens = maxTokens;
+        this.idleMillis = idleMillis;
+    }
+
+    /**
+     * Issue a new token for a user whose password was just checked
+     * @param user The user
+     * @return the token, URL-safe Base64 text
+     */
+    public String issue(User user) {
+        byte[] bytes = new byte[TOKEN_BYTES];
+        random.nextBytes(bytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        tokens.put(token, new Entry(user, System.currentTimeMillis() + idleMillis));
+        issueOrder.add(token);
+        evictOldest();
+        return token;
+    }
+
+    /**
+     * Get the user a token was issued to, and keep the token alive for another idle timeout
+     * @param token The token
+     * @return the user, or null if the token is unknown, expired or revoked
+     */
+    public User validate(String token) {
+        Entry entry = tokens.get(token);
+        long now = System.currentTimeMillis();
+        if (entry == null || now > entry.expires || entry.credentialEpoch != entry.user.getCredentialEpoch()) {
+            if (entry != null) {
+                drop(token, entry);
+            }
+            misses.incrementAndGet();
+            return null;
+        }
+        entry.expires = now + idleMillis;
+        hits.incrementAndGet();
+        return entry.user;
+    }
+
+    /**
+     * Make a token invalid, e.g. on logout
+     * @param token The token
+     */
+    public void revoke(String token) {
+        Entry entry = tokens.get(token);
+        if (entry != null) {
+            drop(token, entry);
+        }
+    }
+
+    /**
+     * Make every token of a user invalid
+     * @param user The user
+     */
+    public void revokeAll(User user) {
+        for (Map.Entry<String, Entry> token : tokens.entrySet()) {
+            if (token.getValue().user == user) {
+                drop(token.getKey(), token.getValue());
+            }
+        }
+    }
+
+    /**
+     * Get the number of tokens held, including expired ones not yet dropped
+     * @return the number of tokens
+     */
+    public int size() {
+        return tokens.size();
+    }
+
+    /**
+     * Get a one-line summary of the token counters
+     * @return the summary
+     */
+    public String getStatistics() {
+        return "Tokens: " + tokens.size() + ", valid uses: " + hits.get() + ", rejected: " + misses.get() +
+                ", evicted: " + evictions.get();
+    }
+
+    /**
+     * Drop tokens from the front of the issue order while the cache is too full or they have expired
+     */
+    private void evictOldest() {
+        long now = System.currentTimeMillis();
+        String oldest;
+        while ((oldest = issueOrder.peek()) != null) {
+            Entry entry = tokens.get(oldest);
+            if (entry != null && tokens.size() <= maxTokens && now <= entry.expires) {
+                return;
+            }
+            if (entry == null) {
+                issueOrder.remove(oldest);
+            } else if (drop(oldest, entry)) {
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Remove a token from the cache and the issue order
+     * @return true if this call removed it, false if another thread got there first
+     */
+    private boolean drop(String token, Entry entry) {
+        if (tokens.remove(token, entry)) {
+            issueOrder.remove(token);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * A user and when their token expires
+     */
+    private static class Entry {
+        final User user;
+        // The user's credential epoch at issue time; the token dies when the password changes
+        final int credentialEpoch;
+        volatile long expires;
+
+        Entry(User user, long expires) {
+            this.user = user;
+            this.credentialEpoch = user.getCredentialEpoch();
+            this.expires = expires;
+        }
+    }
+}
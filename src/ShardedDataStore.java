@@ -0,0 +1,365 @@
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * ShardedDataStore keeps the data in a directory with one file per location
+ * global.txt holds the users, the locations and the NEXT_HIVE_ID/NEXT_TASK_ID counters;
+ * every location has a .shard file with its hives and tasks in the text format.
+ * Each file has its own lock file next to it (global.lock, <shard name>.lock), held while the file
+ * is read for a merge and replaced, so processes saving different locations do not wait for each
+ * other. A save is told which locations changed and only writes their shards, so saving an edit
+ * in one location neither blocks nor rewrites, nor even formats, the others.
+ */
+public class ShardedDataStore {
+    static final String GLOBAL_FILE = "global.txt";
+    static final String SHARD_SUFFIX = ".shard";
+    private static final String LOCK_SUFFIX = ".lock";
+    private static final String SHARD_HEADER = "===SHARD===";
+
+    private final File directory;
+    private final Set<String> selectedLocations;
+    private final Shard global;
+    private final Map<String, Shard> shards = new ConcurrentHashMap<>();
+    // Locations whose shard was loaded completely, so the lists hold everything it contains
+    private final Set<String> loadedShards = ConcurrentHashMap.newKeySet();
+    private final AtomicLong writtenCount = new AtomicLong();
+    private final AtomicLong unchangedCount = new AtomicLong();
+
+    /**
+     * Constructor for ShardedDataStore
+     * @param directory Directory holding global.txt and the shard files
+     * @param selectedLocations Locations whose shards are loaded, or null to load every shard
+     */
+    public ShardedDataStore(File directory, Collection<String> selectedLocations) {
+        this.directory = directory;
+        this.selectedLocations = selectedLocations == null ? null : new LinkedHashSet<>(selectedLocations);
+        this.global = new Shard(new File(directory, GLOBAL_FILE));
+    }
+
+    public File getGlobalFile() {
+        return global.file;
+    }
+
+    /**
+     * Check if a file name belongs to the sharded layout
+     * @param name The file name without directory
+     * @return true for global.txt and shard files, false otherwise
+     */
+    public static boolean isStoreFileName(String name) {
+        return name.equals(GLOBAL_FILE) || name.endsWith(SHARD_SUFFIX);
+    }
+
+    /**
+     * Get the shard file used for a location
+     * @param location The location
+     * @return the shard file
+     */
+    public File getShardFile(String location) {
+        StringBuilder name = new StringBuilder();
+        for (int i = 0; i < location.length() && name.length() < 40; i++) {
+            char c = location.charAt(i);
+            name.append(Character.isLetterOrDigit(c) && c < 128 ? c : '_');
+        }
+        // The hash keeps locations apart that only differ in replaced characters
+        name.append('-').append(String.format("%08x", location.hashCode())).append(SHARD_SUFFIX);
+        return new File(directory, name.toString());
+    }
+
+    /**
+     * Load global.txt and the selected shards
+     * @param chunk Receives the parsed records
+     * @throws IOException if global.txt or a shard cannot be read
+     */
+    public void load(DataManager.TextChunk chunk) throws IOException {
+        if (!global.file.isFile()) {
+            throw new FileNotFoundException(global.file + " (No such file)");
+        }
+        global.lock.lock();
+        try {
+            char[] text = read(global);
+            DataManager.parseText(new RecordTokenizer(text, 0, text.length), "", chunk);
+        } finally {
+            global.lock.unlock();
+        }
+
+        loadedShards.clear();
+        if (selectedLocations == null) {
+            File[] files = directory.listFiles((dir, name) -> name.endsWith(SHARD_SUFFIX));
+            if (files != null) {
+                for (File file : files) {
+                    loadShard(file, chunk);
+                }
+            }
+        } else {
+            for (String location : selectedLocations) {
+                File file = getShardFile(location);
+                if (file.isFile()) {
+                    loadShard(file, chunk);
+                } else {
+                    // Nothing stored for this location yet, so the empty lists are complete
+                    loadedShards.add(location);
+                }
+            }
+        }
+    }
+
+    private void loadShard(File file, DataManager.TextChunk chunk) throws IOException {
+        Shard probe = new Shard(file);
+        char[] text = read(probe);
+        RecordTokenizer tokenizer = new RecordTokenizer(text, 0, text.length);
+        if (!tokenizer.nextLine() || !tokenizer.lineEquals(SHARD_HEADER) || !tokenizer.nextLine()) {
+            throw new IOException("Missing shard header in " + file);
+        }
+        String location = tokenizer.line();
+
+        Shard shard = shardFor(location);
+        shard.lock.lock();
+        try {
+            // Parse from the line after the location
+            DataManager.parseText(tokenizer, "", chunk);
+            shard.checksum = probe.checksum;
+            loadedShards.add(location);
+        } finally {
+            shard.lock.unlock();
+        }
+    }
+
+    /**
+     * Write the shards of the changed locations, and global.txt if it changed
+     * Shards this instance has not read or written yet are written too, so switching an existing
+     * data set over to shards stores all of it.
+     * @param changedLocations Locations whose hives or tasks changed since the last load or save, or null to
+     *                         check every shard
+     * @return the number of files written
+     * @throws IOException if a file cannot be written
+     */
+    public int save(List<User> users, List<BeeHive> hives, List<Task> tasks, List<String> locations,
+                    Set<String> changedLocations) throws IOException {
+        // Whether each location's shard is written; only the records of those are grouped and formatted
+        Map<String, Boolean> written = new HashMap<>();
+        Map<String, List<BeeHive>> hivesByLocation = new LinkedHashMap<>();
+        for (BeeHive hive : hives) {
+            String location = hive.getLocation();
+            if (written.computeIfAbsent(location, key -> isDue(key, changedLocations))) {
+                hivesByLocation.computeIfAbsent(location, key -> new ArrayList<>()).add(hive);
+            }
+        }
+        Map<String, List<Task>> tasksByLocation = new LinkedHashMap<>();
+        for (Task task : tasks) {
+            String location = task.getLocation();
+            if (written.computeIfAbsent(location, key -> isDue(key, changedLocations))) {
+                tasksByLocation.computeIfAbsent(location, key -> new ArrayList<>()).add(task);
+            }
+        }
+
+        // Changed loaded shards are saved even when empty, so moving the last hive out of a location is stored
+        Set<String> touched = new LinkedHashSet<>(hivesByLocation.keySet());
+        touched.addAll(tasksByLocation.keySet());
+        for (String location : loadedShards) {
+            if (changedLocations == null || changedLocations.contains(location)) {
+                touched.add(location);
+            }
+        }
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        int count = 0;
+        Set<Integer> hiveIds = null;
+        Set<Integer> taskIds = null;
+        for (String location : touched) {
+            List<BeeHive> shardHives = hivesByLocation.getOrDefault(location, Collections.emptyList());
+            List<Task> shardTasks = tasksByLocation.getOrDefault(location, Collections.emptyList());
+            if (hiveIds == null && !loadedShards.contains(location)) {
+                // Merging into a shard that was not loaded needs every ID, to drop records that moved away
+                hiveIds = new HashSet<>();
+                for (BeeHive hive : hives) {
+                    hiveIds.add(hive.getId());
+                }
+                taskIds = new HashSet<>();
+                for (Task task : tasks) {
+                    taskIds.add(task.getId());
+                }
+            }
+            if (saveShard(location, shardHives, shardTasks, hiveIds, taskIds)) {
+                count++;
+            }
+        }
+
+        StringWriter text = new StringWriter();
+        PrintWriter writer = new PrintWriter(text);
+        DataManager.writeSections(writer, () -> { }, users, Collections.emptyList(), Collections.emptyList(), locations);
+        writer.flush();
+        global.lock.lock();
+        try (FileChannel channel = openLockFile(global)) {
+            // Released when the channel is closed
+            channel.lock();
+            if (writeIfChanged(global, text.toString())) {
+                count++;
+            }
+        } finally {
+            global.lock.unlock();
+        }
+        return count;
+    }
+
+    /**
+     * Check if the shard of a location has to be written
+     */
+    private boolean isDue(String location, Set<String> changedLocations) {
+        Shard shard = shards.get(location);
+        // Never read or written here: its file may be missing or older than the data
+        return changedLocations == null || changedLocations.contains(location) || shard == null || shard.checksum == -1;
+    }
+
+    private boolean saveShard(String location, List<BeeHive> hives, List<Task> tasks,
+                              Set<Integer> hiveIds, Set<Integer> taskIds) throws IOException {
+        Shard shard = shardFor(location);
+        shard.lock.lock();
+        // Other processes saving this location wait here, so a merge never reads a file that is being replaced
+        try (FileChannel channel = openLockFile(shard)) {
+            // Released when the channel is closed
+            channel.lock();
+            boolean merged = !loadedShards.contains(location) && shard.file.isFile();
+            if (merged) {
+                // This shard was not loaded: keep the records on disk that the lists don't hold
+                DataManager.TextChunk stored = new DataManager.TextChunk();
+                char[] text = read(new Shard(shard.file));
+                DataManager.parseText(new RecordTokenizer(text, 0, text.length), "", stored);
+                List<BeeHive> mergedHives = new ArrayList<>();
+                for (BeeHive hive : stored.hives) {
+                    if (!hiveIds.contains(hive.getId())) {
+                        mergedHives.add(hive);
+                    }
+                }
+                mergedHives.addAll(hives);
+                List<Task> mergedTasks = new ArrayList<>();
+                for (Task task : stored.tasks) {
+                    if (!taskIds.contains(task.getId())) {
+                        mergedTasks.add(task);
+                    }
+                }
+                mergedTasks.addAll(tasks);
+                hives = mergedHives;
+                tasks = mergedTasks;
+            }
+
+            StringWriter text = new StringWriter();
+            PrintWriter writer = new PrintWriter(text);
+            writer.println(SHARD_HEADER);
+            writer.println(location);
+            writer.println("===HIVES===");
+            DataManager.writeHives(writer, hives);
+            writer.println("===TASKS===");
+            DataManager.writeTasks(writer, tasks);
+            writer.flush();
+            boolean written = writeIfChanged(shard, text.toString());
+            if (!merged) {
+                // The shard on disk now holds exactly the records in the lists
+                loadedShards.add(location);
+            }
+            return written;
+        } finally {
+            shard.lock.unlock();
+        }
+    }
+
+    private boolean writeIfChanged(Shard shard, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        long checksum = checksum(bytes);
+        if (checksum == shard.checksum && shard.file.isFile()) {
+            unchangedCount.incrementAndGet();
+            return false;
+        }
+        shard.writer.commit(target -> Files.write(target.toPath(), bytes));
+        shard.checksum = checksum;
+        writtenCount.incrementAndGet();
+        return true;
+    }
+
+    private static FileChannel openLockFile(Shard shard) throws IOException {
+        return FileChannel.open(shard.lockFile.toPath(), StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+    }
+
+    private static char[] read(Shard shard) throws IOException {
+        byte[] bytes = Files.readAllBytes(shard.file.toPath());
+        shard.checksum = checksum(bytes);
+        return new String(bytes, StandardCharsets.UTF_8).toCharArray();
+    }
+
+    private static long checksum(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+        return crc.getValue();
+    }
+
+    private Shard shardFor(String location) {
+        return shards.computeIfAbsent(location, key -> new Shard(getShardFile(key)));
+    }
+
+    /**
+     * Get the newest modification time of the files in the store
+     * @return the newest modification time, or 0 if there are no files
+     */
+    public long getLastModified() {
+        long newest = 0;
+        File[] files = directory.listFiles((dir, name) -> isStoreFileName(name));
+        if (files != null) {
+            for (File file : files) {
+                newest = Math.max(newest, file.lastModified());
+            }
+        }
+        return newest;
+    }
+
+    /**
+     * Get a one-line summary of the shard counters
+     * @return the summary
+     */
+    public String getStatistics() {
+        return "Shards: " + shards.size() + ", loaded: " + loadedShards.size() + ", files written: " +
+                writtenCount.get() + ", unchanged: " + unchangedCount.get();
+    }
+
+    /**
+     * One file of the store with its own locks: one for the threads of this process, and a lock
+     * file for other processes
+     */
+    private static class Shard {
+        final File file;
+        final File lockFile;
+        final ReentrantLock lock = new ReentrantLock();
+        final GroupCommitWriter writer;
+        // CRC32 of the contents last read or written, -1 if unknown
+        volatile long checksum = -1;
+
+        Shard(File file) {
+            this.file = file;
+            String name = file.getName();
+            int dot = name.lastIndexOf('.');
+            this.lockFile = new File(file.getParentFile(), (dot > 0 ? name.substring(0, dot) : name) + LOCK_SUFFIX);
+            this.writer = new GroupCommitWriter(file);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * SnapshotList is an immutable list handed out by Hives and Tasks
+ * The owner builds one when its contents change and returns the same instance to every caller
+ * until the next change, so reading the list costs nothing. The version tells callers
+ * whether two snapshots were taken from the same state.
+ * @param <E> The element type
+ */
+public final class SnapshotList<E> extends AbstractList<E> implements RandomAccess {
+    private final Object[] elements;
+    private final long version;
+
+    /**
+     * Constructor for SnapshotList
+     * @param elements The elements; the array must not be changed or handed out afterwards
+     * @param version The owner's version when the snapshot was taken
+     */
+    SnapshotList(Object[] elements, long version) {
+        this.elements = elements;
+        this.version = version;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E get(int index) {
+        return (E) elements[index];
+    }
+
+    @Override
+    public int size() {
+        return elements.length;
+    }
+
+    /**
+     * Get the version of the owner's contents this snapshot shows
+     * @return the version
+     */
+    public long getVersion() {
+        return version;
+    }
+}
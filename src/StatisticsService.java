@@ -0,0 +1,93 @@
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * StatisticsService builds the statistics screen from the running counters of Hives and Tasks
+ * The report is cached together with the version stamps it was built from, so refreshing
+ * the screen returns the same text until a user, hive, task or location changes.
+ */
+public class StatisticsService {
+    private final List<User> users;
+    private final Hives hivesManager;
+    private final Tasks tasksManager;
+    private final List<String> locations;
+
+    private String cachedReport;
+    private long[] cachedStamp = new long[0];
+    private int buildCount = 0;
+
+    /**
+     * Constructor for StatisticsService
+     * @param locations The location list shown in the distribution, in display order
+     */
+    public StatisticsService(List<User> users, Hives hivesManager, Tasks tasksManager, List<String> locations) {
+        this.users = users;
+        this.hivesManager = hivesManager;
+        this.tasksManager = tasksManager;
+        this.locations = locations;
+    }
+
+    /**
+     * Get the statistics report, rebuilding it only if the data changed since the last call
+     * Synchronized, so sessions refreshing the screen together build the report once
+     * @return the report text
+     */
+    public synchronized String getReport() {
+        long[] stamp = currentStamp();
+        if (cachedReport == null || !Arrays.equals(stamp, cachedStamp)) {
+            cachedReport = buildReport();
+            cachedStamp = stamp;
+            buildCount++;
+        }
+        return cachedReport;
+    }
+
+    /**
+     * Get how often the report was rebuilt, to check that refreshes hit the cache
+     * @return the number of builds
+     */
+    public synchronized int getBuildCount() {
+        return buildCount;
+    }
+
+    /**
+     * Everything the report depends on; each value is read from a counter, so this never scans
+     * The overdue count is included because tasks become overdue with time, not only on changes
+     */
+    private long[] currentStamp() {
+        return new long[]{users.size(), locations.size(), hivesManager.getVersion(),
+                hivesManager.getStatisticsVersion(), tasksManager.getVersion(),
+                tasksManager.getTaskCount(TaskStatus.PENDING), tasksManager.getTaskCount(TaskStatus.COMPLETED),
+                tasksManager.getOverdueCount()};
+    }
+
+    private String buildReport() {
+        StringBuilder report = new StringBuilder();
+        report.append("--- System Statistics ---\n");
+        report.append("Users: ").append(users.size()).append("\n");
+        report.append("Hives: ").append(hivesManager.getHiveCount()).append("\n");
+        report.append("Tasks: ").append(tasksManager.getTaskCount()).append("\n");
+        report.append("Locations: ").append(locations.size()).append("\n");
+        report.append("\n");
+
+        report.append("--- Hive Statistics ---\n");
+        report.append("Total Hives: ").append(hivesManager.getHiveCount()).append("\n");
+        report.append("Queenless Hives: ").append(hivesManager.getQueenlessCount()).append("\n");
+        report.append("Hives Needing Attention: ").append(hivesManager.getAttentionCount()).append("\n");
+        report.append("Location Distribution:\n");
+        for (String location : locations) {
+            LocationStatistics statistics = hivesManager.getLocationStatistics(location);
+            report.append("  ").append(location).append(": ").append(statistics.getHiveCount());
+            if (statistics.getHiveCount() > 0) {
+                report.append(String.format(" (avg honey %.1f%%, %d queenless, %d need attention)",
+                        statistics.getAverageHoneyLevel(), statistics.getQueenlessCount(),
+                        statistics.getAttentionCount()));
+            }
+            report.append("\n");
+        }
+
+        report.append("\n");
+        report.append(tasksManager.getTaskStatistics());
+        return report.toString();
+    }
+}
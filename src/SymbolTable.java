@@ -0,0 +1,76 @@
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * SymbolTable assigns small integer codes to strings that repeat across records,
+ * such as locations, tag colors and statuses
+ * Records keep the code, and every code resolves to one shared String, so 100k hives at
+ * "Forest Location" hold a single copy of the name. Lookups are lock-free; only adding
+ * a new string takes a lock, so parallel loading can intern concurrently.
+ */
+public class SymbolTable {
+    /**
+     * The table shared by all hives and tasks
+     */
+    public static final SymbolTable SHARED = new SymbolTable();
+
+    private final Map<String, Integer> codes = new ConcurrentHashMap<>();
+    private volatile String[] names = new String[16];
+    private int size = 0;
+
+    /**
+     * Get the code of a string, adding it to the table if it is new
+     * @param name The string
+     * @return the code
+     */
+    public int code(String name) {
+        Integer code = codes.get(name);
+        if (code != null) {
+            return code;
+        }
+        synchronized (this) {
+            code = codes.get(name);
+            if (code == null) {
+                code = size;
+                String[] current = names;
+                if (code == current.length) {
+                    current = Arrays.copyOf(current, current.length * 2);
+                }
+                current[code] = name;
+                // Publish the array before the code, so whoever sees the code can resolve it
+                names = current;
+                size++;
+                codes.put(name, code);
+            }
+            return code;
+        }
+    }
+
+    /**
+     * Get the code of a string without adding it
+     * @param name The string
+     * @return the code, or -1 if the string is not in the table
+     */
+    public int find(String name) {
+        Integer code = codes.get(name);
+        return code == null ? -1 : code;
+    }
+
+    /**
+     * Get the string for a code
+     * @param code A code returned by this table
+     * @return the shared string
+     */
+    public String name(int code) {
+        return names[code];
+    }
+
+    /**
+     * Get the number of strings in the table; codes run from 0 to size() - 1
+     * @return the number of strings
+     */
+    public synchronized int size() {
+        return size;
+    }
+}
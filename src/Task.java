@@ -1,20 +1,36 @@
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Task class represents a task in the beekeeping system
  * Tasks can be assigned to users and have various statuses
+ *
+ * Setters are synchronized on the task, so concurrent sessions editing one task take turns
+ * and its owner hears about the changes in order. Getters never lock: the fields are volatile.
+ * Like a hive, a task carries a version that every change bumps, and publishes the changes users
+ * make as DomainEvents through its owner (see BeeHive).
  */
 public class Task {
-    private static int nextId = 1;
-    private int id;
-    private String name;
-    private String description;
-    private String location;
-    private String status; // "pending", "in progress", "completed"
-    private LocalDateTime createdDate;
-    private LocalDateTime completedDate;
-    private String notes;
+    private static final AtomicInteger nextId = new AtomicInteger(1);
+    private volatile int id;
+    private volatile String name;
+    private volatile String description;
+    private volatile int locationCode; // SymbolTable code, shared with the hives at the same location
+    private volatile TaskStatus status;
+    private volatile LocalDateTime createdDate;
+    private volatile LocalDateTime completedDate;
+    private volatile String notes;
+    private volatile Tasks owner; // Tasks that indexes this task, if any
+    private volatile long version; // Bumped on every change, never goes down
+    // Data file bookkeeping, guarded by the task's lock
+    volatile long syncedVersion = -1; // Version last loaded from or saved to the data file, -1 if never
+    Task syncedState; // State at syncedVersion, kept from the first change after it for merging
+    private boolean merging; // Applying a merge, which sets the version itself
+    // Owner bookkeeping, guarded by the owner's lock
+    int ownerIndex = -1; // Position in the owner's list of tasks
+    Tasks.OverdueEntry overdueEntry; // Entry in the owner's overdue index while pending
 
     /**
      * Constructor for Task
@@ -23,15 +39,44 @@ public class Task {
      * @param location The location where the task should be performed
      */
     public Task(String name, String description, String location) {
-        this.id = nextId++;
+        this(nextId.getAndIncrement(), name, description, location);
+    }
+
+    /**
+     * Constructor for a task read back from the data file, the journal or a snapshot
+     * Keeps the stored ID without using up a new one, and only ever raises the next ID past it.
+     * @param id The stored ID
+     * @param name The name of the task
+     * @param description The description of the task
+     * @param location The location where the task should be performed
+     */
+    Task(int id, String name, String description, String location) {
+        this.id = id;
+        nextId.accumulateAndGet(id + 1, Math::max);
         this.name = name;
         this.description = description;
-        this.location = location;
-        this.status = "pending";
+        this.locationCode = SymbolTable.SHARED.code(location);
+        this.status = TaskStatus.PENDING;
         this.createdDate = LocalDateTime.now();
         this.notes = "";
     }
 
+    /**
+     * Constructor for detached copies, which does not use up an ID
+     * @param other The task to copy
+     */
+    private Task(Task other) {
+        this.id = other.id;
+        this.name = other.name;
+        this.description = other.description;
+        this.locationCode = other.locationCode;
+        this.status = other.status;
+        this.createdDate = other.createdDate;
+        this.completedDate = other.completedDate;
+        this.notes = other.notes;
+        this.version = other.version;
+    }
+
     // Getter methods
     public int getId() {
         return id;
@@ -46,10 +91,18 @@ public class Task {
     }
 
     public String getLocation() {
-        return location;
+        return SymbolTable.SHARED.name(locationCode);
     }
 
+    /**
+     * Get the status label, as written to the data file
+     * @return the status label, e.g. "pending"
+     */
     public String getStatus() {
+        return status.getLabel();
+    }
+
+    public TaskStatus getTaskStatus() {
         return status;
     }
 
@@ -65,47 +118,92 @@ public class Task {
         return notes;
     }
 
+    /**
+     * Get the version of the task's state
+     * @return a number that grows with every change
+     */
+    public long getVersion() {
+        return version;
+    }
+
     // Setter methods
-    public void setId(int id) {
+    public synchronized void setId(int id) {
+        int previous = this.id;
         this.id = id;
         // Update nextId if necessary
-        if (id >= nextId) {
-            nextId = id + 1;
+        nextId.accumulateAndGet(id + 1, Math::max);
+        if (owner != null && previous != id) {
+            owner.idChanged(this, previous);
+        }
+    }
+
+    public synchronized void setCreatedDate(LocalDateTime createdDate) {
+        this.createdDate = createdDate;
+        if (owner != null) {
+            owner.overdueKeyChanged(this);
         }
     }
 
-    public void setName(String name) {
+    public synchronized void setName(String name) {
+        touch();
         this.name = name;
+        // The name selects the overdue threshold
+        if (owner != null) {
+            owner.overdueKeyChanged(this);
+        }
+        publish(DomainEvent.Type.TASK_CHANGED, null);
     }
 
-    public void setDescription(String description) {
+    public synchronized void setDescription(String description) {
+        touch();
         this.description = description;
+        publish(DomainEvent.Type.TASK_CHANGED, null);
     }
 
-    public void setLocation(String location) {
-        this.location = location;
+    public synchronized void setLocation(String location) {
+        touch();
+        this.locationCode = SymbolTable.SHARED.code(location);
+        publish(DomainEvent.Type.TASK_CHANGED, null);
     }
 
-    public void setNotes(String notes) {
+    public synchronized void setNotes(String notes) {
+        touch();
         this.notes = notes;
+        publish(DomainEvent.Type.TASK_CHANGED, null);
+    }
+
+    /**
+     * Set the status of the task from its label
+     * @param status The new status label, e.g. "in progress"
+     * @throws IllegalArgumentException if the label is not a known status
+     */
+    public void setStatus(String status) {
+        setStatus(TaskStatus.parse(status));
     }
 
     /**
      * Set the status of the task
      * @param status The new status
      */
-    public void setStatus(String status) {
+    public synchronized void setStatus(TaskStatus status) {
+        TaskStatus previous = this.status;
+        touch();
         this.status = status;
-        if (status.equals("completed") && completedDate == null) {
+        if (status == TaskStatus.COMPLETED && completedDate == null) {
             completedDate = LocalDateTime.now();
         }
+        if (owner != null && previous != status) {
+            owner.statusChanged(this, previous);
+        }
+        publish(status == TaskStatus.COMPLETED ? DomainEvent.Type.TASK_COMPLETED : DomainEvent.Type.TASK_STATUS_CHANGED,
+                status.getLabel());
     }
 
     /**
      * Mark the task as completed
      */
-    public void complete() {
-        setStatus("completed");
+    public synchronized void complete() {
+        setStatus(TaskStatus.COMPLETED);
         completedDate = LocalDateTime.now();
     }
 
@@ -113,12 +211,98 @@ public class Task {
      * Add notes to the task
      * @param notes Additional notes to add
      */
-    public void addNotes(String notes) {
+    public synchronized void addNotes(String notes) {
+        touch();
         if (this.notes.isEmpty()) {
             this.notes = notes;
         } else {
             this.notes += "; " + notes;
         }
+        publish(DomainEvent.Type.TASK_CHANGED, null);
+    }
+
+    /**
+     * Copy all state except the ID and dates from another task, e.g. after a reload
+     * @param other The task to copy from
+     */
+    public synchronized void copyStateFrom(Task other) {
+        setName(other.name);
+        setDescription(other.description);
+        setLocation(other.getLocation());
+        setStatus(other.status);
+        setNotes(other.notes);
+    }
+
+    /**
+     * Make a detached copy with the same ID, state, dates and version, e.g. to save or merge it
+     * The copy has no owner and does not use up an ID
+     * @return the copy
+     */
+    synchronized Task copy() {
+        return new Task(this);
+    }
+
+    /**
+     * Get the task as it has to be saved: itself while unchanged since the last load or save,
+     * otherwise a copy, so the saved state and the version saved with it always match
+     * @return this task or a detached copy of it
+     */
+    synchronized Task stateToSave() {
+        return version == syncedVersion ? this : copy();
+    }
+
+    /**
+     * Get the location the data file holds this task at
+     * @return the location at the synced version, or null if the task was never loaded or saved
+     */
+    synchronized String getSyncedLocation() {
+        if (syncedVersion < 0) {
+            return null;
+        }
+        return syncedState != null ? syncedState.getLocation() : getLocation();
+    }
+
+    /**
+     * Replace the state with the result of a merge, without counting it as a change of this task
+     * @param merged The merged state
+     * @param version The version of the merged state, higher than the current version
+     */
+    synchronized void applyMerge(Task merged, long version) {
+        merging = true;
+        try {
+            copyStateFrom(merged);
+        } finally {
+            merging = false;
+        }
+        this.version = version;
+    }
+
+    /**
+     * Set the version the task was saved with, when loading it
+     * @param version The saved version
+     */
+    void setVersion(long version) {
+        this.version = version;
+    }
+
+    /**
+     * Record that the data file holds this task at a version
+     * @param syncedVersion The version that was loaded, saved or merged in
+     * @param syncedState The state at that version, needed only if the task has changed since
+     */
+    synchronized void markSynced(long syncedVersion, Task syncedState) {
+        this.syncedVersion = syncedVersion;
+        this.syncedState = version == syncedVersion ? null : syncedState;
+    }
+
+    /**
+     * Check if another task holds the same state, ignoring the ID and dates
+     * @param other The task to compare with
+     * @return true if every field matches, false otherwise
+     */
+    public boolean hasSameStateAs(Task other) {
+        return name.equals(other.name) && description.equals(other.description) &&
+                locationCode == other.locationCode && status == other.status && notes.equals(other.notes);
     }
 
     /**
@@ -126,9 +310,17 @@ public class Task {
      * @return true if the task is overdue, false otherwise
      */
     public boolean isOverdue() {
-        // For simplicity, we'll consider tasks overdue if they're pending for more than 7 days
-        return status.equals("pending") &&
-                createdDate.isBefore(LocalDateTime.now().minusDays(7));
+        return isOverdueAt(LocalDateTime.now());
+    }
+
+    /**
+     * Check if the task is overdue at a given time
+     * @param now The time to check against
+     * @return true if the task is pending for longer than its overdue threshold, false otherwise
+     */
+    boolean isOverdueAt(LocalDateTime now) {
+        Duration threshold = owner != null ? owner.getOverdueThreshold(name) : Tasks.DEFAULT_OVERDUE_THRESHOLD;
+        return status == TaskStatus.PENDING && createdDate.plus(threshold).isBefore(now);
     }
 
     /**
@@ -151,12 +343,56 @@ public class Task {
         }
     }
 
+    /**
+     * Bump the version before a change is stored, first keeping the synced state if this is the
+     * first change since the last load or save
+     */
+    private void touch() {
+        if (merging) {
+            return;
+        }
+        if (version == syncedVersion) {
+            syncedState = copy();
+        }
+        version++;
+    }
+
+    /**
+     * Publish a change through the owner, unless it is part of a merge
+     */
+    private void publish(DomainEvent.Type type, String text) {
+        Tasks owner = this.owner;
+        if (owner != null && !merging) {
+            owner.publish(type, id, text, version);
+        }
+    }
+
+    /**
+     * Set the Tasks that indexes this task and has to hear about status changes
+     * @param owner The owning Tasks, or null when the task is removed
+     */
+    void setOwner(Tasks owner) {
+        this.owner = owner;
+    }
+
+    Tasks getOwner() {
+        return owner;
+    }
+
     /**
      * Get the next available ID
      * @return the next ID
      */
     public static int getNextId() {
-        return nextId;
+        return nextId.get();
+    }
+
+    /**
+     * Use up the next available ID, e.g. to give a record a new ID
+     * @return the ID, which no other record gets
+     */
+    static int takeNextId() {
+        return nextId.getAndIncrement();
     }
 
     /**
@@ -164,7 +400,15 @@ public class Task {
      * @param nextId the next ID to set
      */
     public static void setNextId(int nextId) {
-        Task.nextId = nextId;
+        Task.nextId.set(nextId);
+    }
+
+    /**
+     * Raise the next available ID, never lowering it
+     * @param nextId the lowest ID that may be handed out next
+     */
+    static void raiseNextId(int nextId) {
+        Task.nextId.accumulateAndGet(nextId, Math::max);
     }
 
     @Override
@@ -172,7 +416,7 @@ public class Task {
         return "Task{" +
                 "id=" + id +
                 ", name='" + name + '\'' +
-                ", location='" + location + '\'' +
+                ", location='" + getLocation() + '\'' +
                 ", status='" + status + '\'' +
                 ", createdDate=" + getFormattedCreatedDate() +
                 '}';
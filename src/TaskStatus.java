@@ -0,0 +1,55 @@
+/**
+ * TaskStatus lists the states a task can be in
+ * The label is the text used in the data file, the journal and on screen
+ */
+public enum TaskStatus {
+    PENDING("pending"),
+    IN_PROGRESS("in progress"),
+    COMPLETED("completed");
+
+    private final String label;
+
+    TaskStatus(String label) {
+        this.label = label;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    /**
+     * Parse a status label, ignoring case and accepting '-' or '_' for spaces
+     * @param text The label, e.g. "in progress"
+     * @return the status
+     * @throws IllegalArgumentException if the text is not a known status
+     */
+    public static TaskStatus parse(String text) {
+        String normalized = text.trim().toLowerCase().replace('-', ' ').replace('_', ' ');
+        for (TaskStatus status : values()) {
+            if (status.label.equals(normalized)) {
+                return status;
+            }
+        }
+        throw new IllegalArgumentException("Unknown task status: " + text);
+    }
+
+    /**
+     * Parse a status label read from the data file, a snapshot or the journal
+     * An unknown label, e.g. one written by a newer version, is read as PENDING so the task is kept.
+     * @param text The stored label
+     * @return the status, or PENDING if the label is not known
+     */
+    public static TaskStatus parseStored(String text) {
+        try {
+            return parse(text);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Warning: unknown task status '" + text + "', reading it as " + PENDING.label);
+            return PENDING;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return label;
+    }
+}
@@ -1,28 +1,199 @@
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
 
+/**
+ * Tasks class holds all tasks, indexes them by ID and keeps them in one bucket per status
+ * Tasks notify their owning Tasks when their status changes, so counts and per-status
+ * lists come straight from the buckets.
+ * Pending tasks are also kept ordered by the time they become overdue, so overdue queries
+ * read the front of that order instead of checking every task.
+ *
+ * Tasks is safe to share between sessions. One lock guards the list and every index; readers
+ * try an optimistic read first and only wait if a writer got in the way. Overdue queries walk the
+ * overdue index under the shared read lock, and only move the overdue cutoff forward, without
+ * waiting, once many tasks became overdue since it last moved. Locks are taken in the order: task,
+ * then Tasks.
+ */
 public class Tasks {
+    static final Duration DEFAULT_OVERDUE_THRESHOLD = Duration.ofDays(7);
+    // An overdue count that walks this many entries past the cutoff tries to move the cutoff
+    private static final int OVERDUE_CATCH_UP = 64;
+
+    private final StampedLock lock = new StampedLock();
+    // Tasks in the order they were added; removed tasks leave a null until the list is compacted
     private List<Task> tasks;
+    private int removedCount = 0;
+    private IntObjectMap<Task> tasksById;
+    // Removed tasks that the data file still holds, by ID, until a save writes it without them
+    private final IntObjectMap<Task> removedSinceSave = new IntObjectMap<>();
+    private Map<TaskStatus, List<Task>> tasksByStatus;
+    // Per status, indexed by ordinal: bumped whenever the bucket changes, and the last snapshot handed out
+    private final long[] statusVersions = new long[TaskStatus.values().length];
+    private final SnapshotList<?>[] statusSnapshots = new SnapshotList<?>[TaskStatus.values().length];
+
+    private volatile Duration defaultOverdueThreshold = DEFAULT_OVERDUE_THRESHOLD;
+    private final Map<String, Duration> overdueThresholds = new ConcurrentHashMap<>();
+    private NavigableSet<OverdueEntry> pendingByDueTime = new TreeSet<>();
+    private long nextEntrySequence = 0;
+    private volatile Clock clock = Clock.systemDefaultZone();
+    // Entries due before the cutoff are counted in overdueCount
+    private LocalDateTime overdueCutoff = LocalDateTime.MIN;
+    private int overdueCount = 0;
+    private volatile boolean consistencyCheck = false;
+    private volatile DomainEventLog eventLog; // Where task changes are published, if anywhere
+    // Bumped whenever a task is added or removed
+    private volatile long version = 0;
+    private volatile int taskCount = 0;
+    private volatile SnapshotList<Task> tasksSnapshot = new SnapshotList<>(new Object[0], 0);
 
     public Tasks() {
         this.tasks = new ArrayList<>();
+        this.tasksById = new IntObjectMap<>();
+        this.tasksByStatus = new EnumMap<>(TaskStatus.class);
+        for (TaskStatus status : TaskStatus.values()) {
+            tasksByStatus.put(status, new ArrayList<>());
+        }
     }
 
     public void addTask(Task task) {
-        tasks.add(task);
+        synchronized (task) {
+            Tasks previousOwner = task.getOwner();
+            if (previousOwner != null) {
+                previousOwner.removeTask(task);
+            }
+            long stamp = lock.writeLock();
+            try {
+                task.ownerIndex = tasks.size();
+                tasks.add(task);
+                taskCount++;
+                task.setOwner(this);
+                changed();
+                tasksById.put(task.getId(), task);
+                removedSinceSave.remove(task.getId());
+                addToStatus(task, task.getTaskStatus());
+                indexOverdue(task);
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
     }
 
-    public void addTask(String name, String description, String location) {
-        tasks.add(new Task(name, description, location));
+    public Task addTask(String name, String description, String location) {
+        Task task = new Task(name, description, location);
+        addTask(task);
+        publish(DomainEvent.Type.TASK_ADDED, task.getId(), null, task.getVersion());
+        return task;
     }
 
+    /**
+     * Get all tasks, in the order they were added
+     * @return a read-only snapshot, the same instance until a task is added or removed
+     */
     public List<Task> getAllTasks() {
-        return new ArrayList<>(tasks);
+        SnapshotList<Task> snapshot = tasksSnapshot;
+        if (snapshot.getVersion() != version) {
+            snapshot = OptimisticRead.read(lock, () -> {
+                Object[] live = new Object[taskCount];
+                int i = 0;
+                for (Task task : tasks) {
+                    if (task != null) {
+                        live[i++] = task;
+                    }
+                }
+                return new SnapshotList<Task>(live, version);
+            });
+            // A racing reader may publish an older snapshot; the version check above then rebuilds it
+            tasksSnapshot = snapshot;
+        }
+        return snapshot;
+    }
+
+    /**
+     * Get the version of the task list
+     * @return a number that changes whenever a task is added or removed
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Get a task by its ID
+     * @param id The task ID
+     * @return the task, or null if there is no task with that ID
+     */
+    public Task getTask(int id) {
+        return OptimisticRead.read(lock, () -> tasksById.get(id));
+    }
+
+    /**
+     * Change a task only if nobody has changed it since the caller read it (compare-and-set)
+     * The version check and the update run under the task's lock, so no other change gets in between
+     * @param id The task ID
+     * @param expectedVersion The version the caller read, see Task.getVersion
+     * @param update Makes the change through the task's setters
+     * @return true if the task was updated, false if there is no such task or its version has moved on
+     */
+    public boolean updateTask(int id, long expectedVersion, Consumer<Task> update) {
+        Task task = getTask(id);
+        if (task == null) {
+            return false;
+        }
+        synchronized (task) {
+            if (task.getOwner() != this || task.getId() != id || task.getVersion() != expectedVersion) {
+                return false;
+            }
+            update.accept(task);
+            return true;
+        }
+    }
+
+    /**
+     * Get a task removed since the last save, if the data file still holds it
+     * @param id The task ID
+     * @return the removed task, or null if there is none with that ID
+     */
+    Task getRemovedTask(int id) {
+        return OptimisticRead.read(lock, () -> removedSinceSave.get(id));
+    }
+
+    /**
+     * Get every task removed since the last save that the data file still holds
+     * @return a new list of the removed tasks
+     */
+    List<Task> getRemovedTasks() {
+        return OptimisticRead.read(lock, removedSinceSave::values);
+    }
+
+    /**
+     * Forget removed tasks once a save has written the data file without them
+     * @param saved The removed tasks as returned by getRemovedTasks before the save
+     */
+    void forgetRemovedTasks(List<Task> saved) {
+        long stamp = lock.writeLock();
+        try {
+            for (Task task : saved) {
+                removedSinceSave.remove(task.getId(), task);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
     }
 
     public List<Task> getTasksByLocation(String location) {
+        List<Task> all = getAllTasks();
         List<Task> result = new ArrayList<>();
-        for (Task task : tasks) {
+        for (Task task : all) {
             if (task.getLocation().equals(location)) {
                 result.add(task);
             }
@@ -30,49 +201,424 @@ public class Tasks {
         return result;
     }
 
+    /**
+     * Get the tasks with a status
+     * @param status The status
+     * @return a read-only snapshot of the status bucket, the same instance until a task enters or leaves it
+     */
+    @SuppressWarnings("unchecked")
+    public List<Task> getTasksByStatus(TaskStatus status) {
+        int index = status.ordinal();
+        SnapshotList<Task> snapshot = (SnapshotList<Task>) statusSnapshots[index];
+        long stamp = lock.tryOptimisticRead();
+        if (snapshot == null || snapshot.getVersion() != statusVersions[index] || !lock.validate(stamp)) {
+            snapshot = OptimisticRead.read(lock,
+                    () -> new SnapshotList<Task>(tasksByStatus.get(status).toArray(), statusVersions[index]));
+            // Snapshots are immutable, so publishing one without a lock is safe
+            statusSnapshots[index] = snapshot;
+        }
+        return snapshot;
+    }
+
+    /**
+     * Get the tasks with a status label
+     * @param status The status label, e.g. "pending"
+     * @return a read-only snapshot of the status bucket, empty for unknown labels
+     */
     public List<Task> getTasksByStatus(String status) {
-        List<Task> result = new ArrayList<>();
-        for (Task task : tasks) {
-            if (task.getStatus().equals(status)) {
-                result.add(task);
-            }
+        try {
+            return getTasksByStatus(TaskStatus.parse(status));
+        } catch (IllegalArgumentException e) {
+            return Collections.emptyList();
         }
-        return result;
+    }
+
+    public int getTaskCount(TaskStatus status) {
+        return OptimisticRead.read(lock, () -> tasksByStatus.get(status).size());
     }
 
     public List<Task> getPendingTasks() {
-        return getTasksByStatus("pending");
+        return getTasksByStatus(TaskStatus.PENDING);
     }
 
     public List<Task> getCompletedTasks() {
-        return getTasksByStatus("completed");
+        return getTasksByStatus(TaskStatus.COMPLETED);
     }
 
+    /**
+     * Get the overdue tasks, read from the front of the overdue index
+     * @return the overdue tasks, the longest overdue first
+     */
     public List<Task> getOverdueTasks() {
-        List<Task> result = new ArrayList<>();
+        LocalDateTime now = LocalDateTime.now(clock);
+        if (consistencyCheck) {
+            checkOverdueIndexAt(now);
+        }
+        long stamp = lock.readLock();
+        try {
+            List<Task> result = new ArrayList<>(overdueCount);
+            for (OverdueEntry entry : pendingByDueTime.headSet(OverdueEntry.probe(now), false)) {
+                result.add(entry.task);
+            }
+            return result;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Get the number of overdue tasks, counting only the tasks that became overdue since the cutoff
+     * Runs under the read lock, so queries from many sessions don't wait for each other. Once the part
+     * counted on every query grows long, the cutoff is moved forward: right away when no other reader
+     * holds the lock, otherwise under a short write lock after the count.
+     * @return the number of overdue tasks
+     */
+    public int getOverdueCount() {
+        LocalDateTime now = LocalDateTime.now(clock);
+        if (consistencyCheck) {
+            checkOverdueIndexAt(now);
+        }
+        int count;
+        // The cutoff this query counted from, if it is due to move but other readers held the lock
+        LocalDateTime staleCutoff = null;
+        long stamp = lock.readLock();
+        try {
+            int walked;
+            if (now.isBefore(overdueCutoff)) {
+                // The clock went back: count from scratch
+                walked = pendingByDueTime.headSet(OverdueEntry.probe(now), false).size();
+                count = walked;
+            } else {
+                walked = pendingByDueTime.subSet(OverdueEntry.probe(overdueCutoff), true,
+                        OverdueEntry.probe(now), false).size();
+                count = overdueCount + walked;
+            }
+            if (walked >= OVERDUE_CATCH_UP) {
+                long writeStamp = lock.tryConvertToWriteLock(stamp);
+                if (writeStamp != 0) {
+                    stamp = writeStamp;
+                    overdueCount = count;
+                    overdueCutoff = now;
+                } else {
+                    staleCutoff = overdueCutoff;
+                }
+            }
+        } finally {
+            lock.unlock(stamp);
+        }
+        if (staleCutoff != null) {
+            stamp = lock.writeLock();
+            try {
+                // Unless another query moved the cutoff in the meantime
+                if (overdueCutoff.equals(staleCutoff)) {
+                    advanceOverdueCutoff(now);
+                }
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+        return count;
+    }
+
+    private void checkOverdueIndexAt(LocalDateTime now) {
+        long stamp = lock.writeLock();
+        try {
+            checkOverdueIndex(now);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private void advanceOverdueCutoff(LocalDateTime now) {
+        if (now.isBefore(overdueCutoff)) {
+            // The clock went back: count from scratch
+            overdueCount = pendingByDueTime.headSet(OverdueEntry.probe(now), false).size();
+        } else {
+            overdueCount += pendingByDueTime.subSet(OverdueEntry.probe(overdueCutoff), true,
+                    OverdueEntry.probe(now), false).size();
+        }
+        overdueCutoff = now;
+    }
+
+    /**
+     * Set how long tasks with a given name may stay pending before they are overdue
+     * @param taskName The task name, which serves as the task type, e.g. "Harvest Honey"
+     * @param threshold The time after creation at which the task is overdue
+     */
+    public void setOverdueThreshold(String taskName, Duration threshold) {
+        long stamp = lock.writeLock();
+        try {
+            overdueThresholds.put(taskName, threshold);
+            rebuildOverdueIndex();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Set how long tasks without their own threshold may stay pending before they are overdue
+     * @param threshold The time after creation at which the task is overdue, 7 days by default
+     */
+    public void setDefaultOverdueThreshold(Duration threshold) {
+        long stamp = lock.writeLock();
+        try {
+            defaultOverdueThreshold = threshold;
+            rebuildOverdueIndex();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public Duration getOverdueThreshold(String taskName) {
+        return overdueThresholds.getOrDefault(taskName, defaultOverdueThreshold);
+    }
+
+    /**
+     * Set the clock used for overdue queries
+     * @param clock The clock, the system clock by default
+     */
+    public void setClock(Clock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Compare the overdue index with a full scan on every overdue query
+     * @param consistencyCheck true to check the index, false to trust it
+     */
+    public void setConsistencyCheck(boolean consistencyCheck) {
+        this.consistencyCheck = consistencyCheck;
+    }
+
+    /**
+     * Publish tasks created here and every change users make to the tasks to an event log
+     * @param eventLog The log, or null to stop publishing
+     */
+    public void setEventLog(DomainEventLog eventLog) {
+        this.eventLog = eventLog;
+    }
+
+    /**
+     * Compare the overdue count with a full scan of all tasks, rebuilding the index if it differs
+     * Called holding the write lock; moves the overdue cutoff to the time checked
+     * @param now The time to check against
+     * @return true if the index was correct, false otherwise
+     */
+    boolean checkOverdueIndex(LocalDateTime now) {
+        advanceOverdueCutoff(now);
+        int expected = 0;
         for (Task task : tasks) {
-            if (task.isOverdue()) {
-                result.add(task);
+            if (task != null && task.isOverdueAt(now)) {
+                expected++;
             }
         }
-        return result;
+        if (expected == overdueCount && pendingByDueTime.size() == tasksByStatus.get(TaskStatus.PENDING).size()) {
+            return true;
+        }
+        System.err.println("Overdue index out of date: " + overdueCount + " tasks counted, " +
+                expected + " found by scanning");
+        rebuildOverdueIndex();
+        advanceOverdueCutoff(now);
+        return false;
     }
 
     public int getTaskCount() {
-        return tasks.size();
+        return taskCount;
     }
 
     public void removeTask(Task task) {
-        tasks.remove(task);
+        remove(task);
+    }
+
+    /**
+     * Remove a task by its ID
+     * @param id The task ID
+     * @return the removed task, or null if there is no task with that ID
+     */
+    public Task removeTask(int id) {
+        Task task = getTask(id);
+        return task != null && remove(task) ? task : null;
+    }
+
+    private boolean remove(Task task) {
+        synchronized (task) {
+            if (task.getOwner() != this) {
+                return false;
+            }
+            long stamp = lock.writeLock();
+            try {
+                tasks.set(task.ownerIndex, null);
+                task.ownerIndex = -1;
+                taskCount--;
+                changed();
+                // Compact once half the list is holes, so removal stays O(1) on average
+                if (++removedCount > tasks.size() / 2) {
+                    compact();
+                }
+                tasksById.remove(task.getId(), task);
+                if (task.syncedVersion >= 0) {
+                    removedSinceSave.put(task.getId(), task);
+                }
+                removeFromStatus(task, task.getTaskStatus());
+                unindexOverdue(task);
+                task.setOwner(null);
+                return true;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+    }
+
+    /**
+     * Re-key a task whose ID changed, called by Task.setId
+     * @param task The task that changed
+     * @param previousId The ID it had before
+     */
+    void idChanged(Task task, int previousId) {
+        long stamp = lock.writeLock();
+        try {
+            tasksById.remove(previousId, task);
+            tasksById.put(task.getId(), task);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private void changed() {
+        version++;
+    }
+
+    private void compact() {
+        List<Task> live = new ArrayList<>(taskCount);
+        for (Task task : tasks) {
+            if (task != null) {
+                task.ownerIndex = live.size();
+                live.add(task);
+            }
+        }
+        tasks = live;
+        removedCount = 0;
+    }
+
+    /**
+     * Publish a change to a task, called by Task
+     */
+    void publish(DomainEvent.Type type, int taskId, String text, long version) {
+        DomainEventLog eventLog = this.eventLog;
+        if (eventLog != null) {
+            eventLog.publish(type, taskId, text, 0, version);
+        }
+    }
+
+    /**
+     * Move a task to the bucket of its new status, called by Task.setStatus
+     * @param task The task that changed
+     * @param previous The status it had before
+     */
+    void statusChanged(Task task, TaskStatus previous) {
+        long stamp = lock.writeLock();
+        try {
+            removeFromStatus(task, previous);
+            addToStatus(task, task.getTaskStatus());
+            unindexOverdue(task);
+            indexOverdue(task);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Re-file a task whose creation date or name changed, called by Task
+     * @param task The task that changed
+     */
+    void overdueKeyChanged(Task task) {
+        long stamp = lock.writeLock();
+        try {
+            unindexOverdue(task);
+            indexOverdue(task);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private void addToStatus(Task task, TaskStatus status) {
+        tasksByStatus.get(status).add(task);
+        statusVersions[status.ordinal()]++;
+    }
+
+    private void removeFromStatus(Task task, TaskStatus status) {
+        tasksByStatus.get(status).remove(task);
+        statusVersions[status.ordinal()]++;
+    }
+
+    private void indexOverdue(Task task) {
+        if (task.getTaskStatus() != TaskStatus.PENDING) {
+            return;
+        }
+        LocalDateTime dueTime = task.getCreatedDate().plus(getOverdueThreshold(task.getName()));
+        OverdueEntry entry = new OverdueEntry(dueTime, nextEntrySequence++, task);
+        task.overdueEntry = entry;
+        pendingByDueTime.add(entry);
+        if (dueTime.isBefore(overdueCutoff)) {
+            overdueCount++;
+        }
+    }
+
+    private void unindexOverdue(Task task) {
+        OverdueEntry entry = task.overdueEntry;
+        if (entry == null) {
+            return;
+        }
+        task.overdueEntry = null;
+        if (pendingByDueTime.remove(entry) && entry.dueTime.isBefore(overdueCutoff)) {
+            overdueCount--;
+        }
+    }
+
+    private void rebuildOverdueIndex() {
+        pendingByDueTime.clear();
+        overdueCutoff = LocalDateTime.MIN;
+        overdueCount = 0;
+        for (Task task : tasksByStatus.get(TaskStatus.PENDING)) {
+            task.overdueEntry = null;
+            indexOverdue(task);
+        }
     }
 
     public String getTaskStatistics() {
         StringBuilder stats = new StringBuilder();
         stats.append("=== Task Statistics ===\n");
         stats.append("Total Tasks: ").append(getTaskCount()).append("\n");
-        stats.append("Pending Tasks: ").append(getPendingTasks().size()).append("\n");
-        stats.append("Completed Tasks: ").append(getCompletedTasks().size()).append("\n");
-        stats.append("Overdue Tasks: ").append(getOverdueTasks().size()).append("\n");
+        stats.append("Pending Tasks: ").append(getTaskCount(TaskStatus.PENDING)).append("\n");
+        stats.append("Completed Tasks: ").append(getTaskCount(TaskStatus.COMPLETED)).append("\n");
+        stats.append("Overdue Tasks: ").append(getOverdueCount()).append("\n");
         return stats.toString();
     }
-}
\ No newline at end of file
+
+    /**
+     * A pending task filed under the time it becomes overdue
+     */
+    static class OverdueEntry implements Comparable<OverdueEntry> {
+        final LocalDateTime dueTime;
+        final long sequence;
+        final Task task;
+
+        OverdueEntry(LocalDateTime dueTime, long sequence, Task task) {
+            this.dueTime = dueTime;
+            this.sequence = sequence;
+            this.task = task;
+        }
+
+        /**
+         * Create a search key that sorts before every entry due at the given time
+         */
+        static OverdueEntry probe(LocalDateTime dueTime) {
+            return new OverdueEntry(dueTime, Long.MIN_VALUE, null);
+        }
+
+        @Override
+        public int compareTo(OverdueEntry other) {
+            int byTime = dueTime.compareTo(other.dueTime);
+            return byTime != 0 ? byTime : Long.compare(sequence, other.sequence);
+        }
+    }
+}
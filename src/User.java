@@ -8,7 +8,8 @@ import java.util.List;
  */
 public class User {
     private String username;
-    private String password;
+    private volatile String password; // A PasswordHasher hash, or plain text until the first login
+    private volatile int credentialEpoch; // Grows when the password changes, not when it is hashed again
     private String name;
     private String role; // "admin" or "employee"
     private List<Task> assignedTasks;
@@ -37,6 +38,16 @@ public class User {
         return password;
     }
 
+    /**
+     * Get the credential epoch, which grows whenever the password is changed
+     * Hashing the same password again (first login, more iterations) keeps the epoch, so session
+     * tokens issued before stay valid.
+     * @return the epoch, 0 for a password that was never changed
+     */
+    public int getCredentialEpoch() {
+        return credentialEpoch;
+    }
+
     public String getName() {
         return name;
     }
@@ -58,6 +69,22 @@ public class User {
         this.password = password;
     }
 
+    public void setCredentialEpoch(int credentialEpoch) {
+        this.credentialEpoch = credentialEpoch;
+    }
+
+    /**
+     * Change the password, which ends every session of this user
+     * @param password The new password; it is stored as a hash
+     */
+    public void changePassword(String password) {
+        String hashed = PasswordHasher.hash(password);
+        synchronized (this) {
+            this.password = hashed;
+            credentialEpoch++;
+        }
+    }
+
     public void setName(String name) {
         this.name = name;
     }
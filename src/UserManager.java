@@ -2,20 +2,50 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * UserManager class handles user authentication and management
  * It stores all users and provides methods for authentication and user operations
+ * Users are kept in a concurrent map, so server sessions can log in at the same time
+ *
+ * Passwords are checked against salted PBKDF2 hashes (see PasswordHasher). A password still stored
+ * in plain text, as in data files from before hashing, is replaced by its hash on the first
+ * successful login, and the change is published as a USER_CHANGED event so it gets saved.
+ * Because hashing is slow on purpose, login hands out a session token (see SessionTokens), and
+ * later requests prove who they are with the token instead of the password. An unknown username
+ * costs as much as a wrong password, so login times do not tell which usernames exist.
  */
 public class UserManager {
     private Map<String, User> users;
+    private final SessionTokens tokens;
+    private volatile DomainEventLog eventLog; // Where password migrations are published, if anywhere
+    // Checked instead of a stored password when the username is unknown
+    private volatile String unknownUserHash;
 
     /**
      * Constructor for UserManager
      * Initializes the user storage
      */
     public UserManager() {
-        users = new HashMap<>();
+        this(new SessionTokens());
+    }
+
+    /**
+     * Constructor for UserManager
+     * @param tokens The token cache logins are recorded in
+     */
+    public UserManager(SessionTokens tokens) {
+        users = new ConcurrentHashMap<>();
+        this.tokens = tokens;
+    }
+
+    /**
+     * Publish password migrations to an event log, so they are saved like any other change
+     * @param eventLog The log, or null to stop publishing
+     */
+    public void setEventLog(DomainEventLog eventLog) {
+        this.eventLog = eventLog;
     }
 
     /**
@@ -31,7 +61,30 @@ public class UserManager {
      * @param username The username of the user to remove
      */
     public void removeUser(String username) {
-        users.remove(username);
+        User user = users.remove(username);
+        if (user != null) {
+            tokens.revokeAll(user);
+        }
+    }
+
+    /**
+     * Bring the users in line with a list that was merged with the data file
+     * Users missing from the list are removed, which also ends their sessions.
+     * @param current The users as they are now
+     */
+    public void syncUsers(List<User> current) {
+        Map<String, User> byName = new HashMap<>();
+        for (User user : current) {
+            byName.put(user.getUsername(), user);
+        }
+        for (User user : getAllUsers()) {
+            if (byName.get(user.getUsername()) != user) {
+                removeUser(user.getUsername());
+            }
+        }
+        for (User user : byName.values()) {
+            users.putIfAbsent(user.getUsername(), user);
+        }
     }
 
     /**
@@ -59,10 +112,83 @@ public class UserManager {
      */
     public User authenticate(String username, String password) {
         User user = users.get(username);
-        if (user != null && user.getPassword().equals(password)) {
-            return user;
+        if (user == null) {
+            // Take as long as checking a real password
+            PasswordHasher.verify(password, getUnknownUserHash());
+            return null;
         }
-        return null;
+        return checkPassword(user, password) ? user : null;
+    }
+
+    private String getUnknownUserHash() {
+        String hash = unknownUserHash;
+        if (hash == null || PasswordHasher.needsRehash(hash)) {
+            // Made again when --hash-iterations raises the cost of real passwords
+            hash = PasswordHasher.hash("");
+            unknownUserHash = hash;
+        }
+        return hash;
+    }
+
+    /**
+     * Check a user's password, replacing a stored plain text password by its hash on success
+     * @param user The user
+     * @param password The password that was entered
+     * @return true if the password matches, false otherwise
+     */
+    public boolean checkPassword(User user, String password) {
+        String stored = user.getPassword();
+        if (!PasswordHasher.verify(password, stored)) {
+            return false;
+        }
+        if (PasswordHasher.needsRehash(stored)) {
+            String hashed = PasswordHasher.hash(password);
+            boolean migrated;
+            synchronized (user) {
+                // Another login may have migrated it meanwhile; keep whichever hash came first
+                migrated = user.getPassword().equals(stored);
+                if (migrated) {
+                    user.setPassword(hashed);
+                }
+            }
+            DomainEventLog eventLog = this.eventLog;
+            if (migrated && eventLog != null) {
+                eventLog.publish(DomainEvent.Type.USER_CHANGED, 0, user.getUsername(), 0, 0);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Log in with a password and get a session token for the following requests
+     * @param username The username
+     * @param password The password
+     * @return the token, or null if the username or password is wrong
+     */
+    public String login(String username, String password) {
+        User user = authenticate(username, password);
+        return user == null ? null : tokens.issue(user);
+    }
+
+    /**
+     * Find the user of a session token, without checking the password again
+     * @param token A token returned by login
+     * @return the user, or null if the token is unknown, expired or revoked
+     */
+    public User validateToken(String token) {
+        return tokens.validate(token);
+    }
+
+    /**
+     * End the session of a token
+     * @param token A token returned by login
+     */
+    public void logout(String token) {
+        tokens.revoke(token);
+    }
+
+    public SessionTokens getTokens() {
+        return tokens;
     }
 
     /**